@@ -8,6 +8,7 @@ import RemoteNodes.MinerListener;
 import RemoteNodes.NodeListener;
 import RemoteNodes.RemoteVotingI;
 import RemoteNodes.RemoteVotingObject;
+import blockchained.Hash256;
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.rmi.RemoteException;
@@ -539,6 +540,10 @@ public class NodeP2P extends javax.swing.JFrame implements NodeListener, MinerLi
             //:::::::::: Objeto remoto  :::::::::::::::
             int port = Integer.parseInt(txtServerListeningPort.getText());
             String name = RemoteVotingObject.REMOTE_OBJECT_NAME;
+            // Um servidor reiniciado substitui o anterior: liberta a blockchain e o produtor
+            if (myremoteObject != null) {
+                myremoteObject.shutdown();
+            }
             myremoteObject = new RemoteVotingObject(port, this);
             RMI.startRemoteObject(myremoteObject, port, name);
             //:::::::: GUI  ::::::::::::::::
@@ -572,7 +577,7 @@ public class NodeP2P extends javax.swing.JFrame implements NodeListener, MinerLi
     private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton1ActionPerformed
         try {
             hashesList.setText("");
-            for (String object : myremoteObject.getBlockHashes()) {
+            for (Hash256 object : myremoteObject.getBlockHashes()) {
                 hashesList.setText(hashesList.getText() + object + "\n");
             }
         } catch (RemoteException ex) {
@@ -681,7 +686,7 @@ public class NodeP2P extends javax.swing.JFrame implements NodeListener, MinerLi
     }
 
     @Override
-    public void onStopMining(int nonce) {
+    public void onStopMining(long nonce) {
         /*SwingUtilities.invokeLater(() -> {
             try {
                 imgMiner.setVisible(false);
@@ -697,7 +702,7 @@ public class NodeP2P extends javax.swing.JFrame implements NodeListener, MinerLi
     }
 
     @Override
-    public void onNonceFound(int nonce) {
+    public void onNonceFound(long nonce) {
         /*SwingUtilities.invokeLater(() -> {
             try {            
                 myremoteObject.stopMining(nonce);
@@ -4,17 +4,27 @@
  */
 package RemoteNodes;
 
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import blockchained.MiningScheduler;
+import blockchained.MiningStats;
+import blockchained.Nonce;
+import blockchained.NonceSearch;
+import blockchained.ProofOfWork;
 
 /**
  * Classe para mineração distribuída usando múltiplos threads
  * Implementa um sistema de prova de trabalho (Proof of Work) para encontrar um nonce
- * que gera um hash com um número específico de zeros no início
+ * que gera um hash com um número específico de bits a zero no início
+ * A regra é a do ProofOfWork partilhado (mensagem + extra-nonce 0 + nonce em binário),
+ * pelo que qualquer nó a verifica com um único hash
+ * O número de threads, a sua prioridade e as pausas durante pedidos RMI
+ * críticos vêm do MiningScheduler partilhado
  * 
  * @author Acer
  */
@@ -38,19 +48,24 @@ public class MinerDistributed {
 
         }).start();
         
-        // Inicia a mineração com dificuldade 4 (4 zeros no início do hash)
-        int n = miner.mine(msg, 4);
+        // Inicia a mineração com dificuldade 20 (20 bits a zero no início do hash)
+        long n = miner.mine(msg, 20);
         System.out.println("Message = " + msg);
         System.out.println("Nonce = " + miner.nonce);
-        System.out.println("Hash = " + getHash(msg + n));
+        System.out.println("Hash = " + getHash(msg, n));
     }
 
     // Objetos partilhados entre threads
-    AtomicInteger nonce = new AtomicInteger(0); // Nonce da mensagem (número que satisfaz a prova de trabalho)
+    AtomicLong nonce = new AtomicLong(0); // Nonce da mensagem (número que satisfaz a prova de trabalho)
     AtomicBoolean isWorking = new AtomicBoolean(); // Indica se o minerador está a trabalhar
     static AtomicBoolean isChampion = new AtomicBoolean(); // Indica se este minerador encontrou o nonce
     static MinerListener listener; // Listener para eventos de mineração
     String message; // Mensagem a ser minerada
+    static final long CALIBRATION_MILLIS = 200; // Duração da calibração do débito
+    static final MiningScheduler SCHEDULER = MiningScheduler.getDefault(); // Threads, prioridade e pausas
+    MiningStats stats = new MiningStats("distributed"); // Telemetria deste minerador
+    volatile double hashRate; // Débito medido na última mineração por intervalo (hashes/s)
+    Map<String, AtomicBoolean> rangeStops = new ConcurrentHashMap<>(); // Flags de paragem dos intervalos em curso
 
     /**
      * Adiciona um listener para receber notificações sobre eventos de mineração
@@ -63,7 +78,7 @@ public class MinerDistributed {
      * Para a mineração e define o nonce manualmente
      * @param number Nonce a ser definido
      */
-    public void stopMining(int number) {
+    public void stopMining(long number) {
         isWorking.set(false);
         nonce.set(number);
         if(listener != null){
@@ -77,7 +92,7 @@ public class MinerDistributed {
      * Obtém o valor atual do nonce
      * @return Valor do nonce
      */
-    public int getNonce() {
+    public long getNonce() {
         return nonce.get();
     }
 
@@ -102,10 +117,10 @@ public class MinerDistributed {
      * Cada thread testa números diferentes até encontrar um hash válido
      * 
      * @param msg Mensagem a ser minerada
-     * @param dificulty Dificuldade (número de zeros no início do hash)
+     * @param dificulty Dificuldade (número de bits a zero no início do hash)
      * @return Nonce que satisfaz a dificuldade especificada
      */
-    public int mine(String msg, int dificulty) {
+    public long mine(String msg, int dificulty) {
         this.message = msg;
         try {
             // Notifica o início da mineração
@@ -118,72 +133,226 @@ public class MinerDistributed {
             // Inicializa os objetos partilhados
             isWorking.set(true);
             isChampion.set(false);
-            nonce = new AtomicInteger(0); // Reinicia o nonce
+            nonce = new AtomicLong(0); // Reinicia o nonce
             
             // Gera um número aleatório inicial para distribuir o trabalho
+            // (não negativo e abaixo de 2^62, para nunca dar a volta ao espaço de 64 bits)
             Random rnd = new Random();
-            AtomicInteger ticket = new AtomicInteger(Math.abs(rnd.nextInt()));
+            AtomicLong ticket = new AtomicLong(rnd.nextLong() >>> 2);
             
-            // Cria uma thread por cada processador disponível
-            MinerThr thr[] = new MinerThr[Runtime.getRuntime().availableProcessors()];
+            // Cria as threads permitidas pelo escalonador
+            long begin = System.nanoTime();
+            LongAdder attempts = new LongAdder();
+            MinerThr thr[] = new MinerThr[SCHEDULER.getWorkers()];
             for (int i = 0; i < thr.length; i++) {
-                thr[i] = new MinerThr(nonce, ticket, dificulty, msg);
+                thr[i] = new MinerThr(nonce, ticket, ProofOfWork.getDefault().newSearch(msg, dificulty), stats, attempts);
+                thr[i].setName("miner-" + i);
+                SCHEDULER.configure(thr[i]);
                 thr[i].start();
             }
             
             // Aguarda que a primeira thread termine (quando o nonce for encontrado)
             thr[0].join();
+            stats.recordJob(System.nanoTime() - begin, attempts.sum(), isChampion.get());
             return nonce.get();
-        } catch (InterruptedException ex) {
+        } catch (InterruptedException | NoSuchAlgorithmException ex) {
             return 0;
         }
     }
 
+    /**
+     * Procura um nonce apenas dentro de um intervalo atribuído por um coordenador
+     * Usa a mesma regra de hash que mine(), com uma thread por processador
+     * a reclamar sub-intervalos contíguos do intervalo recebido
+     * 
+     * @param msg Mensagem a ser minerada
+     * @param dificulty Dificuldade (número de bits a zero no início do hash)
+     * @param start Primeiro número do intervalo (inclusive)
+     * @param end Último número do intervalo (exclusive)
+     * @return Nonce encontrado ou -1 se o intervalo se esgotar ou for cancelado
+     */
+    public long mineRange(String msg, int dificulty, long start, long end) {
+        AtomicBoolean stop = new AtomicBoolean(false);
+        rangeStops.put(msg, stop);
+        try {
+            AtomicLong found = new AtomicLong(-1);
+            AtomicLong ticket = new AtomicLong(start);
+            long begin = System.nanoTime();
+            
+            RangeThr thr[] = new RangeThr[SCHEDULER.getWorkers()];
+            for (int i = 0; i < thr.length; i++) {
+                thr[i] = new RangeThr(found, stop, ticket, end, ProofOfWork.getDefault().newSearch(msg, dificulty), stats);
+                thr[i].setName("range-" + i);
+                SCHEDULER.configure(thr[i]);
+                thr[i].start();
+            }
+            long hashes = 0;
+            for (RangeThr t : thr) {
+                t.join();
+                hashes += t.hashes;
+            }
+            
+            // Atualiza o débito reportado aos coordenadores
+            double seconds = (System.nanoTime() - begin) / 1E9;
+            if (hashes > 0 && seconds > 0) {
+                hashRate = hashes / seconds;
+            }
+            // Um intervalo esgotado não fecha o trabalho; só a solução ou o cancelamento
+            if (found.get() >= 0 || stop.get()) {
+                stats.recordJob(System.nanoTime() - begin, hashes, found.get() >= 0);
+            }
+            return found.get();
+        } catch (InterruptedException | NoSuchAlgorithmException ex) {
+            return -1;
+        } finally {
+            rangeStops.remove(msg, stop);
+        }
+    }
+
+    /**
+     * Cancela a procura de um intervalo em curso para uma mensagem
+     * 
+     * @param msg Mensagem cujo intervalo deve parar
+     */
+    public void cancelRange(String msg) {
+        AtomicBoolean stop = rangeStops.get(msg);
+        if (stop != null) {
+            stop.set(true);
+        }
+    }
+
+    /**
+     * Obtém a telemetria deste minerador
+     * 
+     * @return Estatísticas acumuladas
+     */
+    public MiningStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Obtém o débito de mineração deste nó
+     * Se ainda não houver medição, calibra durante CALIBRATION_MILLIS
+     * 
+     * @return Hashes por segundo (todas as threads)
+     */
+    public double getHashRate() {
+        if (hashRate == 0) {
+            try {
+                // Dificuldade impossível: mede apenas o débito do motor
+                NonceSearch search = ProofOfWork.getDefault().newSearch("calibration", Integer.MAX_VALUE);
+                long end = System.nanoTime() + CALIBRATION_MILLIS * 1_000_000;
+                for (long n = 0; System.nanoTime() < end; n += MinerThr.CHECK_INTERVAL) {
+                    search.search(n, n + MinerThr.CHECK_INTERVAL);
+                }
+                hashRate = search.getAttempts() * 1000.0 / CALIBRATION_MILLIS * SCHEDULER.getWorkers();
+            } catch (NoSuchAlgorithmException ex) {
+                System.getLogger(MinerDistributed.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+            }
+        }
+        return hashRate;
+    }
+
+    /**
+     * Thread que procura o nonce dentro de um intervalo limitado
+     */
+    private static class RangeThr extends Thread {
+
+        AtomicLong found; // Nonce encontrado (-1 enquanto não houver)
+        AtomicBoolean stop; // Cancelamento pedido pelo coordenador
+        AtomicLong numberTicket; // Próximo número a reclamar
+        long end; // Fim do intervalo (exclusive)
+        NonceSearch search; // Motor de procura desta thread
+        long hashes; // Hashes calculados por esta thread
+        MiningStats stats; // Telemetria do minerador
+
+        public RangeThr(AtomicLong found, AtomicBoolean stop, AtomicLong ticket, long end, NonceSearch search, MiningStats stats) {
+            this.stats = stats;
+            this.found = found;
+            this.stop = stop;
+            this.numberTicket = ticket;
+            this.end = end;
+            this.search = search;
+        }
+
+        @Override
+        public void run() {
+            while (found.get() < 0 && !stop.get()) {
+                long start = numberTicket.getAndAdd(MinerThr.CHECK_INTERVAL);
+                if (start >= end) {
+                    return;
+                }
+                long last = Math.min(end, start + MinerThr.CHECK_INTERVAL);
+                SCHEDULER.checkpoint();
+                long begin = System.nanoTime();
+                long before = search.getAttempts();
+                long n = search.search(start, last);
+                if (n >= 0) {
+                    found.compareAndSet(-1, n);
+                }
+                // Regista o lote de uma só vez
+                long count = search.getAttempts() - before;
+                hashes += count;
+                stats.recordHashes(getName(), count, System.nanoTime() - begin);
+            }
+        }
+    }
+
     /**
      * Thread individual que procura o nonce válido
-     * Cada thread pega números sequenciais e testa se geram um hash válido
+     * Cada thread reclama um intervalo contíguo de CHUNK números de uma só vez
+     * e testa-os, consultando o nonce partilhado apenas a cada CHECK_INTERVAL
      */
     private static class MinerThr extends Thread {
 
-        AtomicInteger trueNonce; // Nonce encontrado (partilhado entre threads)
-        AtomicInteger numberTicket; // Próximo número a testar (partilhado entre threads)
-        int dificulty; // Número de zeros necessários no início do hash
-        String message; // Mensagem a ser minerada
+        static final int CHUNK = 1 << 16; // Números reclamados de cada vez
+        static final int CHECK_INTERVAL = 1024; // Números testados entre consultas ao nonce partilhado
+        AtomicLong trueNonce; // Nonce encontrado (partilhado entre threads)
+        AtomicLong numberTicket; // Próximo número a testar (partilhado entre threads)
+        NonceSearch search; // Motor de procura desta thread
+        MiningStats stats; // Telemetria do minerador
+        LongAdder attempts; // Tentativas do trabalho (partilhado entre threads)
 
-        public MinerThr(AtomicInteger nonce, AtomicInteger ticket, int dificulty, String msg) {
+        public MinerThr(AtomicLong nonce, AtomicLong ticket, NonceSearch search, MiningStats stats, LongAdder attempts) {
+            this.stats = stats;
+            this.attempts = attempts;
             this.trueNonce = nonce;
             this.numberTicket = ticket;
-            this.dificulty = dificulty;
-            this.message = msg;
+            this.search = search;
         }
 
         @Override
         public void run() {
-            // Cria a string de zeros a procurar no início do hash
-            String zeros = String.format("%0" + dificulty + "d", 0);
-            
             // Continua a procurar enquanto nenhuma thread encontrou o nonce
             while (trueNonce.get() == 0) {
-                // Obtém o próximo número a testar de forma atómica
-                int n = numberTicket.getAndIncrement();
+                // Reclama o próximo intervalo de números de forma atómica
+                long start = numberTicket.getAndAdd(CHUNK);
+                long begin = System.nanoTime();
+                long before = search.getAttempts();
                 
-                // Calcula o hash da mensagem concatenada com o número
-                String hash = getHash(message + n);
-                
-                // Verifica se o hash começa com o número necessário de zeros
-                if (hash.startsWith(zeros)) {
-                    isChampion.set(true);
-                    // Atualiza o nonce verdadeiro (isto para todas as threads)
-                    trueNonce.set(n);
-                    
-                    // Notifica o listener ou imprime no console
-                    if (listener != null) {
-                        listener.onNonceFound(n);
-                    } else {
-                        System.out.println(Thread.currentThread().getName() + " found nonce " + n);
-                        System.out.println("Hash " + hash);
+                // Procura em lotes de CHECK_INTERVAL, consultando o nonce partilhado entre lotes
+                for (long from = start; from != start + CHUNK && trueNonce.get() == 0; from += CHECK_INTERVAL) {
+                    SCHEDULER.checkpoint();
+                    long n = search.search(from, from + CHECK_INTERVAL);
+                    if (n >= 0) {
+                        isChampion.set(true);
+                        // Atualiza o nonce verdadeiro (isto para todas as threads)
+                        trueNonce.set(n);
+                        
+                        // Notifica o listener ou imprime no console
+                        if (listener != null) {
+                            listener.onNonceFound(n);
+                        } else {
+                            System.out.println(Thread.currentThread().getName() + " found nonce " + n);
+                            System.out.println("Hash " + ProofOfWork.toHex(search.getLastHash()));
+                        }
+                        break;
                     }
                 }
+                // Regista o lote de uma só vez
+                long count = search.getAttempts() - before;
+                attempts.add(count);
+                stats.recordHashes(getName(), count, System.nanoTime() - begin);
             }
             // Thread termina quando o nonce é encontrado
             System.out.println(Thread.currentThread().getName() + " stop ");
@@ -191,18 +360,13 @@ public class MinerDistributed {
     }
 
     /**
-     * Calcula o hash SHA3-256 de uma mensagem e retorna em Base64
+     * Calcula o hash de prova de trabalho de uma mensagem com um nonce
      * 
-     * @param msg Mensagem a ser transformada em hash
-     * @return Hash em formato Base64 ou "ERROR" em caso de falha
+     * @param msg Mensagem minerada
+     * @param nonce Nonce (com extra-nonce 0)
+     * @return Hash em formato hexadecimal
      */
-    public static String getHash(String msg) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA3-256");
-            md.update(msg.getBytes());
-            return Base64.getEncoder().encodeToString(md.digest());
-        } catch (NoSuchAlgorithmException ex) {
-            return "ERROR";
-        }
+    public static String getHash(String msg, long nonce) {
+        return ProofOfWork.toHex(ProofOfWork.getDefault().hash(msg, new Nonce(0, nonce)));
     }
 }
\ No newline at end of file
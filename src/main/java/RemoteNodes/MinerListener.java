@@ -10,6 +10,6 @@ package RemoteNodes;
  */
 public interface MinerListener {
     public void onStartMining(String message, int difficulty);
-    public void onStopMining(int nonce);
-    public void onNonceFound(int nonce);
+    public void onStopMining(long nonce);
+    public void onNonceFound(long nonce);
 }
@@ -0,0 +1,169 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package RemoteNodes;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import blockchained.Nonce;
+import blockchained.ProofOfWork;
+
+/**
+ * Mineração distribuída coordenada
+ * O nó que inicia a mineração divide o espaço de nonces em intervalos
+ * disjuntos e entrega a cada peer um intervalo proporcional ao débito que
+ * esse peer reporta (getHashRate). Cada peer responde com a solução ou com
+ * -1 quando esgota o intervalo e recebe então o seguinte. Os intervalos de
+ * peers lentos (sem resposta em timeoutFactor vezes o tempo alvo), mortos
+ * (RemoteException) ou que respondem com um nonce que não cumpre a
+ * dificuldade voltam para uma fila e são reatribuídos aos restantes peers,
+ * pelo que nenhum número fica por testar e nenhum peer decide sozinho o
+ * nonce: cada resposta é verificada com a ProofOfWork antes de ser aceite
+ * 
+ * @author Acer
+ */
+public class MiningCoordinator {
+
+    public static final long SLICE_MILLIS = 2000; // Duração alvo de cada intervalo atribuído (por defeito)
+    public static final long TIMEOUT_FACTOR = 5; // Múltiplo do tempo alvo a partir do qual um peer é lento (por defeito)
+    public static final long MIN_RANGE = 1 << 12; // Tamanho mínimo de um intervalo (por defeito)
+
+    private final long sliceMillis; // Duração alvo de cada intervalo atribuído
+    private final long timeoutFactor; // Múltiplo de sliceMillis a partir do qual um peer é lento
+    private final long minRange; // Tamanho mínimo de um intervalo
+    private final List<RemoteVotingI> peers; // Peers que participam (incluindo o próprio nó)
+    private final AtomicLong next = new AtomicLong(0); // Início do próximo intervalo ainda não atribuído
+    private final Queue<long[]> orphans = new ConcurrentLinkedQueue<>(); // Intervalos a reatribuir
+    private final CompletableFuture<Long> solution = new CompletableFuture<>(); // Nonce encontrado
+
+    /**
+     * Cria um coordenador para um conjunto de peers
+     * 
+     * @param peers Peers que participam na mineração
+     */
+    public MiningCoordinator(List<RemoteVotingI> peers) {
+        this(peers, SLICE_MILLIS, TIMEOUT_FACTOR, MIN_RANGE);
+    }
+
+    /**
+     * Cria um coordenador para um conjunto de peers com outros tempos e tamanhos
+     * 
+     * @param peers Peers que participam na mineração
+     * @param sliceMillis Duração alvo de cada intervalo atribuído (ms)
+     * @param timeoutFactor Múltiplo de sliceMillis a partir do qual um peer é lento
+     * @param minRange Tamanho mínimo de um intervalo
+     */
+    public MiningCoordinator(List<RemoteVotingI> peers, long sliceMillis, long timeoutFactor, long minRange) {
+        this.peers = new ArrayList<>(peers);
+        this.sliceMillis = sliceMillis;
+        this.timeoutFactor = timeoutFactor;
+        this.minRange = minRange;
+    }
+
+    /**
+     * Minera uma mensagem distribuindo intervalos disjuntos pelos peers
+     * 
+     * @param message Mensagem a ser minerada
+     * @param dificulty Dificuldade (número de bits a zero no início do hash)
+     * @return Nonce encontrado
+     * @throws InterruptedException Se a espera for interrompida
+     * @throws IllegalStateException Se todos os peers falharem
+     */
+    public long mine(String message, int dificulty) throws InterruptedException {
+        ExecutorService exec = Executors.newCachedThreadPool();
+        List<Future<?>> workers = new ArrayList<>();
+        for (RemoteVotingI peer : peers) {
+            workers.add(exec.submit(() -> drive(exec, peer, message, dificulty)));
+        }
+        try {
+            // Termina quando houver solução ou quando todos os peers tiverem saído
+            CompletableFuture.anyOf(solution,
+                    CompletableFuture.runAsync(() -> waitAll(workers), exec)).join();
+            if (!solution.isDone()) {
+                throw new IllegalStateException("Nenhum peer disponível para minerar");
+            }
+            return solution.get();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            // Para todos os peers que ainda estejam a procurar
+            for (RemoteVotingI peer : peers) {
+                try {
+                    peer.cancelRange(message);
+                } catch (RemoteException ex) {
+                    // peer já indisponível
+                }
+            }
+            exec.shutdownNow();
+        }
+    }
+
+    /**
+     * Ciclo de um peer: pede intervalos até haver solução ou o peer falhar
+     */
+    private void drive(ExecutorService exec, RemoteVotingI peer, String message, int dificulty) {
+        long size;
+        try {
+            size = Math.max(minRange, (long) (peer.getHashRate() * sliceMillis / 1000));
+        } catch (RemoteException ex) {
+            System.getLogger(MiningCoordinator.class.getName()).log(System.Logger.Level.WARNING, "Peer indisponível", ex);
+            return;
+        }
+        while (!solution.isDone()) {
+            // Reatribui primeiro os intervalos abandonados por outros peers
+            long[] range = orphans.poll();
+            if (range == null) {
+                long start = next.getAndAdd(size);
+                range = new long[]{start, start + size};
+            }
+            long[] assigned = range;
+            Future<Long> call = exec.submit(() -> peer.mineRange(message, dificulty, assigned[0], assigned[1]));
+            try {
+                long nonce = call.get(sliceMillis * timeoutFactor, TimeUnit.MILLISECONDS);
+                if (nonce >= 0) {
+                    if (!ProofOfWork.getDefault().verify(message, new Nonce(0, nonce), dificulty)) {
+                        // Resposta errada: trata o peer como falhado
+                        orphans.add(assigned);
+                        System.getLogger(MiningCoordinator.class.getName()).log(System.Logger.Level.WARNING,
+                                "Nonce " + nonce + " inválido; intervalo [" + assigned[0] + ", " + assigned[1] + ") reatribuído");
+                        return;
+                    }
+                    solution.complete(nonce);
+                    return;
+                }
+            } catch (TimeoutException | ExecutionException ex) {
+                // Peer lento ou morto: devolve o intervalo e deixa de o usar
+                orphans.add(assigned);
+                call.cancel(true);
+                System.getLogger(MiningCoordinator.class.getName()).log(System.Logger.Level.WARNING,
+                        "Intervalo [" + assigned[0] + ", " + assigned[1] + ") reatribuído", ex);
+                return;
+            } catch (InterruptedException ex) {
+                orphans.add(assigned);
+                return;
+            }
+        }
+    }
+
+    private static void waitAll(List<Future<?>> workers) {
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (Exception ex) {
+                // o resultado do peer já foi tratado em drive
+            }
+        }
+    }
+}
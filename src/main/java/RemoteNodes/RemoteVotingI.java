@@ -5,6 +5,9 @@
 package RemoteNodes;
 
 import blockchained.Block;
+import blockchained.Hash256;
+import blockchained.Mempool;
+import blockchained.MiningStats;
 import blockchained.Transaction;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
@@ -33,12 +36,12 @@ public interface RemoteVotingI extends Remote {
     /**
      * Get the hash of the latest block.
      */
-    byte[] getLatestBlockHash() throws RemoteException;
+    Hash256 getLatestBlockHash() throws RemoteException;
 
     /**
      * Request blocks starting from a known hash.
      */
-    byte[] getBlocksFrom(byte[] fromBlockHash) throws RemoteException;
+    byte[] getBlocksFrom(Hash256 fromBlockHash) throws RemoteException;
     
     
     void sync(RemoteVotingI node)throws RemoteException;
@@ -58,7 +61,15 @@ public interface RemoteVotingI extends Remote {
     
     
     
-    public String[] getBlockHashes() throws RemoteException;
+    public Hash256[] getBlockHashes() throws RemoteException;
+
+    /**
+     * Find the highest block shared with a peer's block locator
+     * (last hashes first, then exponentially spaced back to genesis).
+     *
+     * @return hash of the common block, or null if none is known
+     */
+    Hash256 findCommonBlock(Hash256[] locator) throws RemoteException;
     /**
      * Simple chain preference check.
      */
@@ -87,16 +98,53 @@ public interface RemoteVotingI extends Remote {
 
     public List<String> getTransactions() throws RemoteException;
 
+    /**
+     * Mempool metrics of this node: pending count and bytes, age of the
+     * oldest pending transaction and admission/rejection counters.
+     */
+    public Mempool.Stats getMempoolStats() throws RemoteException;
+
     //::::::::::: M I N E R  :::::::::::
-    public int mine(String message, int dificulty) throws RemoteException;
+    public long mine(String message, int dificulty) throws RemoteException;
 
-    public void stopMining(int nonce) throws RemoteException;
+    public void stopMining(long nonce) throws RemoteException;
 
     public boolean isMining() throws RemoteException;
 
     public boolean isWinner() throws RemoteException;
 
-    public int getNonce() throws RemoteException;
+    public long getNonce() throws RemoteException;
     
     public String getHash() throws RemoteException;
+
+    //::::::::::: M I N E R   C O O R D E N A D O  :::::::::::
+    /**
+     * Mine cooperatively: this node hands disjoint nonce ranges to itself
+     * and to every peer in its network.
+     */
+    public long mineCoordinated(String message, int dificulty) throws RemoteException;
+
+    /**
+     * Search only the range [start, end) assigned by a coordinator.
+     *
+     * @return nonce found or -1 if the range is exhausted or cancelled
+     */
+    public long mineRange(String message, int dificulty, long start, long end) throws RemoteException;
+
+    /**
+     * Cancel the range currently being searched for a message.
+     */
+    public void cancelRange(String message) throws RemoteException;
+
+    /**
+     * Mining throughput of this node, in hashes per second.
+     */
+    public double getHashRate() throws RemoteException;
+
+    /**
+     * Mining telemetry of this node: per-worker hash rate, job duration
+     * histogram, attempts per solution and wins/losses, one snapshot per
+     * miner (block/transaction proof-of-work and distributed miner).
+     */
+    public List<MiningStats.Snapshot> getMiningStats() throws RemoteException;
 }
\ No newline at end of file
@@ -5,13 +5,21 @@
 package RemoteNodes;
 
 import blockchained.Block;
+import blockchained.BlockProducer;
 import blockchained.Blockchain;
 import blockchained.Election;
+import blockchained.Hash256;
+import blockchained.Mempool;
+import blockchained.MiningScheduler;
+import blockchained.MiningService;
+import blockchained.MiningStats;
 import blockchained.Transaction;
 import blockchained.Voter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.rmi.server.RemoteServer;
 import java.rmi.server.ServerNotActiveException;
@@ -36,11 +44,11 @@ import utils.SecurityUtils;
 public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVotingI {
 
     public static String REMOTE_OBJECT_NAME = "remoteNode";
-    static Election eleicao; // Eleição atual do sistema
-    static Blockchain blockchain; // Blockchain partilhada
+    Election eleicao; // Eleição atual do sistema
+    final Blockchain blockchain; // Blockchain deste nó
+    final BlockProducer producer; // Mina os blocos fora dos pedidos RMI
     String address; // Endereço RMI deste nó
     Set<RemoteVotingI> network; // Conjunto de nós conectados na rede P2P
-    Set<String> transactions; // Conjunto de transações pendentes
     NodeListener listener; // Listener para eventos do nó
     public MinerDistributed miner = new MinerDistributed(); // Minerador para proof-of-work
     private Key aes; // Chave AES para encriptação simétrica
@@ -63,9 +71,9 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
             String host = InetAddress.getLocalHost().getHostAddress();
             this.address = RMI.getRemoteName(host, port, REMOTE_OBJECT_NAME);
             
-            // Inicializa conjuntos thread-safe para rede e transações
+            // Inicializa o conjunto thread-safe da rede
+            // (as transações pendentes estão no mempool da blockchain)
             this.network = new CopyOnWriteArraySet<>();
-            this.transactions = new CopyOnWriteArraySet<>();
 
             this.listener = listener;
             if (listener != null) {
@@ -80,18 +88,43 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
             }
         }
         
-        // Inicializa a blockchain com dificuldade 3
-        blockchain = new Blockchain(3);
+        // Abre a blockchain guardada no disco (-Dstore.dir, uma diretoria por
+        // porta por defeito) com dificuldade inicial de 18 bits; um nó
+        // reiniciado continua a partir dos blocos guardados
+        blockchain = Blockchain.open(Paths.get(System.getProperty("store.dir", "blocks-" + port)), 18);
+        producer = new BlockProducer(blockchain);
+        producer.start();
         
-        // Cria uma eleição inicial
-        eleicao = new Election("election001", "Class president");
-        blockchain.createElection(eleicao);
+        // Cria uma eleição inicial (ou usa a que foi carregada do snapshot do estado)
+        eleicao = blockchain.getElection("election001");
+        if (eleicao == null) {
+            eleicao = new Election("election001", "Class president");
+            blockchain.createElection(eleicao);
+        }
         
         // Gera chaves de encriptação
         aes = SecurityUtils.generateAESKey(128);
         rsa = SecurityUtils.generateRSAKeyPair(2048);
     }
 
+    /**
+     * Para o nó: deixa de aceitar pedidos RMI, para o produtor de blocos e
+     * fecha a blockchain (escreve os blocos pendentes e o snapshot do estado)
+     * 
+     * @throws IOException Se a escrita da blockchain falhar
+     */
+    public void shutdown() throws IOException {
+        UnicastRemoteObject.unexportObject(this, true);
+        producer.shutdown();
+        try {
+            // O bloco em curso é publicado antes de a blockchain fechar
+            producer.awaitTermination(60_000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        blockchain.close();
+    }
+
     /**
      * Processa um voto encriptado e adiciona-o à blockchain
      * 
@@ -103,6 +136,16 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
      */
     @Override
     public int vote(byte[] voter, byte[] partido, PublicKey voterPublicKey) throws RemoteException {
+        // Pedido sensível à latência: a mineração em fundo cede o processador
+        MiningScheduler.getDefault().enterCritical();
+        try {
+            return doVote(voter, partido, voterPublicKey);
+        } finally {
+            MiningScheduler.getDefault().exitCritical();
+        }
+    }
+
+    private int doVote(byte[] voter, byte[] partido, PublicKey voterPublicKey) throws RemoteException {
         if(blockchain.hasVoted(voterPublicKey, eleicao.getElectionId())){
             System.out.println(this.getAdress() +  " already Voted!");
             return 400;
@@ -118,11 +161,12 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
             System.out.println("Decrypting too");
             String truePartido = new String(SecurityUtils.decrypt(partido, aes));
             
-            // Cria e adiciona o voto à blockchain
+            // Cria e adiciona o voto ao mempool; o bloco é minerado
+            // pelo produtor de blocos, fora deste pedido
             System.out.println("Voting");
             Transaction voto = user.castVote(truePartido, eleicao.getElectionId());
             blockchain.addTransaction(voto);
-            blockchain.minePendingTransactions();
+            producer.onTransaction();
             System.out.println(blockchain.getPendingTransactionCount());
             
             
@@ -145,12 +189,12 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
     /**
      * Obtém o hash do último bloco da blockchain
      * 
-     * @return Hash do último bloco em bytes
+     * @return Hash do último bloco
      * @throws RemoteException Em caso de erro RMI
      */
     @Override
-    public byte[] getLatestBlockHash() throws RemoteException {
-        return blockchain.getLatestBlock().getCurrentHash().getBytes();
+    public Hash256 getLatestBlockHash() throws RemoteException {
+        return blockchain.getLatestBlock().getCurrentHash();
     }
 
     /**
@@ -161,14 +205,17 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
      * @throws RemoteException Em caso de erro RMI
      */
     @Override
-    public byte[] getBlocksFrom(byte[] fromBlockHash) throws RemoteException {
+    public byte[] getBlocksFrom(Hash256 fromBlockHash) throws RemoteException {
+        MiningScheduler.getDefault().enterCritical();
         try {
-            byte[] aux = SecurityUtils.serialize( blockchain.getBlocksFrom(new String(fromBlockHash)));
+            byte[] aux = SecurityUtils.serialize( blockchain.getBlocksFrom(fromBlockHash));
             return SecurityUtils.encrypt(aux, aes);
         } catch (IOException ex) {
             System.getLogger(RemoteVotingObject.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
         } catch (Exception ex) {
             System.getLogger(RemoteVotingObject.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+        } finally {
+            MiningScheduler.getDefault().exitCritical();
         }
         return null;
     }
@@ -186,7 +233,15 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
             return;
         }
         
-        blockchain.addBlock(block);
+        try {
+            blockchain.addBlock(block);
+        } catch (IllegalStateException ex) {
+            // Bloco inválido ou que não liga à cadeia: a cadeia não mudou
+            throw new RemoteException("Block rejected: " + ex.getMessage());
+        } catch (UncheckedIOException ex) {
+            // O bloco não foi guardado: a cadeia não mudou
+            throw new RemoteException("Block not stored", ex.getCause());
+        }
     }
 
     /**
@@ -263,8 +318,13 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
 
         network.add(node);
         
-        // Sincroniza blockchain com o novo nó
-        this.sync(node);
+        // Sincroniza blockchain com o novo nó (um nó com outro génesis é recusado)
+        try {
+            this.sync(node);
+        } catch (RemoteException ex) {
+            network.remove(node);
+            throw ex;
+        }
         
         
         // Adiciona este nó à rede do novo nó (conexão bidirecional)
@@ -306,10 +366,22 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
      * @throws RemoteException Em caso de erro RMI
      */
     @Override
-    public String[] getBlockHashes() throws RemoteException{
+    public Hash256[] getBlockHashes() throws RemoteException{
         return blockchain.getBlockHashes();
     }
 
+    /**
+     * Obtém o bloco comum mais alto a partir do localizador de outro nó
+     * 
+     * @param locator Localizador de blocos do outro nó
+     * @return Hash do bloco comum ou null se nenhum for conhecido
+     * @throws RemoteException Em caso de erro RMI
+     */
+    @Override
+    public Hash256 findCommonBlock(Hash256[] locator) throws RemoteException {
+        return blockchain.findForkPoint(locator);
+    }
+
     /**
      * Adiciona uma transação ao conjunto de transações pendentes
      * 
@@ -318,7 +390,7 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
      */
     @Override
     public void addTransaction(byte[] transacao) throws RemoteException {
-
+        MiningScheduler.getDefault().enterCritical();
         try {
             byte[] aux = SecurityUtils.decrypt(transacao, aes);
             Transaction trueTransacao = (Transaction) SecurityUtils.deserialize(aux);
@@ -327,13 +399,15 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
             addTransaction(trueTransacao);
         } catch (Exception ex) {
             System.getLogger(RemoteVotingObject.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+        } finally {
+            MiningScheduler.getDefault().exitCritical();
         }
     }
     
     public void addTransaction(Transaction transacao){
         try {
             blockchain.addTransaction(transacao);
-            blockchain.minePendingTransactions();
+            producer.onTransaction();
         } catch (Exception ex) {
             System.out.println("Já tenho este voto");
         }
@@ -347,7 +421,22 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
      */
     @Override
     public List<String> getTransactions() throws RemoteException {
-        return new ArrayList<>(transactions);
+        List<String> list = new ArrayList<>();
+        for (Transaction tx : blockchain.getMempool().getTransactions()) {
+            list.add(tx.toString());
+        }
+        return list;
+    }
+
+    /**
+     * Obtém as métricas do mempool deste nó
+     * 
+     * @return Snapshot do tamanho, idade e contadores do mempool
+     * @throws RemoteException Em caso de erro RMI
+     */
+    @Override
+    public Mempool.Stats getMempoolStats() throws RemoteException {
+        return blockchain.getMempool().snapshot();
     }
 
     /**
@@ -368,12 +457,12 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
      * Propaga o pedido de mineração para todos os nós da rede
      * 
      * @param message Mensagem a ser minerada
-     * @param dificulty Dificuldade (número de zeros necessários)
+     * @param dificulty Dificuldade (número de bits a zero necessários)
      * @return Nonce encontrado ou 0 se já estiver a minerar
      * @throws RemoteException Em caso de erro RMI
      */
     @Override
-    public int mine(String message, int dificulty) throws RemoteException {
+    public long mine(String message, int dificulty) throws RemoteException {
         // Se já estiver a minerar, não faz nada
         if (miner.isMining()) {
             return 0;
@@ -396,7 +485,7 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
      * @throws RemoteException Em caso de erro RMI
      */
     @Override
-    public void stopMining(int nonce) throws RemoteException {
+    public void stopMining(long nonce) throws RemoteException {
         // Se não estiver a minerar, não faz nada
         if (!miner.isMining()) {
             return;
@@ -439,19 +528,93 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
      * @throws RemoteException Em caso de erro RMI
      */
     @Override
-    public int getNonce() throws RemoteException {
+    public long getNonce() throws RemoteException {
         return miner.getNonce();
     }
 
     /**
      * Obtém o hash da mensagem minerada com o nonce atual
      * 
-     * @return Hash em formato Base64
+     * @return Hash em formato hexadecimal
      * @throws RemoteException Em caso de erro RMI
      */
     @Override
     public String getHash() throws RemoteException {
-        return MinerDistributed.getHash(miner.message + miner.getNonce());
+        return MinerDistributed.getHash(miner.message, miner.getNonce());
+    }
+
+    /**
+     * Inicia a mineração coordenada: este nó atribui intervalos disjuntos
+     * de nonces a si próprio e a todos os nós da rede
+     * 
+     * @param message Mensagem a ser minerada
+     * @param dificulty Dificuldade (número de bits a zero necessários)
+     * @return Nonce encontrado
+     * @throws RemoteException Em caso de erro RMI ou se a mineração falhar
+     */
+    @Override
+    public long mineCoordinated(String message, int dificulty) throws RemoteException {
+        List<RemoteVotingI> peers = new ArrayList<>();
+        peers.add(this);
+        peers.addAll(network);
+        try {
+            return new MiningCoordinator(peers).mine(message, dificulty);
+        } catch (InterruptedException | IllegalStateException ex) {
+            throw new RemoteException("Coordinated mining failed", ex);
+        }
+    }
+
+    /**
+     * Procura um nonce no intervalo atribuído por um coordenador
+     * 
+     * @param message Mensagem a ser minerada
+     * @param dificulty Dificuldade (número de bits a zero necessários)
+     * @param start Primeiro número do intervalo (inclusive)
+     * @param end Último número do intervalo (exclusive)
+     * @return Nonce encontrado ou -1 se o intervalo se esgotar
+     * @throws RemoteException Em caso de erro RMI
+     */
+    @Override
+    public long mineRange(String message, int dificulty, long start, long end) throws RemoteException {
+        return miner.mineRange(message, dificulty, start, end);
+    }
+
+    /**
+     * Cancela o intervalo em curso para uma mensagem
+     * 
+     * @param message Mensagem cujo intervalo deve parar
+     * @throws RemoteException Em caso de erro RMI
+     */
+    @Override
+    public void cancelRange(String message) throws RemoteException {
+        miner.cancelRange(message);
+    }
+
+    /**
+     * Obtém o débito de mineração deste nó
+     * 
+     * @return Hashes por segundo
+     * @throws RemoteException Em caso de erro RMI
+     */
+    @Override
+    public double getHashRate() throws RemoteException {
+        return miner.getHashRate();
+    }
+
+    /**
+     * Obtém a telemetria de mineração deste nó
+     * Inclui o serviço de prova de trabalho dos blocos e transações
+     * e o minerador distribuído
+     * 
+     * @return Snapshots das estatísticas de cada minerador
+     * @throws RemoteException Em caso de erro RMI
+     */
+    @Override
+    public List<MiningStats.Snapshot> getMiningStats() throws RemoteException {
+        List<MiningStats.Snapshot> stats = new ArrayList<>();
+        stats.add(MiningService.getDefault().getStats().snapshot());
+        stats.add(miner.getStats().snapshot());
+        return stats;
     }
 
     /**
@@ -482,35 +645,37 @@ public class RemoteVotingObject extends UnicastRemoteObject implements RemoteVot
                 if(this.isMyChainShorter(node.getBlockchainHeight())){
                     try {
                         // Este nó tem blockchain mais curta, recebe blocos do outro
-                        String[] hashes = node.getBlockHashes();
-                        String[] myhashes = blockchain.getBlockHashes();
-                        
-                        
-                        int len = Math.min(hashes.length, myhashes.length);
-                        List<String> common = new ArrayList<>();
-                        
-                        for (int i = 0; i < len; i++) {
-                            if (!hashes[i].equals(myhashes[i])) {
-                                break;
-                            }
-                            common.add(hashes[i]);
-                            
+                        // Último bloco comum: envia o localizador (O(log n) hashes)
+                        // e o outro nó responde com o bloco comum mais alto
+                        Hash256 lastCommon = node.findCommonBlock(blockchain.getBlockLocator());
+                        if (lastCommon == null) {
+                            // O génesis é sempre comum: sem bloco comum as cadeias são incompatíveis
+                            // (outro génesis, por exemplo com outra dificuldade inicial)
+                            throw new RemoteException("No common block with peer: incompatible genesis");
                         }
-                        String lastCommon = common.isEmpty() ? null : common.get(common.size() - 1);
-                        
-                        
                         
                         byte[ ] aux =  SecurityUtils.decrypt(node.getAes(rsa.getPublic()), rsa.getPrivate());
-                        aux = SecurityUtils.decrypt(node.getBlocksFrom(lastCommon.getBytes()), SecurityUtils.getAESKey(aux));
+                        aux = SecurityUtils.decrypt(node.getBlocksFrom(lastCommon), SecurityUtils.getAESKey(aux));
                         List<Block> blocks = (List<Block>) SecurityUtils.deserialize(aux);
                         
                         
                         
-                        for (Block block : blocks) {
-                            for (Transaction trans : block.getTransactions()) {
-                                this.addTransaction(trans);
+                        // Os blocos entram diretamente na cadeia; só se não
+                        // ligarem ou forem inválidos é que os votos são
+                        // reenviados para o mempool (os repetidos são recusados)
+                        try {
+                            blockchain.sync(blocks);
+                        } catch (IllegalStateException ex) {
+                            System.getLogger(RemoteVotingObject.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+                            for (Block block : blocks) {
+                                for (Transaction trans : block.getTransactions()) {
+                                    this.addTransaction(trans);
+                                }
                             }
-                        }       } catch (Exception ex) {
+                        }
+                    } catch (RemoteException ex) {
+                        throw ex;
+                    } catch (Exception ex) {
                         System.getLogger(RemoteVotingObject.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
                     }
             
@@ -5,26 +5,20 @@
 package blockchained;
 
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 /**
  * Representa um bloco numa blockchain
- * Cada bloco contém um conjunto de transações, um hash do bloco anterior,
- * uma Merkle root das transações, e um nonce obtido através de mineração
+ * Cada bloco contém um conjunto de transações e um cabeçalho binário de
+ * tamanho fixo (BlockHeader) com o hash do bloco anterior, a Merkle root das
+ * transações e o nonce obtido através de mineração. O hash do bloco é o hash
+ * do cabeçalho, calculado uma vez e guardado
  * 
  * @author Acer
  */
 public class Block implements Serializable {
-    private int blockID; // Identificador único do bloco na cadeia
-    private String previousHash; // Hash do bloco anterior (liga os blocos)
-    private String merkleRoot; // Raiz da árvore de Merkle das transações
-    private String currentHash; // Hash atual deste bloco
-    private int nonce; // Número usado uma vez (proof-of-work)
+    private BlockHeader header; // Cabeçalho minerado (altura, ligações, dificuldade e nonce)
     private List<Transaction> transactions; // Lista de transações neste bloco
 
     /**
@@ -34,50 +28,72 @@ public class Block implements Serializable {
      * @param blockID Identificador do bloco
      * @param previousHash Hash do bloco anterior na cadeia
      * @param transactions Lista de transações a incluir no bloco
+     * @param difficulty Dificuldade em bits a zero exigida para este bloco
      * @throws InterruptedException Se o processo de mineração for interrompido
      */
-    public Block(int blockID, String previousHash, List<Transaction> transactions) throws InterruptedException {
+    public Block(int blockID, Hash256 previousHash, List<Transaction> transactions, int difficulty) throws InterruptedException {
         System.out.println("Making blocks");
-        this.blockID = blockID;
-        
-        System.out.println("Making previous hash");
-        this.previousHash = previousHash;
-        
         System.out.println("Making Transacitions");
         // Cria uma cópia da lista para evitar modificações externas
         this.transactions = new ArrayList<>(transactions);
         
         System.out.println("Making merkle root");
         // Calcula a Merkle root (resumo criptográfico de todas as transações)
-        this.merkleRoot = calculateMerkleRoot();
+        BlockHeader unsolved = new BlockHeader(BlockHeader.VERSION, blockID, previousHash,
+                calculateMerkleRoot(), System.currentTimeMillis(), difficulty, new Nonce(0, 0));
         
         System.out.println("Making nonce");
         // Minera o bloco para encontrar um nonce válido (proof-of-work)
-        this.nonce = Miner.getNonce(previousHash + getMerkleRoot(), 3);
+        // sobre a parte fixa do cabeçalho, serializada uma única vez
+        Nonce solution = MiningService.getDefault().mine(unsolved.getProofOfWorkPrefix(), difficulty);
+        this.header = unsolved.withNonce(solution);
         
         System.out.println("Making current hash");
-        // Calcula o hash final do bloco
-        this.currentHash = calculateHash();
+        // Calcula (e guarda) o hash final do bloco
+        header.getHash();
         
         System.out.println("Finished making blocks");
     }
 
     /**
-     * Calcula o hash SHA-256 do bloco
-     * Combina o ID do bloco, hash anterior, merkle root, nonce e transações
+     * Reconstrói um bloco já minerado (lido do disco)
+     * Não volta a minerar: o hash é o do cabeçalho
      * 
-     * @return Hash do bloco em formato hexadecimal
+     * @param header Cabeçalho com a solução da prova de trabalho
+     * @param transactions Transações do bloco
      */
-    public String calculateHash() {
-        try {
-            // Concatena todos os dados do bloco
-            String data = blockID + previousHash + merkleRoot + nonce + transactionsToString();
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hash);
-        } catch (NoSuchAlgorithmException ex) {
-            throw new RuntimeException(ex);
-        }
+    Block(BlockHeader header, List<Transaction> transactions) {
+        this.header = header;
+        this.transactions = transactions;
+    }
+
+    /**
+     * Obtém o cabeçalho binário do bloco
+     * 
+     * @return Cabeçalho
+     */
+    public BlockHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Verifica se o nonce do bloco satisfaz a dificuldade declarada
+     * 
+     * @return true se a prova de trabalho for válida
+     */
+    public boolean hasValidProofOfWork() {
+        return header.hasValidProofOfWork();
+    }
+
+    /**
+     * Recalcula o hash do bloco a partir do cabeçalho (sem usar o valor guardado)
+     * As transações entram através da Merkle root, pelo que o custo não
+     * depende do número de transações
+     * 
+     * @return Hash do bloco
+     */
+    public Hash256 calculateHash() {
+        return header.computeHash();
     }
     
     /**
@@ -85,16 +101,16 @@ public class Block implements Serializable {
      * A Merkle root permite verificar eficientemente se uma transação
      * está incluída no bloco sem ter que verificar todas as transações
      * 
-     * @return Merkle root em formato hexadecimal
+     * @return Merkle root
      */
-    private String calculateMerkleRoot() {
-        // Se não houver transações, retorna "0"
+    private Hash256 calculateMerkleRoot() {
+        // Se não houver transações, retorna o hash nulo
         if (transactions.isEmpty()) {
-            return "0";
+            return Hash256.ZERO;
         }
         
         // Começa com os hashes de todas as transações
-        List<String> hashes = new ArrayList<>();
+        List<Hash256> hashes = new ArrayList<>();
         for (Transaction tx : transactions) {
             hashes.add(tx.getTransactionId());
         }
@@ -102,7 +118,7 @@ public class Block implements Serializable {
         // Constrói a árvore de Merkle combinando pares de hashes
         // até restar apenas um hash (a raiz)
         while (hashes.size() > 1) {
-            List<String> newHashes = new ArrayList<>();
+            List<Hash256> newHashes = new ArrayList<>();
             // Percorre os hashes em pares
             for (int i = 0; i < hashes.size(); i += 2) {
                 if (i + 1 < hashes.size()) {
@@ -120,43 +136,27 @@ public class Block implements Serializable {
     }
     
     /**
-     * Calcula o hash de um par de strings concatenadas
+     * Calcula o hash de um par de hashes concatenados (64 bytes)
      * Usado na construção da árvore de Merkle
      * 
-     * @param a Primeira string
-     * @param b Segunda string
-     * @return Hash SHA-256 da concatenação em formato hexadecimal
-     */
-    private String hashPair(String a, String b) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest((a + b).getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
-    }
-    
-    /**
-     * Converte todas as transações numa string concatenada
-     * 
-     * @return String com todos os IDs de transações concatenados
+     * @param a Primeiro hash
+     * @param b Segundo hash
+     * @return Hash SHA-256 da concatenação
      */
-    private String transactionsToString() {
-        StringBuilder sb = new StringBuilder();
-        for (Transaction tx : transactions) {
-            sb.append(tx.getTransactionId());
-        }
-        return sb.toString();
+    private Hash256 hashPair(Hash256 a, Hash256 b) {
+        byte[] pair = new byte[2 * Hash256.SIZE];
+        a.writeTo(pair, 0);
+        b.writeTo(pair, Hash256.SIZE);
+        return Hash256.sha256(pair);
     }
-
+    
     /**
      * Obtém o ID do bloco
      * 
      * @return ID do bloco
      */
     public int getBlockID() {
-        return blockID;
+        return header.getHeight();
     }
 
     /**
@@ -164,8 +164,8 @@ public class Block implements Serializable {
      * 
      * @return Hash do bloco anterior
      */
-    public String getPreviousHash() {
-        return previousHash;
+    public Hash256 getPreviousHash() {
+        return header.getPreviousHash();
     }
 
     /**
@@ -173,8 +173,8 @@ public class Block implements Serializable {
      * 
      * @return Merkle root
      */
-    public String getMerkleRoot() {
-        return merkleRoot;
+    public Hash256 getMerkleRoot() {
+        return header.getMerkleRoot();
     }
 
     /**
@@ -182,8 +182,44 @@ public class Block implements Serializable {
      * 
      * @return Hash do bloco
      */
-    public String getCurrentHash() {
-        return currentHash;
+    public Hash256 getCurrentHash() {
+        return header.getHash();
+    }
+
+    /**
+     * Obtém o nonce da prova de trabalho
+     * 
+     * @return Nonce
+     */
+    public long getNonce() {
+        return header.getNonce();
+    }
+
+    /**
+     * Obtém o extra-nonce da prova de trabalho
+     * 
+     * @return Extra-nonce
+     */
+    public int getExtraNonce() {
+        return header.getExtraNonce();
+    }
+
+    /**
+     * Obtém o instante de criação do bloco
+     * 
+     * @return Timestamp em milissegundos
+     */
+    public long getTimestamp() {
+        return header.getTimestamp();
+    }
+
+    /**
+     * Obtém a dificuldade do bloco
+     * 
+     * @return Número de bits a zero exigidos na prova de trabalho
+     */
+    public int getDifficulty() {
+        return header.getDifficulty();
     }
 
     /**
@@ -204,11 +240,10 @@ public class Block implements Serializable {
     @Override
     public String toString() {
         // Mostra apenas os primeiros 8 caracteres dos hashes
-        String hashPreview = currentHash.length() >= 8 ? currentHash.substring(0, 8) + "..." : currentHash;
-        String prevHashPreview = previousHash.length() >= 8 ? 
-                                 previousHash.substring(0, 8) + "..." : previousHash;
+        String hashPreview = getCurrentHash().toHex().substring(0, 8) + "...";
+        String prevHashPreview = getPreviousHash().toHex().substring(0, 8) + "...";
         return "Block{" +
-               "number=" + blockID +
+               "number=" + getBlockID() +
                ", hash='" + hashPreview + "', " +
                "previousHash='" + prevHashPreview + "', " +
                "transactions=" + transactions.size() +
@@ -217,26 +252,13 @@ public class Block implements Serializable {
     
     /**
      * Valida a integridade do bloco
-     * Recalcula o hash e compara com o hash armazenado
+     * Verifica se as transações correspondem à Merkle root do cabeçalho
+     * (o hash do bloco é sempre derivado do cabeçalho, pelo que não pode divergir)
+     * Custa O(transações); a validação da cadeia usa apenas o cabeçalho
      * 
      * @return true se o bloco for válido, false caso contrário
      */
     public boolean isValid() {
-        return currentHash.equals(calculateHash());
-    }
-    
-    /**
-     * Converte um array de bytes para representação hexadecimal
-     * Usado para converter hashes binários em strings legíveis
-     * 
-     * @param bytes Array de bytes a converter
-     * @return String hexadecimal
-     */
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        for (byte b : bytes) {
-            result.append(String.format("%02x", b));
-        }
-        return result.toString();
+        return header.getMerkleRoot().equals(calculateMerkleRoot());
     }
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+package blockchained;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Cabeçalho binário de tamanho fixo de um bloco
+ * É a única coisa sobre a qual é feita a prova de trabalho e calculado o hash
+ * do bloco; as transações entram apenas através da Merkle root, pelo que
+ * minerar e validar um bloco custa sempre o mesmo, seja qual for o número de
+ * transações
+ *
+ * Formato (big-endian, 96 bytes):
+ * version (4) | height (4) | previousHash (32) | merkleRoot (32) |
+ * timestamp (8) | difficulty (4) | extraNonce (4) | nonce (8)
+ *
+ * Os primeiros PREFIX_SIZE bytes são fixos durante a mineração; o extra-nonce
+ * e o nonce são acrescentados pelo ProofOfWork. O hash (Hash256) é calculado
+ * uma vez e guardado
+ *
+ * @author Acer
+ */
+public class BlockHeader implements Serializable {
+
+    public static final int VERSION = 1; // Versão atual do formato
+    public static final int HASH_SIZE = Hash256.SIZE; // Tamanho dos hashes no cabeçalho
+    public static final int PREFIX_SIZE = 4 + 4 + HASH_SIZE + HASH_SIZE + 8 + 4; // Parte fixa durante a mineração
+    public static final int SIZE = PREFIX_SIZE + NonceSearch.EXTRA_NONCE_BYTES + NonceSearch.NONCE_BYTES; // Cabeçalho completo
+
+    private final int version; // Versão do formato
+    private final int height; // Altura do bloco na cadeia
+    private final Hash256 previousHash; // Hash do bloco anterior
+    private final Hash256 merkleRoot; // Raiz da árvore de Merkle das transações
+    private final long timestamp; // Instante de criação (ms)
+    private final int difficulty; // Bits a zero exigidos
+    private final int extraNonce; // Extra-nonce da prova de trabalho
+    private final long nonce; // Nonce da prova de trabalho
+    private transient Hash256 hash; // Hash do cabeçalho (calculado uma vez)
+
+    /**
+     * Cria um cabeçalho
+     *
+     * @param version Versão do formato
+     * @param height Altura do bloco
+     * @param previousHash Hash do bloco anterior
+     * @param merkleRoot Merkle root das transações
+     * @param timestamp Instante de criação (ms)
+     * @param difficulty Bits a zero exigidos
+     * @param nonce Solução da prova de trabalho
+     */
+    public BlockHeader(int version, int height, Hash256 previousHash, Hash256 merkleRoot,
+            long timestamp, int difficulty, Nonce nonce) {
+        this.version = version;
+        this.height = height;
+        this.previousHash = previousHash;
+        this.merkleRoot = merkleRoot;
+        this.timestamp = timestamp;
+        this.difficulty = difficulty;
+        this.extraNonce = nonce.getExtraNonce();
+        this.nonce = nonce.getNonce();
+    }
+
+    /**
+     * Cria uma cópia deste cabeçalho com outra solução da prova de trabalho
+     *
+     * @param solution Extra-nonce e nonce
+     * @return Novo cabeçalho
+     */
+    public BlockHeader withNonce(Nonce solution) {
+        return new BlockHeader(version, height, previousHash, merkleRoot, timestamp, difficulty, solution);
+    }
+
+    /**
+     * Serializa a parte fixa do cabeçalho (tudo menos extra-nonce e nonce)
+     *
+     * @return PREFIX_SIZE bytes
+     */
+    public byte[] getProofOfWorkPrefix() {
+        byte[] out = new byte[PREFIX_SIZE];
+        NonceSearch.writeInt(out, 0, version);
+        NonceSearch.writeInt(out, 4, height);
+        previousHash.writeTo(out, 8);
+        merkleRoot.writeTo(out, 8 + HASH_SIZE);
+        NonceSearch.writeNonce(out, 8 + 2 * HASH_SIZE, timestamp);
+        NonceSearch.writeInt(out, 16 + 2 * HASH_SIZE, difficulty);
+        return out;
+    }
+
+    /**
+     * Serializa o cabeçalho completo
+     *
+     * @return SIZE bytes
+     */
+    public byte[] serialize() {
+        byte[] out = Arrays.copyOf(getProofOfWorkPrefix(), SIZE);
+        NonceSearch.writeInt(out, PREFIX_SIZE, extraNonce);
+        NonceSearch.writeNonce(out, PREFIX_SIZE + NonceSearch.EXTRA_NONCE_BYTES, nonce);
+        return out;
+    }
+
+    /**
+     * Calcula o hash do cabeçalho sem usar o valor guardado
+     *
+     * @return Hash da prova de trabalho do cabeçalho
+     */
+    public Hash256 computeHash() {
+        return Hash256.of(ProofOfWork.getDefault().hash(getProofOfWorkPrefix(), getSolution()));
+    }
+
+    /**
+     * Obtém o hash do cabeçalho (calculado na primeira chamada)
+     *
+     * @return Hash do bloco
+     */
+    public Hash256 getHash() {
+        if (hash == null) {
+            hash = computeHash();
+        }
+        return hash;
+    }
+
+    /**
+     * Verifica se o hash cumpre a dificuldade declarada
+     *
+     * @return true se a prova de trabalho for válida
+     */
+    public boolean hasValidProofOfWork() {
+        return ProofOfWork.meetsTarget(getHash().toBytes(), difficulty);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Hash256 getPreviousHash() {
+        return previousHash;
+    }
+
+    public Hash256 getMerkleRoot() {
+        return merkleRoot;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    public int getExtraNonce() {
+        return extraNonce;
+    }
+
+    public long getNonce() {
+        return nonce;
+    }
+
+    /**
+     * Obtém a solução da prova de trabalho
+     *
+     * @return Extra-nonce e nonce
+     */
+    public Nonce getSolution() {
+        return new Nonce(extraNonce, nonce);
+    }
+
+    /**
+     * Lê um cabeçalho serializado (serialize)
+     *
+     * @param in Buffer com o cabeçalho
+     * @param offset Posição inicial
+     * @return Cabeçalho
+     */
+    public static BlockHeader deserialize(byte[] in, int offset) {
+        return deserialize(in, offset, null);
+    }
+
+    /**
+     * Lê um cabeçalho serializado cujo hash já é conhecido (guardado no
+     * índice do BlockStore), sem o voltar a calcular
+     *
+     * @param in Buffer com o cabeçalho
+     * @param offset Posição inicial
+     * @param hash Hash do cabeçalho ou null para o calcular quando for pedido
+     * @return Cabeçalho
+     */
+    static BlockHeader deserialize(byte[] in, int offset, Hash256 hash) {
+        ByteBuffer buffer = ByteBuffer.wrap(in, offset, SIZE);
+        int version = buffer.getInt();
+        int height = buffer.getInt();
+        byte[] bytes = new byte[HASH_SIZE];
+        buffer.get(bytes);
+        Hash256 previousHash = Hash256.of(bytes);
+        buffer.get(bytes);
+        Hash256 merkleRoot = Hash256.of(bytes);
+        long timestamp = buffer.getLong();
+        int difficulty = buffer.getInt();
+        int extraNonce = buffer.getInt();
+        long nonce = buffer.getLong();
+        BlockHeader header = new BlockHeader(version, height, previousHash, merkleRoot, timestamp, difficulty,
+                new Nonce(extraNonce, nonce));
+        header.hash = hash;
+        return header;
+    }
+}
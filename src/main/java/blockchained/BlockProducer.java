@@ -0,0 +1,143 @@
+package blockchained;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Produtor de blocos
+ * Mina os blocos numa thread própria, fora do caminho dos pedidos RMI: os
+ * pedidos só admitem a transação no mempool e avisam o produtor. Um bloco é
+ * produzido quando passa o intervalo configurado (se houver transações
+ * pendentes) ou logo que o mempool atinge o limiar de transações, e leva
+ * todas as pendentes até ao tamanho máximo de um bloco
+ * (Blockchain.MAX_BLOCK_TRANSACTIONS / MAX_BLOCK_BYTES)
+ *
+ * Configuração no arranque:
+ * -Dblock.interval=2000 (ms) -Dblock.threshold=500 (transações)
+ *
+ * @author Acer
+ */
+public class BlockProducer {
+
+    private final Blockchain blockchain; // Cadeia onde os blocos são acrescentados
+    private final long intervalMillis; // Intervalo máximo entre blocos com transações pendentes
+    private final int threshold; // Transações pendentes que disparam um bloco imediato
+    private final ScheduledExecutorService executor; // Thread de produção
+    private final AtomicBoolean scheduled = new AtomicBoolean(); // Já há uma produção imediata agendada
+
+    /**
+     * Cria um produtor com o intervalo e o limiar das propriedades do sistema
+     *
+     * @param blockchain Cadeia onde os blocos são acrescentados
+     */
+    public BlockProducer(Blockchain blockchain) {
+        this(blockchain, Long.parseLong(System.getProperty("block.interval", "2000")),
+                Integer.parseInt(System.getProperty("block.threshold", "500")));
+    }
+
+    /**
+     * Cria um produtor
+     *
+     * @param blockchain Cadeia onde os blocos são acrescentados
+     * @param intervalMillis Intervalo máximo entre blocos com transações pendentes (ms)
+     * @param threshold Transações pendentes que disparam um bloco imediato
+     */
+    public BlockProducer(Blockchain blockchain, long intervalMillis, int threshold) {
+        this.blockchain = blockchain;
+        this.intervalMillis = intervalMillis;
+        this.threshold = threshold;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "block-producer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Inicia a produção periódica de blocos
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::produce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Para a produção (o bloco em curso é terminado)
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Espera que a produção pare depois de shutdown
+     *
+     * @param timeoutMillis Tempo máximo de espera
+     * @return true se a thread de produção terminou
+     * @throws InterruptedException Se a espera for interrompida
+     */
+    public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Avisa o produtor de que foi admitida uma transação
+     * Se o mempool tiver atingido o limiar, agenda um bloco imediato
+     */
+    public void onTransaction() {
+        if (blockchain.getPendingTransactionCount() >= threshold && scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                scheduled.set(false);
+                produce();
+            });
+        }
+    }
+
+    /**
+     * Produz blocos enquanto houver transações pendentes suficientes
+     * (pelo menos um bloco se houver alguma)
+     */
+    private void produce() {
+        try {
+            do {
+                if (blockchain.getPendingTransactionCount() == 0) {
+                    return;
+                }
+                blockchain.minePendingTransactions();
+            } while (blockchain.getPendingTransactionCount() >= threshold);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            // Uma falha não pode cancelar a produção periódica
+            System.getLogger(BlockProducer.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+        }
+    }
+
+    /**
+     * Espera até não haver transações pendentes
+     *
+     * @param timeoutMillis Tempo máximo de espera
+     * @return true se o mempool ficou vazio
+     * @throws InterruptedException Se a espera for interrompida
+     */
+    public boolean awaitEmpty(long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (blockchain.getPendingTransactionCount() > 0) {
+            if (System.currentTimeMillis() > end) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        // O último lote pode ainda estar a ser minerado (fora do monitor da
+        // Blockchain): espera que a thread de produção acabe a tarefa em curso
+        try {
+            executor.submit(() -> { }).get(Math.max(1, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException | TimeoutException | RejectedExecutionException ex) {
+            return false;
+        }
+    }
+}
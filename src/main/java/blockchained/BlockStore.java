@@ -0,0 +1,740 @@
+package blockchained;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Armazenamento persistente dos blocos
+ * Os blocos são escritos num registo só de acrescento, dividido em segmentos
+ * (blocks-00000.dat, blocks-00001.dat, ...), num formato binário compacto:
+ *
+ * registo: length (4) | crc32 (4) | cabeçalho (96) | n (4) | n transações
+ * transação: id (32) | algoritmo (1 + ...) | chave (2 + ...) | voto (4 + ...) |
+ * eleição (2 + ...) | assinatura (2 + ...) | extraNonce (4) | nonce (8)
+ *
+ * Dois índices em ficheiros mapeados em memória:
+ * - heights.idx: por altura, hash (32) | localização (8) | cabeçalho (96),
+ *   pelo que reabrir a cadeia só lê este ficheiro; as transações de cada
+ *   bloco são lidas do registo quando são pedidas pela primeira vez
+ * - hashes.idx: tabela de dispersão (endereçamento aberto) hash -> altura
+ *
+ * Numa reorganização os registos antigos ficam no ficheiro (só acrescento) e
+ * as entradas das alturas substituídas são reescritas; as entradas de
+ * hashes.idx dos blocos descartados são ignoradas porque a altura tem outro
+ * hash (como no índice da ChainView)
+ *
+ * Escrita com commit em grupo: append não espera pelo disco; uma thread
+ * faz fsync dos segmentos e dos índices a cada -Dstore.commitInterval ms
+ * (10 por defeito), cobrindo de uma vez todos os blocos escritos entretanto,
+ * e commit() espera até os blocos já escritos estarem no disco. O tamanho
+ * guardado no cabeçalho de heights.idx só é atualizado depois do fsync dos
+ * segmentos; ao reabrir, as entradas são verificadas (ligações e limites dos
+ * ficheiros) e os últimos VERIFY_TAIL registos são relidos com CRC, parando
+ * no primeiro bloco que não sobreviveu a uma falha
+ *
+ * Só uma thread de cada vez pode escrever (o escritor da Blockchain)
+ *
+ * @author Acer
+ */
+public final class BlockStore implements Closeable {
+
+    private static final int MAGIC = 0x564F5442; // "VOTB"
+    private static final int VERSION = 1; // Versão do formato
+    private static final int HEADER = 64; // Cabeçalho dos ficheiros de índice
+    private static final int ENTRY = Hash256.SIZE + 8 + BlockHeader.SIZE; // Entrada de heights.idx
+    private static final int SLOT = Hash256.SIZE + 4; // Entrada de hashes.idx (hash, altura + 1)
+    private static final int OFFSET_BITS = 40; // Bits do deslocamento na localização (o resto é o segmento)
+    private static final int VERIFY_TAIL = 256; // Registos finais relidos com CRC ao abrir
+
+    private final Path dir; // Diretoria do armazenamento
+    private final long segmentSize; // Tamanho a partir do qual se abre um novo segmento
+    private final List<FileChannel> segments = new ArrayList<>(); // Segmentos do registo
+    private long position; // Fim do último segmento
+    private int dirtySegment; // Primeiro segmento escrito desde o último fsync
+
+    private FileChannel heightsChannel; // Aberto em open
+    private MappedByteBuffer heights; // heights.idx mapeado
+    private int heightsCapacity; // Entradas mapeadas
+    private FileChannel hashesChannel;
+    private MappedByteBuffer hashes; // hashes.idx mapeado
+    private int hashesCapacity; // Posições da tabela (potência de 2)
+    private int hashesCount; // Posições ocupadas
+
+    private int size; // Blocos no armazenamento
+    private int validatedHeight; // Marca de água da validação (guardada com o tamanho)
+    private long appended; // Escritas feitas
+    private long durable; // Escritas já no disco
+    private boolean failed; // Houve uma falha de escrita: o armazenamento deixa de aceitar escritas
+    private final Object commitLock = new Object(); // Um fsync de cada vez
+    private final ScheduledExecutorService committer; // Thread do commit em grupo
+
+    /**
+     * Abre (ou cria) um armazenamento com os parâmetros das propriedades do
+     * sistema (-Dstore.segmentSize em bytes, -Dstore.commitInterval em ms)
+     *
+     * @param dir Diretoria do armazenamento
+     * @throws IOException Se não for possível abrir os ficheiros
+     */
+    public BlockStore(Path dir) throws IOException {
+        this(dir, Long.parseLong(System.getProperty("store.segmentSize", String.valueOf(64L << 20))),
+                Long.parseLong(System.getProperty("store.commitInterval", "10")));
+    }
+
+    /**
+     * Abre (ou cria) um armazenamento
+     *
+     * @param dir Diretoria do armazenamento
+     * @param segmentSize Tamanho máximo de cada segmento (bytes)
+     * @param commitIntervalMillis Intervalo do commit em grupo (ms)
+     * @throws IOException Se não for possível abrir os ficheiros
+     */
+    public BlockStore(Path dir, long segmentSize, long commitIntervalMillis) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        // O commit em grupo só é agendado no fim, com os índices já abertos
+        this.committer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "block-store-commit");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            open();
+        } catch (IOException | RuntimeException ex) {
+            // Não fica nenhum ficheiro aberto nem a thread do commit
+            committer.shutdown();
+            closeChannels();
+            throw ex;
+        }
+        committer.scheduleWithFixedDelay(() -> {
+            try {
+                commit();
+            } catch (IOException ex) {
+                System.getLogger(BlockStore.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+            }
+        }, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre os segmentos e os índices (chamado pelo construtor)
+     *
+     * @throws IOException Se não for possível abrir ou reconstruir os ficheiros
+     */
+    private void open() throws IOException {
+        Files.createDirectories(dir);
+
+        // Segmentos existentes, por ordem
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> paths = files.filter(p -> p.getFileName().toString().matches("blocks-\\d{5}\\.dat"))
+                    .sorted(Comparator.comparing(Path::toString)).toList();
+            for (Path p : paths) {
+                segments.add(FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.add(openSegment(0));
+        }
+        position = segments.get(segments.size() - 1).size();
+        dirtySegment = segments.size() - 1;
+
+        // Índice por altura
+        heightsChannel = FileChannel.open(dir.resolve("heights.idx"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = heightsChannel.size() < HEADER;
+        mapHeights(Math.max(1024, (int) ((heightsChannel.size() - HEADER) / ENTRY)));
+        if (created || heights.getInt(0) != MAGIC) {
+            heights.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, 0).putInt(12, 0);
+        }
+        size = recover(heights.getInt(8));
+        validatedHeight = Math.min(heights.getInt(12), size - 1);
+
+        // Índice por hash: reconstruído se faltar ou não corresponder
+        Path hashesPath = dir.resolve("hashes.idx");
+        hashesChannel = FileChannel.open(hashesPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (hashesChannel.size() >= HEADER) {
+            hashes = hashesChannel.map(FileChannel.MapMode.READ_WRITE, 0, hashesChannel.size());
+            hashesCapacity = hashes.getInt(4);
+            hashesCount = hashes.getInt(8);
+        }
+        if (hashes == null || hashes.getInt(0) != MAGIC
+                || hashesChannel.size() != HEADER + (long) hashesCapacity * SLOT || hashesCount < size) {
+            rebuildHashes(Math.max(1024, Integer.highestOneBit(Math.max(1, size) * 4)));
+        }
+    }
+
+    /**
+     * Fecha os ficheiros abertos até agora (falha ao abrir)
+     */
+    private void closeChannels() {
+        List<Closeable> channels = new ArrayList<>(segments);
+        channels.add(heightsChannel);
+        channels.add(hashesChannel);
+        for (Closeable channel : channels) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ex) {
+                System.getLogger(BlockStore.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+            }
+        }
+    }
+
+    private FileChannel openSegment(int index) throws IOException {
+        return FileChannel.open(dir.resolve(String.format("blocks-%05d.dat", index)), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void mapHeights(int capacity) throws IOException {
+        heights = heightsChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * ENTRY);
+        heightsCapacity = capacity;
+    }
+
+    /**
+     * Verifica as entradas do índice ao abrir
+     * Todas: altura, ligação ao bloco anterior e localização dentro do
+     * segmento; as últimas VERIFY_TAIL: CRC do registo
+     *
+     * @param stored Tamanho guardado no cabeçalho
+     * @return Número de blocos válidos
+     * @throws IOException Se não for possível ler o registo
+     */
+    private int recover(int stored) throws IOException {
+        long[] segmentSizes = new long[segments.size()];
+        for (int i = 0; i < segmentSizes.length; i++) {
+            segmentSizes[i] = segments.get(i).size();
+        }
+        // Compara os bytes diretamente no ficheiro mapeado, sem criar objetos
+        int valid = 0;
+        byte[] previous = new byte[Hash256.SIZE];
+        byte[] linked = new byte[Hash256.SIZE];
+        for (int h = 0; h < Math.min(stored, heightsCapacity); h++) {
+            int entry = Math.toIntExact(HEADER + (long) h * ENTRY);
+            int header = entry + Hash256.SIZE + 8;
+            heights.get(header + 8, linked);
+            long location = heights.getLong(entry + Hash256.SIZE);
+            int segment = (int) (location >>> OFFSET_BITS);
+            long offset = location & ((1L << OFFSET_BITS) - 1);
+            if (heights.getInt(header + 4) != h || !Arrays.equals(linked, previous)
+                    || segment >= segmentSizes.length || offset + 8 > segmentSizes[segment]) {
+                break;
+            }
+            heights.get(entry, previous);
+            valid++;
+        }
+        for (int h = Math.max(0, valid - VERIFY_TAIL); h < valid; h++) {
+            try {
+                readPayload(location(h));
+            } catch (IOException | RuntimeException ex) {
+                valid = h;
+                break;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Obtém a diretoria do armazenamento
+     *
+     * @return Diretoria dos segmentos e dos índices
+     */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Obtém o número de blocos guardados
+     *
+     * @return Altura da cadeia guardada
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Obtém a marca de água da validação guardada com os blocos
+     *
+     * @return Altura até à qual os blocos guardados foram validados
+     */
+    public synchronized int getValidatedHeight() {
+        return validatedHeight;
+    }
+
+    /**
+     * Atualiza a marca de água da validação (guardada no próximo commit)
+     *
+     * @param height Altura até à qual a cadeia foi validada
+     */
+    public synchronized void setValidatedHeight(int height) {
+        validatedHeight = Math.min(height, size - 1);
+    }
+
+    /**
+     * Acrescenta um bloco no fim da cadeia guardada
+     * O bloco tem de estar à altura size(); fica no disco no próximo commit
+     *
+     * @param block Bloco
+     * @throws IOException Se a escrita falhar (o armazenamento deixa de aceitar escritas)
+     */
+    public synchronized void append(Block block) throws IOException {
+        if (failed) {
+            throw new IOException("Block store closed after a write failure");
+        }
+        if (block.getBlockID() != size) {
+            throw new IllegalArgumentException("Block " + block.getBlockID() + " appended at height " + size);
+        }
+        // Um bloco que não cabe no formato é recusado sem afetar o armazenamento
+        byte[] record = encode(block);
+        try {
+            if (position > 0 && position + record.length > segmentSize) {
+                segments.add(openSegment(segments.size()));
+                position = 0;
+            }
+            FileChannel segment = segments.get(segments.size() - 1);
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            long offset = position;
+            while (buffer.hasRemaining()) {
+                position += segment.write(buffer, position);
+            }
+
+            if (size == heightsCapacity) {
+                mapHeights(heightsCapacity * 2);
+            }
+            long entry = HEADER + (long) size * ENTRY;
+            Hash256 hash = block.getCurrentHash();
+            byte[] bytes = new byte[Hash256.SIZE];
+            hash.writeTo(bytes, 0);
+            heights.put(Math.toIntExact(entry), bytes);
+            heights.putLong(Math.toIntExact(entry + Hash256.SIZE), (long) (segments.size() - 1) << OFFSET_BITS | offset);
+            heights.put(Math.toIntExact(entry + Hash256.SIZE + 8), block.getHeader().serialize());
+            putHash(hash, size);
+            size++;
+            appended++;
+        } catch (IOException | RuntimeException ex) {
+            failed = true;
+            throw ex;
+        }
+    }
+
+    /**
+     * Remove os blocos a partir de uma altura (reorganização)
+     * Os registos ficam no ficheiro; as alturas são reescritas pelos
+     * blocos seguintes
+     *
+     * @param from Altura do primeiro bloco a remover
+     */
+    public synchronized void truncate(int from) {
+        if (from < size) {
+            size = from;
+            validatedHeight = Math.min(validatedHeight, size - 1);
+            appended++;
+        }
+    }
+
+    /**
+     * Garante que todos os blocos já escritos estão no disco
+     * Vários chamadores concorrentes partilham o mesmo fsync (commit em grupo)
+     *
+     * @throws IOException Se o fsync falhar
+     */
+    public void commit() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        synchronized (commitLock) {
+            if (durable >= target) {
+                // O fsync de outro chamador já cobriu estas escritas
+                return;
+            }
+            List<FileChannel> dirty;
+            long covered;
+            int coveredSize;
+            int coveredValidated;
+            MappedByteBuffer index;
+            MappedByteBuffer table;
+            synchronized (this) {
+                covered = appended;
+                coveredSize = size;
+                coveredValidated = validatedHeight;
+                dirty = new ArrayList<>(segments.subList(dirtySegment, segments.size()));
+                dirtySegment = segments.size() - 1;
+                index = heights;
+                table = hashes;
+            }
+            // Primeiro os registos, depois os índices e só então o tamanho
+            // (o escritor continua a acrescentar blocos durante o fsync)
+            for (FileChannel segment : dirty) {
+                segment.force(false);
+            }
+            index.force();
+            table.force();
+            synchronized (this) {
+                heights.putInt(8, coveredSize).putInt(12, coveredValidated);
+                index = heights;
+            }
+            index.force(0, HEADER);
+            durable = covered;
+        }
+    }
+
+    /**
+     * Obtém os blocos guardados (as transações são lidas do registo quando
+     * forem pedidas pela primeira vez)
+     *
+     * @return Blocos do génesis ao topo
+     */
+    public synchronized List<Block> getBlocks() {
+        List<Block> blocks = new ArrayList<>(size);
+        for (int h = 0; h < size; h++) {
+            blocks.add(get(h));
+        }
+        return blocks;
+    }
+
+    /**
+     * Obtém o bloco numa altura
+     *
+     * @param height Altura
+     * @return Bloco (com as transações lidas quando forem pedidas)
+     */
+    public synchronized Block get(int height) {
+        if (height < 0 || height >= size) {
+            throw new IndexOutOfBoundsException("Height " + height + " out of " + size);
+        }
+        BlockHeader header = BlockHeader.deserialize(entryHeader(height), 0, readHash(height));
+        return new Block(header, new StoredTransactions(this, height, location(height)));
+    }
+
+    /**
+     * Obtém a altura de um bloco a partir do seu hash (hashes.idx)
+     *
+     * @param hash Hash do bloco
+     * @return Altura ou -1 se o bloco não estiver guardado
+     */
+    public synchronized int find(Hash256 hash) {
+        int mask = hashesCapacity - 1;
+        for (int slot = (int) hash.word(0) & mask; ; slot = (slot + 1) & mask) {
+            int base = HEADER + slot * SLOT;
+            int height = hashes.getInt(base + Hash256.SIZE) - 1;
+            if (height == -1) {
+                return -1;
+            }
+            if (slotHash(base).equals(hash)) {
+                // Entrada de um bloco descartado numa reorganização?
+                return height < size && readHash(height).equals(hash) ? height : -1;
+            }
+        }
+    }
+
+    private void putHash(Hash256 hash, int height) throws IOException {
+        if ((hashesCount + 1) * 2 > hashesCapacity) {
+            rebuildHashes(hashesCapacity * 2);
+        }
+        int mask = hashesCapacity - 1;
+        for (int slot = (int) hash.word(0) & mask; ; slot = (slot + 1) & mask) {
+            int base = HEADER + slot * SLOT;
+            if (hashes.getInt(base + Hash256.SIZE) == 0) {
+                byte[] bytes = new byte[Hash256.SIZE];
+                hash.writeTo(bytes, 0);
+                hashes.put(base, bytes).putInt(base + Hash256.SIZE, height + 1);
+                hashes.putInt(8, ++hashesCount);
+                return;
+            }
+            if (slotHash(base).equals(hash)) {
+                hashes.putInt(base + Hash256.SIZE, height + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reconstrói hashes.idx a partir de heights.idx (ao abrir ou para crescer)
+     * Escreve num ficheiro novo que substitui o antigo no fim
+     */
+    private void rebuildHashes(int capacity) throws IOException {
+        Path path = dir.resolve("hashes.idx");
+        Path tmp = dir.resolve("hashes.idx.tmp");
+        FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        hashes = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * SLOT);
+        hashes.putInt(0, MAGIC).putInt(4, capacity).putInt(8, 0);
+        hashesCapacity = capacity;
+        hashesCount = 0;
+        for (int h = 0; h < size; h++) {
+            putHash(readHash(h), h);
+        }
+        hashes.force();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (hashesChannel != null) {
+            hashesChannel.close();
+        }
+        hashesChannel = channel;
+    }
+
+    private Hash256 slotHash(int base) {
+        byte[] bytes = new byte[Hash256.SIZE];
+        hashes.get(base, bytes);
+        return Hash256.of(bytes);
+    }
+
+    private Hash256 readHash(int height) {
+        byte[] bytes = new byte[Hash256.SIZE];
+        heights.get(Math.toIntExact(HEADER + (long) height * ENTRY), bytes);
+        return Hash256.of(bytes);
+    }
+
+    private long location(int height) {
+        return heights.getLong(Math.toIntExact(HEADER + (long) height * ENTRY + Hash256.SIZE));
+    }
+
+    private byte[] entryHeader(int height) {
+        byte[] bytes = new byte[BlockHeader.SIZE];
+        heights.get(Math.toIntExact(HEADER + (long) height * ENTRY + Hash256.SIZE + 8), bytes);
+        return bytes;
+    }
+
+    /**
+     * Lê e descodifica as transações do registo de um bloco
+     */
+    private List<Transaction> readRecord(long location) throws IOException {
+        return decodeTransactions(readPayload(location).position(BlockHeader.SIZE));
+    }
+
+    /**
+     * Lê e verifica (CRC) o registo de um bloco
+     */
+    private ByteBuffer readPayload(long location) throws IOException {
+        FileChannel segment;
+        synchronized (this) {
+            segment = segments.get((int) (location >>> OFFSET_BITS));
+        }
+        long offset = location & ((1L << OFFSET_BITS) - 1);
+        ByteBuffer prefix = ByteBuffer.allocate(8);
+        readFully(segment, prefix, offset);
+        int length = prefix.getInt(0);
+        if (length < BlockHeader.SIZE + 4 || offset + 8 + length > segment.size()) {
+            throw new IOException("Truncated block record at " + offset);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(segment, payload, offset + 8);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        if ((int) crc.getValue() != prefix.getInt(4)) {
+            throw new IOException("Corrupt block record at " + offset);
+        }
+        return payload;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Codifica um bloco no formato do registo
+     */
+    private static byte[] encode(Block block) {
+        List<byte[]> parts = new ArrayList<>();
+        int length = BlockHeader.SIZE + 4;
+        for (Transaction tx : block.getTransactions()) {
+            byte[] part = encodeTransaction(tx);
+            parts.add(part);
+            length += part.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(8 + length);
+        out.putInt(length).putInt(0);
+        out.put(block.getHeader().serialize()).putInt(parts.size());
+        for (byte[] part : parts) {
+            out.put(part);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 8, length);
+        out.putInt(4, (int) crc.getValue());
+        return out.array();
+    }
+
+    /**
+     * Codifica uma transação no formato do registo
+     *
+     * @param tx Transação
+     * @return Bytes da transação
+     * @throws IllegalArgumentException Se um campo exceder o tamanho do seu
+     * prefixo (algoritmo 255 bytes; chave, eleição e assinatura 65535 bytes)
+     */
+    static byte[] encodeTransaction(Transaction tx) {
+        byte[] algorithm = checkLength("algorithm", tx.getPublicVoterKey().getAlgorithm().getBytes(StandardCharsets.UTF_8), 0xFF);
+        byte[] key = checkLength("public key", tx.getPublicVoterKey().getEncoded(), 0xFFFF);
+        byte[] vote = tx.getEncryptedVote().getBytes(StandardCharsets.UTF_8);
+        byte[] election = checkLength("election id", tx.getElectionId().getBytes(StandardCharsets.UTF_8), 0xFFFF);
+        byte[] signature = checkLength("signature", tx.getSignature(), 0xFFFF);
+        ByteBuffer b = ByteBuffer.allocate(Hash256.SIZE + 1 + algorithm.length + 2 + key.length + 4 + vote.length
+                + 2 + election.length + 2 + signature.length + 4 + 8);
+        b.put(tx.getTransactionId().toBytes());
+        b.put((byte) algorithm.length).put(algorithm);
+        b.putShort((short) key.length).put(key);
+        b.putInt(vote.length).put(vote);
+        b.putShort((short) election.length).put(election);
+        b.putShort((short) signature.length).put(signature);
+        b.putInt(tx.getExtraNonce()).putLong(tx.getNonce());
+        return b.array();
+    }
+
+    private static byte[] checkLength(String field, byte[] bytes, int max) {
+        if (bytes.length > max) {
+            throw new IllegalArgumentException("Transaction " + field + " too long: " + bytes.length + " bytes (max " + max + ")");
+        }
+        return bytes;
+    }
+
+    /**
+     * Descodifica as transações de um registo
+     */
+    private static List<Transaction> decodeTransactions(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transactions.add(decodeTransaction(in));
+        }
+        return transactions;
+    }
+
+    /**
+     * Descodifica uma transação (encodeTransaction) a partir da posição atual
+     *
+     * @param in Buffer posicionado no início da transação (fica no fim)
+     * @return Transação
+     * @throws IOException Se a transação estiver mal formada
+     */
+    static Transaction decodeTransaction(ByteBuffer in) throws IOException {
+        try {
+            byte[] id = new byte[Hash256.SIZE];
+            in.get(id);
+            String algorithm = new String(bytes(in, in.get() & 0xFF), StandardCharsets.UTF_8);
+            byte[] key = bytes(in, in.getShort() & 0xFFFF);
+            String vote = new String(bytes(in, in.getInt()), StandardCharsets.UTF_8);
+            String election = new String(bytes(in, in.getShort() & 0xFFFF), StandardCharsets.UTF_8);
+            byte[] signature = bytes(in, in.getShort() & 0xFFFF);
+            int extraNonce = in.getInt();
+            long nonce = in.getLong();
+            Key publicKey = KeyFactory.getInstance(algorithm).generatePublic(new X509EncodedKeySpec(key));
+            return new Transaction(Hash256.of(id), publicKey, vote, election, signature, extraNonce, nonce);
+        } catch (java.security.GeneralSecurityException | RuntimeException ex) {
+            throw new IOException("Invalid transaction in block record", ex);
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer in, int length) {
+        byte[] out = new byte[length];
+        in.get(out);
+        return out;
+    }
+
+    /**
+     * Faz o último commit e fecha os ficheiros
+     *
+     * @throws IOException Se o commit falhar
+     */
+    @Override
+    public void close() throws IOException {
+        committer.shutdown();
+        commit();
+        synchronized (this) {
+            for (FileChannel segment : segments) {
+                segment.close();
+            }
+            heightsChannel.close();
+            hashesChannel.close();
+        }
+    }
+
+    /**
+     * Transações de um bloco guardado, lidas do registo no primeiro acesso
+     * Ao ser serializado (RMI) é substituído por uma ArrayList
+     */
+    static final class StoredTransactions extends AbstractList<Transaction> implements Serializable {
+
+        private final transient BlockStore store; // Armazenamento de onde são lidas
+        private final int height; // Altura do bloco (mensagens de erro)
+        private final long location; // Localização do registo
+        private transient volatile List<Transaction> loaded; // Transações já lidas
+
+        StoredTransactions(BlockStore store, int height, long location) {
+            this.store = store;
+            this.height = height;
+            this.location = location;
+        }
+
+        private List<Transaction> load() {
+            List<Transaction> list = loaded;
+            if (list == null) {
+                try {
+                    list = store.readRecord(location);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Cannot read block " + height + " from the store", ex);
+                }
+                loaded = list;
+            }
+            return list;
+        }
+
+        /**
+         * Indica se as transações já foram lidas e descodificadas
+         *
+         * @return true se estiverem em memória
+         */
+        boolean isLoaded() {
+            return loaded != null;
+        }
+
+        /**
+         * Lê do registo as transações codificadas, sem as descodificar
+         *
+         * @return Buffer com n (4) e as n transações
+         * @throws IOException Se o registo não puder ser lido
+         */
+        ByteBuffer body() throws IOException {
+            return store.readPayload(location).position(BlockHeader.SIZE).slice();
+        }
+
+        @Override
+        public Transaction get(int index) {
+            return load().get(index);
+        }
+
+        @Override
+        public int size() {
+            return load().size();
+        }
+
+        private Object writeReplace() {
+            return new ArrayList<>(load());
+        }
+    }
+}
@@ -4,7 +4,12 @@
  */
 package blockchained;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
 import java.security.Key;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Base64;
@@ -13,6 +18,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import utils.Session;
 
 /**
@@ -20,42 +30,336 @@ import utils.Session;
  * Gere a cadeia de blocos, transações pendentes, registo de votantes
  * e validação de votos para prevenir votação duplicada
  * 
+ * Concorrência: as alterações da cadeia (sync, minePendingTransactions,
+ * addBlock) são serializadas pelo monitor do objeto (um escritor de cada vez).
+ * A prova de trabalho de minePendingTransactions corre fora do monitor,
+ * sobre uma vista da cadeia; o monitor só é tomado para publicar o bloco
+ * As transações pendentes ficam no Mempool, que aceita inserções concorrentes.
+ * As leituras da cadeia não usam locks: cada alteração publica uma nova
+ * ChainView imutável numa referência volatile e os leitores usam a vista
+ * atual (ou snapshot() para várias leituras coerentes)
+ * 
+ * Persistência: com um BlockStore (open), cada bloco que entra na cadeia é
+ * escrito no disco pelo escritor e, ao reiniciar, a cadeia é reaberta a
+ * partir do disco em vez de ser sincronizada de novo pela rede
+ * 
  * @author Acer
  */
 public class Blockchain {
 
-    private List<Block> chain; // Cadeia de blocos (a blockchain propriamente dita)
-    private List<Transaction> pendingTransactions; // Transações pendentes de serem mineradas
-    private int difficulty; // Dificuldade de mineração (número de zeros no hash)
-    private Map<String, Set<String>> voterRegistry; // Registo: chave pública -> eleições em que votou
+    public static final int DEFAULT_RETARGET_INTERVAL = 10; // Blocos entre reajustes de dificuldade
+    public static final long DEFAULT_TARGET_BLOCK_TIME = 10_000; // Intervalo alvo entre blocos (ms)
+    public static final int MIN_DIFFICULTY = 1; // Dificuldade mínima (bits)
+    public static final int MAX_DIFFICULTY = 255; // Dificuldade máxima (bits)
+    public static final int MAX_ADJUSTMENT = 2; // Variação máxima por reajuste (bits, fator 4)
+    public static final long GENESIS_TIMESTAMP = 1_704_067_200_000L; // Timestamp fixo do génesis (2024-01-01 UTC)
+    public static final int LOCATOR_DENSE = 10; // Hashes consecutivos no início do localizador
+    public static final int MAX_BLOCK_TRANSACTIONS = 2000; // Transações máximas por bloco
+    public static final long MAX_BLOCK_BYTES = 1 << 20; // Bytes máximos de transações por bloco
+
+    private volatile ChainView view; // Cadeia de blocos publicada (a blockchain propriamente dita)
+    private final Mempool mempool; // Transações pendentes de serem mineradas
+    private final VoteTally tally; // Contagem materializada dos votos na cadeia
+    private int difficulty; // Dificuldade inicial de mineração (número de bits a zero no hash)
+    private long targetBlockTime; // Intervalo alvo entre blocos (ms)
+    private int retargetInterval; // Número de blocos entre reajustes de dificuldade
+    private final VoterRegistry voterRegistry; // Registo: votante -> eleições em que votou
     private Map<String, Election> elections; // Mapa de eleições disponíveis
+    private volatile int validatedHeight; // Altura até à qual a cadeia já foi validada (marca de água)
+    private final BlockStore store; // Armazenamento persistente dos blocos (null = só em memória)
+    private final OffHeapStore offHeap; // Transações fora do heap (null = no heap)
+    private final int snapshotInterval = Integer.getInteger("snapshot.interval", 1000); // Blocos entre snapshots do estado
+    private final ExecutorService snapshotWriter; // Thread que escreve os snapshots (null = só em memória)
+    private Hash256 snapshotHash; // Bloco do último snapshot do estado
+    private int snapshotHeight = -1; // Altura do último snapshot do estado
 
     /**
      * Construtor que inicializa a blockchain com um bloco génesis
+     * Usa o intervalo alvo e o período de reajuste por defeito
      * 
-     * @param difficulty Dificuldade de mineração dos blocos
+     * @param difficulty Dificuldade inicial em bits a zero
      * @throws InterruptedException Se a criação do bloco génesis for interrompida
      */
     public Blockchain(int difficulty) throws InterruptedException {
-        this.chain = new ArrayList<>();
-        this.pendingTransactions = new ArrayList<>();
+        this(difficulty, DEFAULT_TARGET_BLOCK_TIME, DEFAULT_RETARGET_INTERVAL);
+    }
+
+    /**
+     * Construtor que inicializa a blockchain com um bloco génesis
+     * 
+     * @param difficulty Dificuldade inicial em bits a zero
+     * @param targetBlockTime Intervalo alvo entre blocos (ms)
+     * @param retargetInterval Número de blocos entre reajustes de dificuldade
+     * @throws InterruptedException Se a criação do bloco génesis for interrompida
+     */
+    public Blockchain(int difficulty, long targetBlockTime, int retargetInterval) throws InterruptedException {
+        this(difficulty, targetBlockTime, retargetInterval, null);
+    }
+
+    /**
+     * Abre uma blockchain persistente numa diretoria
+     * Se a diretoria já tiver blocos, a cadeia continua a partir deles;
+     * senão é criado e guardado um bloco génesis
+     * 
+     * @param dir Diretoria do armazenamento
+     * @param difficulty Dificuldade inicial em bits a zero
+     * @return Blockchain
+     * @throws IOException Se não for possível abrir o armazenamento
+     * @throws InterruptedException Se a criação do bloco génesis for interrompida
+     */
+    public static Blockchain open(Path dir, int difficulty) throws IOException, InterruptedException {
+        return new Blockchain(difficulty, DEFAULT_TARGET_BLOCK_TIME, DEFAULT_RETARGET_INTERVAL, new BlockStore(dir));
+    }
+
+    /**
+     * Construtor que inicializa a blockchain a partir de um armazenamento
+     * Os blocos guardados foram validados antes de serem escritos até à marca
+     * de água guardada com eles, pelo que não voltam a ser validados; as
+     * eleições, a contagem e o registo de votantes são carregados do último
+     * snapshot do estado (StateSnapshot) e só os blocos acima dele são contados
+     * 
+     * @param difficulty Dificuldade inicial em bits a zero
+     * @param targetBlockTime Intervalo alvo entre blocos (ms)
+     * @param retargetInterval Número de blocos entre reajustes de dificuldade
+     * @param store Armazenamento dos blocos (null = só em memória)
+     * @throws InterruptedException Se a criação do bloco génesis for interrompida
+     */
+    public Blockchain(int difficulty, long targetBlockTime, int retargetInterval, BlockStore store)
+            throws InterruptedException {
+        this.store = store;
+        this.offHeap = "offheap".equals(System.getProperty("chain.storage")) ? new OffHeapStore() : null;
         this.difficulty = difficulty;
-        this.voterRegistry = new HashMap<>();
-        this.elections = new HashMap<>();
+        this.targetBlockTime = targetBlockTime;
+        this.retargetInterval = retargetInterval;
+        StateSnapshot snapshot = store != null && store.size() > 0 ? StateSnapshot.latest(store) : null;
+        this.voterRegistry = snapshot != null ? snapshot.getVoterRegistry() : new VoterRegistry();
+        this.elections = snapshot != null ? snapshot.getElections() : new ConcurrentHashMap<>();
+        this.tally = snapshot != null ? snapshot.getTally() : new VoteTally();
+        this.snapshotWriter = store == null ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "state-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        this.mempool = new Mempool(this::hasVoterVoted);
+
+        if (store != null && store.size() > 0) {
+            // Reabre a cadeia guardada; no modo offheap as transações de cada
+            // bloco só passam para fora do heap quando são lidas
+            List<Block> blocks = new ArrayList<>();
+            for (Block block : store.getBlocks()) {
+                blocks.add(offHeap == null ? block : offHeap.defer(block));
+            }
+            ChainView chain = ChainView.of(blocks.get(0));
+            for (Block block : blocks.subList(1, blocks.size())) {
+                chain = chain.append(block);
+            }
+            // Conta só os blocos acima do snapshot
+            if (snapshot != null) {
+                snapshotHeight = snapshot.getHeight();
+                snapshotHash = snapshot.getHash();
+            }
+            for (Block block : blocks.subList(snapshotHeight + 1, blocks.size())) {
+                tally.add(block);
+                registerVoters(block);
+            }
+            this.view = chain;
+            this.validatedHeight = Math.max(0, store.getValidatedHeight());
+        } else {
+            // Cria o bloco génesis (primeiro bloco da cadeia)
+            Block genesis = createGenesisBlock(difficulty);
+            persist(0, List.of(genesis), 0);
+            this.view = ChainView.of(toStorage(genesis));
+            this.validatedHeight = 0;
+        }
+    }
 
-        // Cria o bloco génesis (primeiro bloco da cadeia)
-        chain.add(createGenesisBlock());
+    /**
+     * Escreve no armazenamento os blocos que vão entrar na cadeia
+     * É chamado antes de a nova vista ser publicada: se a escrita falhar a
+     * exceção chega ao chamador e a cadeia em memória não muda (depois de
+     * uma falha de escrita o BlockStore deixa de aceitar escritas)
+     * 
+     * @param from Altura a partir da qual os blocos guardados são substituídos
+     * @param blocks Blocos a partir dessa altura
+     * @param validated Marca de água da validação depois da escrita
+     * @throws UncheckedIOException Se a escrita falhar
+     * @throws IllegalArgumentException Se um bloco não couber no formato do armazenamento
+     */
+    private void persist(int from, List<Block> blocks, int validated) {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.truncate(from);
+            for (Block block : blocks) {
+                store.append(block);
+            }
+            store.setValidatedHeight(validated);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Escreve no disco um snapshot do estado (eleições, contagem e registo de
+     * votantes) no bloco do topo e espera que fique escrito
+     * 
+     * @throws IOException Se a escrita falhar (o snapshot anterior continua válido)
+     */
+    public synchronized void saveState() throws IOException {
+        if (store == null) {
+            return;
+        }
+        ChainView chain = view;
+        Hash256 hash = chain.getLatest().getCurrentHash();
+        byte[] data = StateSnapshot.encode(chain.size() - 1, hash, elections.values(), tally, voterRegistry);
+        store.commit();
+        StateSnapshot.write(store.getDirectory(), chain.size() - 1, data);
+        snapshotHeight = chain.size() - 1;
+        snapshotHash = hash;
+    }
+
+    /**
+     * Agenda um snapshot do estado se a cadeia tiver crescido
+     * -Dsnapshot.interval blocos (1000 por defeito) desde o último, ou
+     * sempre que forced for true (eleições novas, que não estão nos blocos)
+     * O estado é codificado aqui, pelo escritor, e escrito no disco pela
+     * thread dos snapshots, depois de os blocos até ao topo estarem no disco
+     * 
+     * @param forced true para agendar mesmo antes do intervalo
+     */
+    private synchronized void saveStateIfDue(boolean forced) {
+        ChainView chain = view;
+        int height = chain.size() - 1;
+        if (snapshotWriter == null || (!forced && height - snapshotHeight < snapshotInterval)) {
+            return;
+        }
+        Hash256 hash = chain.getLatest().getCurrentHash();
+        try {
+            byte[] data = StateSnapshot.encode(height, hash, elections.values(), tally, voterRegistry);
+            snapshotWriter.execute(() -> {
+                try {
+                    store.commit();
+                    StateSnapshot.write(store.getDirectory(), height, data);
+                } catch (IOException | RuntimeException ex) {
+                    System.getLogger(Blockchain.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+                }
+            });
+            snapshotHeight = height;
+            snapshotHash = hash;
+        } catch (IOException | RuntimeException ex) {
+            System.getLogger(Blockchain.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+        }
+    }
+
+    /**
+     * Escreve no disco os blocos pendentes e um snapshot do estado (se a
+     * cadeia tiver mudado desde o último) e fecha o armazenamento (e a
+     * memória fora do heap)
+     * 
+     * @throws IOException Se a escrita falhar
+     */
+    public void close() throws IOException {
+        if (store != null) {
+            snapshotWriter.shutdown();
+            try {
+                snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                if (!view.getLatest().getCurrentHash().equals(snapshotHash)) {
+                    saveState();
+                }
+                store.close();
+            }
+        }
+        if (offHeap != null) {
+            synchronized (this) {
+                offHeap.close();
+            }
+        }
     }
 
     /**
      * Cria o bloco génesis - o primeiro bloco da blockchain
-     * Este bloco não tem hash anterior (usa "0") nem transações
+     * Este bloco não tem hash anterior (usa o hash nulo) nem transações
+     * O génesis tem de ser igual em todos os nós (o localizador do sync
+     * conta com ele como bloco comum): o timestamp é GENESIS_TIMESTAMP e o
+     * nonce é o menor que cumpre a dificuldade, com extra-nonce 0, procurado
+     * sequencialmente numa só thread. Nós com a mesma dificuldade inicial
+     * têm assim o mesmo génesis
      * 
      * @return Bloco génesis
-     * @throws InterruptedException Se a mineração for interrompida
      */
-    private Block createGenesisBlock() throws InterruptedException {
-        return new Block(difficulty, "0", new ArrayList<>());
+    static Block createGenesisBlock(int difficulty) {
+        BlockHeader unsolved = new BlockHeader(BlockHeader.VERSION, 0, Hash256.ZERO, Hash256.ZERO,
+                GENESIS_TIMESTAMP, difficulty, new Nonce(0, 0));
+        try {
+            NonceSearch search = new NonceSearch(ProofOfWork.getDefault().getAlgorithm(),
+                    unsolved.getProofOfWorkPrefix(), difficulty);
+            search.setExtraNonce(0);
+            long nonce = search.search(0, Long.MAX_VALUE);
+            return new Block(unsolved.withNonce(new Nonce(0, nonce)), new ArrayList<>());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Calcula a dificuldade esperada para o bloco numa dada altura
+     * A dificuldade mantém-se igual à do bloco anterior, exceto a cada
+     * retargetInterval blocos, em que é ajustada em função do tempo que os
+     * últimos retargetInterval blocos demoraram face ao intervalo alvo:
+     * cada bit a mais duplica o trabalho esperado, cada bit a menos divide-o
+     * 
+     * @param height Altura do bloco (0 = génesis)
+     * @return Dificuldade esperada em bits a zero
+     */
+    public int getDifficultyAt(int height) {
+        return getDifficultyAt(view, height);
+    }
+
+    /**
+     * Calcula a dificuldade esperada para o bloco numa dada altura de uma vista
+     * 
+     * @param chain Vista da cadeia com os blocos anteriores
+     * @param height Altura do bloco (0 = génesis)
+     * @return Dificuldade esperada em bits a zero
+     */
+    int getDifficultyAt(ChainView chain, int height) {
+        if (height == 0) {
+            return difficulty;
+        }
+        int previous = chain.get(height - 1).getDifficulty();
+        if (height % retargetInterval != 0) {
+            return previous;
+        }
+
+        // Tempo real gasto nos últimos retargetInterval blocos (o timestamp
+        // do génesis é fixo e não conta: a janela começa no bloco 1)
+        int first = Math.max(1, height - retargetInterval);
+        if (height - 1 <= first) {
+            return previous;
+        }
+        long actual = chain.get(height - 1).getTimestamp() - chain.get(first).getTimestamp();
+        long expected = targetBlockTime * (height - 1 - first);
+        actual = Math.max(actual, 1);
+
+        // Ajuste em bits = log2(esperado / real), limitado a MAX_ADJUSTMENT
+        long adjustment = Math.round(Math.log((double) expected / actual) / Math.log(2));
+        adjustment = Math.max(-MAX_ADJUSTMENT, Math.min(MAX_ADJUSTMENT, adjustment));
+        return (int) Math.max(MIN_DIFFICULTY, Math.min(MAX_DIFFICULTY, previous + adjustment));
+    }
+
+    /**
+     * Obtém a dificuldade que o próximo bloco terá de cumprir
+     * 
+     * @return Dificuldade em bits a zero
+     */
+    public int getNextDifficulty() {
+        ChainView chain = view;
+        return getDifficultyAt(chain, chain.size());
     }
 
     /**
@@ -64,59 +368,340 @@ public class Blockchain {
      * 
      * @return Array com os hashes de todos os blocos
      */
-    public String[] getBlockHashes() {
-        String[] hashes = new String[chain.size()];
+    public Hash256[] getBlockHashes() {
+        ChainView chain = view;
+        Hash256[] hashes = new Hash256[chain.size()];
         for (int i = 0; i < chain.size(); i++) {
             hashes[i] = chain.get(i).getCurrentHash();
         }
         return hashes;
     }
 
+    /**
+     * Obtém a altura de um bloco a partir do seu hash
+     * Usa o índice hash -> altura, pelo que não depende do tamanho da cadeia
+     * 
+     * @param hash Hash do bloco
+     * @return Altura do bloco ou -1 se não estiver na cadeia
+     */
+    public int getHeightOf(Hash256 hash) {
+        return view.getHeightOf(hash);
+    }
+
+    /**
+     * Constrói o localizador de blocos desta cadeia
+     * Contém os últimos LOCATOR_DENSE hashes e depois hashes com espaçamento
+     * a duplicar até ao génesis (sempre incluído), do mais alto para o mais
+     * baixo: O(log n) hashes que permitem a outro nó encontrar o ponto de
+     * bifurcação sem transferir a cadeia toda
+     * 
+     * @return Hashes do localizador
+     */
+    public Hash256[] getBlockLocator() {
+        ChainView chain = view;
+        List<Hash256> locator = new ArrayList<>();
+        int step = 1;
+        for (int height = chain.size() - 1; height > 0; height -= step) {
+            locator.add(chain.get(height).getCurrentHash());
+            if (locator.size() >= LOCATOR_DENSE) {
+                step *= 2;
+            }
+        }
+        locator.add(chain.get(0).getCurrentHash());
+        return locator.toArray(new Hash256[0]);
+    }
+
+    /**
+     * Encontra o bloco comum mais alto a partir do localizador de outro nó
+     * Como o localizador vem do mais alto para o mais baixo, o primeiro hash
+     * conhecido é o ponto de bifurcação
+     * 
+     * @param locator Localizador de blocos do outro nó
+     * @return Hash do bloco comum ou null se nenhum for conhecido
+     */
+    public Hash256 findForkPoint(Hash256[] locator) {
+        ChainView chain = view;
+        for (Hash256 hash : locator) {
+            if (chain.contains(hash)) {
+                return hash;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Verifica se um bloco faz parte da cadeia
+     * 
+     * @param hash Hash do bloco
+     * @return true se o bloco estiver na cadeia
+     */
+    public boolean contains(Hash256 hash) {
+        return view.contains(hash);
+    }
+
+    /**
+     * Obtém a vista atual da cadeia
+     * Imutável: várias leituras sobre a mesma vista são sempre coerentes,
+     * mesmo que entretanto sejam acrescentados blocos
+     * 
+     * @return Vista da cadeia
+     */
+    public ChainView snapshot() {
+        return view;
+    }
+
     /**
      * Obtém o último bloco da cadeia
      * 
      * @return Último bloco adicionado à blockchain
      */
     public Block getLatestBlock() {
-        return chain.get(chain.size() - 1);
+        return view.getLatest();
     }
 
     /**
      * Sincroniza a blockchain local com blocos recebidos de outro nó
      * Remove blocos divergentes e adiciona os novos blocos
      * 
+     * Os blocos recebidos têm de ligar a um bloco já existente (ponto de
+     * bifurcação). Só o segmento novo é validado, a partir do ponto de
+     * bifurcação ou da marca de água (o que for mais baixo), pelo que o custo
+     * depende do número de blocos recebidos e não do tamanho da cadeia.
+     * A nova cadeia é montada e validada numa vista ainda não publicada: os
+     * leitores nunca veem o segmento por validar e, se for inválido, a cadeia
+     * fica exatamente no estado anterior. Cada transação recebida é validada
+     * como em addTransaction (assinatura, prova de trabalho, ID e eleição
+     * ativa) e nenhum votante pode votar duas vezes na mesma eleição
+     * 
+     * Regra de escolha: os blocos que já estão na cadeia são ignorados e o
+     * resto só substitui os blocos locais acima do ponto de bifurcação se
+     * tiver mais trabalho acumulado (soma de 2^dificuldade) do que eles;
+     * com o mesmo trabalho fica a cadeia local (a primeira recebida)
+     * 
      * @param newBlocks Lista de blocos para sincronizar
-     * @throws IllegalStateException Se a blockchain ficar inválida após sincronização
+     * @throws IllegalStateException Se os blocos não ligarem à cadeia, forem
+     * inválidos ou não tiverem mais trabalho do que os blocos que substituem
+     * @throws UncheckedIOException Se os blocos não puderem ser guardados (a cadeia não muda)
      */
-    public void sync(List<Block> newBlocks) {
+    public synchronized void sync(List<Block> newBlocks) {
         if (newBlocks.isEmpty()) {
             return;
         }
 
-        Block start = newBlocks.get(0);
-        int index = -1;
+        // Encontra o ponto de bifurcação: o bloco local que o primeiro bloco
+        // novo referencia, pelo hash (não usa referência de objetos porque
+        // podem vir de máquinas diferentes)
+        ChainView current = view;
+        int anchor = current.getHeightOf(newBlocks.get(0).getPreviousHash());
+        if (anchor == -1) {
+            throw new IllegalStateException("Blocks do not link to the local chain");
+        }
 
-        // Encontra o índice do primeiro bloco novo comparando hashes
-        // (não usa referência de objetos porque podem vir de máquinas diferentes)
-        for (int i = 0; i < chain.size(); i++) {
-            if (chain.get(i).getCurrentHash().equals(start.getCurrentHash())) {
-                index = i;
-                break;
-            }
+        // Ignora os blocos iniciais que a cadeia local já tem
+        int known = 0;
+        while (known < newBlocks.size() && anchor + 1 < current.size()
+                && current.get(anchor + 1).getCurrentHash().equals(newBlocks.get(known).getCurrentHash())) {
+            anchor++;
+            known++;
         }
+        if (known == newBlocks.size()) {
+            return;
+        }
+        newBlocks = newBlocks.subList(known, newBlocks.size());
 
-        // Remove blocos antigos a partir do índice encontrado
-        if (index != -1) {
-            chain.subList(index, chain.size()).clear();
+        // Só substitui os blocos locais por um ramo com mais trabalho
+        BigInteger replaced = work(current.subList(anchor + 1, current.size()));
+        if (work(newBlocks).compareTo(replaced) <= 0) {
+            throw new IllegalStateException("Blocks from height " + (anchor + 1)
+                    + " do not carry more work than the local chain");
         }
 
-        // Adiciona os novos blocos
-        chain.addAll(newBlocks);
+        // Verifica se as transações de cada bloco recebido correspondem à sua Merkle root
+        // (antes de alterar a cadeia)
+        for (Block block : newBlocks) {
+            if (!block.isValid()) {
+                throw new IllegalStateException("Block " + block.getBlockID() + " has an invalid Merkle root");
+            }
+        }
+
+        // Substitui os blocos divergentes pelos novos numa vista nova
+        ChainView candidate = current.truncate(anchor + 1);
+        for (Block block : newBlocks) {
+            candidate = candidate.append(block);
+        }
 
-        // Valida a integridade da blockchain após sincronização
-        if (!isChainValid()) {
+        // Valida apenas o segmento ainda não validado
+        int from = Math.min(anchor, validatedHeight) + 1;
+        if (!isChainValid(candidate, from, candidate.size())) {
+            // A vista candidata é descartada (a cadeia e a marca de água não mudaram)
             throw new IllegalStateException("Blockchain invalid after sync!");
         }
+        // Valida cada transação recebida e os votos repetidos (ainda sem
+        // alterar a contagem nem o registo de votantes)
+        validateTransactions(current.subList(anchor + 1, current.size()), newBlocks);
+        // No modo offheap só os blocos válidos passam para fora do heap
+        List<Block> stored = newBlocks;
+        if (offHeap != null) {
+            stored = new ArrayList<>(newBlocks.size());
+            candidate = current.truncate(anchor + 1);
+            for (Block block : newBlocks) {
+                Block offHeapBlock = toStorage(block);
+                stored.add(offHeapBlock);
+                candidate = candidate.append(offHeapBlock);
+            }
+        }
+        persist(anchor + 1, newBlocks, candidate.size() - 1);
+        view = candidate;
+        validatedHeight = candidate.size() - 1;
+
+        // Atualiza a contagem e o registo de votantes: desconta os blocos
+        // substituídos e conta os novos
+        Set<String> reorganized = new HashSet<>();
+        for (Block block : current.subList(anchor + 1, current.size())) {
+            tally.remove(block);
+            TransactionView tx = TransactionView.of(block);
+            while (tx.next()) {
+                String electionId = tx.getElectionId();
+                voterRegistry.remove(tx.getVoterFingerprint(), electionId);
+                reorganized.add(electionId);
+            }
+        }
+        for (Block block : stored) {
+            tally.add(block);
+            registerVoters(block);
+        }
+        // Os filtros de Bloom não removem votantes: reconstrói os das
+        // eleições que perderam votos
+        for (String electionId : reorganized) {
+            voterRegistry.rebuild(electionId);
+        }
+
+        // Reconcilia o mempool com a nova cadeia (com o registo já
+        // atualizado): sai o que os blocos novos confirmaram e voltam as
+        // transações dos blocos substituídos que a nova cadeia não tem
+        for (Block block : stored) {
+            mempool.removeConfirmed(block);
+        }
+        for (Block block : current.subList(anchor + 1, current.size())) {
+            mempool.requeue(block);
+        }
+
+        // Os snapshots acima do ponto de bifurcação deixaram de servir:
+        // o intervalo até ao próximo conta a partir daí
+        snapshotHeight = Math.min(snapshotHeight, anchor);
+        saveStateIfDue(false);
+    }
+
+    /**
+     * Valida as transações de um segmento recebido antes de entrar na cadeia:
+     * assinatura, prova de trabalho, ID e eleição ativa de cada uma, e que
+     * nenhum votante aparece duas vezes no segmento nem já está registado
+     * nos blocos abaixo do ponto de bifurcação
+     * 
+     * @param replaced Blocos locais que o segmento substitui (os seus
+     * votantes deixam de estar registados)
+     * @param segment Blocos recebidos
+     * @throws IllegalStateException Se alguma transação for inválida ou repetir um voto
+     */
+    private void validateTransactions(List<Block> replaced, List<Block> segment) {
+        Map<String, Set<Hash256>> released = new HashMap<>();
+        for (Block block : replaced) {
+            TransactionView tx = TransactionView.of(block);
+            while (tx.next()) {
+                released.computeIfAbsent(tx.getElectionId(), id -> new HashSet<>()).add(tx.getVoterFingerprint());
+            }
+        }
+        Map<String, Set<Hash256>> seen = new HashMap<>();
+        for (Block block : segment) {
+            for (Transaction tx : block.getTransactions()) {
+                boolean valid;
+                try {
+                    valid = tx.getPublicVoterKey() instanceof PublicKey
+                            && isTransactionValid(tx, (PublicKey) tx.getPublicVoterKey());
+                } catch (Exception ex) {
+                    valid = false;
+                }
+                if (!valid) {
+                    throw new IllegalStateException("Block " + block.getBlockID() + " has an invalid transaction "
+                            + tx.getTransactionId());
+                }
+                Hash256 voter = VoterRegistry.fingerprint(tx.getPublicVoterKey());
+                String electionId = tx.getElectionId();
+                boolean registered = voterRegistry.hasVoted(voter, electionId)
+                        && !released.getOrDefault(electionId, Set.of()).contains(voter);
+                if (registered || !seen.computeIfAbsent(electionId, id -> new HashSet<>()).add(voter)) {
+                    throw new IllegalStateException("Block " + block.getBlockID() + " repeats a vote in election "
+                            + electionId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calcula o trabalho acumulado de uma sequência de blocos
+     * (cada bloco vale 2^dificuldade tentativas esperadas)
+     *
+     * @param blocks Blocos
+     * @return Trabalho acumulado
+     */
+    static BigInteger work(List<Block> blocks) {
+        BigInteger total = BigInteger.ZERO;
+        for (Block block : blocks) {
+            total = total.add(BigInteger.ONE.shiftLeft(block.getDifficulty()));
+        }
+        return total;
+    }
+
+    /**
+     * Marca que cada votante de um bloco já votou na respetiva eleição
+     * 
+     * @param block Bloco que entrou na cadeia
+     */
+    private void registerVoters(Block block) {
+        TransactionView tx = TransactionView.of(block);
+        while (tx.next()) {
+            voterRegistry.add(tx.getVoterFingerprint(), tx.getElectionId());
+        }
+    }
+
+    /**
+     * Passa as transações de um bloco para fora do heap (modo offheap)
+     * 
+     * @param block Bloco recebido ou minerado
+     * @return Bloco a guardar na cadeia
+     */
+    private Block toStorage(Block block) {
+        return offHeap == null ? block : offHeap.store(block);
+    }
+
+    /**
+     * Obtém um cursor sobre as transações do bloco numa altura
+     * Não cria objetos Transaction quando a cadeia está fora do heap
+     * 
+     * @param height Altura do bloco
+     * @return Cursor antes da primeira transação
+     */
+    public TransactionView getTransactionsAt(int height) {
+        return TransactionView.of(view.get(height));
+    }
+
+    /**
+     * Obtém o armazenamento fora do heap
+     * 
+     * @return Armazenamento ou null se a cadeia estiver no heap
+     */
+    public OffHeapStore getOffHeapStore() {
+        return offHeap;
+    }
+
+    /**
+     * Obtém a altura até à qual a cadeia já foi validada
+     * Os blocos até esta altura não voltam a ser validados em sync
+     * 
+     * @return Altura do último bloco validado
+     */
+    public int getValidatedHeight() {
+        return validatedHeight;
     }
 
     /**
@@ -147,17 +732,22 @@ public class Blockchain {
             throw new IllegalArgumentException("Transação inválida");
         }
 
-        // 3) Prevenção de voto duplicado
-        // Verifica se este eleitor já votou nesta eleição
-        if (hasVoterVoted(transaction.getPublicVoterKey().toString(), transaction.getElectionId())) {
-            throw new IllegalArgumentException(
-                    "O eleitor já votou nesta eleição."
-            );
-        }
-
-        // 4) Adiciona a transação ao pool de transações pendentes
+        // 3) e 4) Adiciona a transação ao mempool, que rejeita duplicados,
+        // um segundo voto pendente do mesmo eleitor na mesma eleição e votos
+        // de eleitores que já votaram nesta eleição
         // Estas transações serão incluídas num bloco após mineração
-        pendingTransactions.add(transaction);
+        Mempool.Admission admission = mempool.add(transaction);
+        switch (admission) {
+            case ADDED:
+                break;
+            case ALREADY_VOTED:
+            case VOTER_PENDING:
+                throw new IllegalArgumentException("O eleitor já votou nesta eleição.");
+            case DUPLICATE:
+                throw new IllegalArgumentException("Transação repetida");
+            default:
+                throw new IllegalStateException("Mempool cheio");
+        }
 
         // Log para debug/auditoria
         System.out.println(
@@ -166,47 +756,137 @@ public class Blockchain {
     }
 
     /**
-     * Minera todas as transações pendentes criando um novo bloco
-     * Atualiza o registo de votantes e limpa a lista de transações pendentes
+     * Minera as transações pendentes criando um novo bloco
+     * Tira do mempool um lote (no máximo MAX_BLOCK_TRANSACTIONS transações e
+     * MAX_BLOCK_BYTES bytes), sem os votos de votantes que entretanto já
+     * ficaram registados na cadeia, atualiza o registo de votantes e só
+     * depois liberta os votantes no mempool
+     * 
+     * A prova de trabalho é feita sem o monitor, sobre a vista atual, pelo
+     * que sync, addBlock e os leitores não esperam pela mineração. Depois o
+     * monitor é tomado para confirmar que o topo não mudou e publicar; se
+     * mudou (entrou um bloco entretanto), o lote é filtrado de novo e
+     * minerado sobre o novo topo
      * 
      * @throws InterruptedException Se a mineração for interrompida
+     * @throws UncheckedIOException Se o bloco não puder ser guardado (o lote volta ao mempool)
      */
     public void minePendingTransactions() throws InterruptedException {
-        // Se não há transações, não faz nada
-        if (pendingTransactions.isEmpty()) {
-            System.out.println("No transactions to mine");
-            return;
+        List<Transaction> batch = mempool.take(MAX_BLOCK_TRANSACTIONS, MAX_BLOCK_BYTES);
+
+        // Descarta os votos cujo votante já está na cadeia (confirmados por
+        // um bloco de outro nó depois de admitidos), para não serem contados duas vezes
+        dropConfirmed(batch);
+
+        while (!batch.isEmpty()) {
+            // Cria um novo bloco com as transações do lote sobre a vista atual
+            // (se a mineração falhar, o lote volta ao mempool)
+            ChainView chain = view;
+            Block mined;
+            try {
+                mined = mineBlock(chain, batch);
+            } catch (InterruptedException | RuntimeException ex) {
+                mempool.putBack(batch);
+                throw ex;
+            }
+
+            synchronized (this) {
+                if (view.getLatest().getCurrentHash().equals(chain.getLatest().getCurrentHash())) {
+                    try {
+                        publish(chain, mined, batch);
+                    } catch (RuntimeException ex) {
+                        // O bloco não foi guardado nem publicado: o lote volta ao mempool
+                        mempool.putBack(batch);
+                        throw ex;
+                    }
+                    return;
+                }
+                // O topo mudou durante a mineração: os votos que entretanto
+                // entraram na cadeia saem do lote
+                dropConfirmed(batch);
+            }
         }
 
-        // Cria um novo bloco com as transações pendentes
-        Block block = new Block(chain.size(), getLatestBlock().getCurrentHash(), pendingTransactions);
+        // Se não há transações, não faz nada
+        System.out.println("No transactions to mine");
+    }
+
+    /**
+     * Minera um bloco com um lote de transações sobre o topo de uma vista
+     * 
+     * @param chain Vista da cadeia onde o bloco vai ser acrescentado
+     * @param batch Transações do bloco
+     * @return Bloco minerado
+     * @throws InterruptedException Se a mineração for interrompida
+     */
+    Block mineBlock(ChainView chain, List<Transaction> batch) throws InterruptedException {
+        return new Block(chain.size(), chain.getLatest().getCurrentHash(), batch,
+                getDifficultyAt(chain, chain.size()));
+    }
 
-        // Adiciona o bloco à cadeia
-        chain.add(block);
+    /**
+     * Publica um bloco minerado localmente sobre o topo atual
+     * (é válido por construção). Chamado com o monitor
+     * 
+     * @param chain Vista atual (o topo do bloco)
+     * @param mined Bloco minerado
+     * @param batch Lote do bloco, cujos votantes são libertados no mempool
+     * @throws UncheckedIOException Se o bloco não puder ser guardado (a cadeia não muda)
+     */
+    private void publish(ChainView chain, Block mined, List<Transaction> batch) {
+        int validated = validatedHeight == chain.size() - 1 ? chain.size() : validatedHeight;
+        persist(chain.size(), List.of(mined), validated);
+        Block block = toStorage(mined);
+        view = chain.append(block);
+        validatedHeight = validated;
+        tally.add(block);
 
         // Atualiza o registo de votantes
         // Marca que cada votante já votou nas respetivas eleições
-        for (Transaction tx : pendingTransactions) {
-            voterRegistry.computeIfAbsent(tx.getPublicVoterKey().toString(), k -> new HashSet<>())
-                    .add(tx.getElectionId());
-        }
+        registerVoters(block);
+
+        // Liberta os votantes do lote no mempool
+        mempool.release(batch);
+        saveStateIfDue(false);
+    }
 
-        // Limpa a lista de transações pendentes
-        pendingTransactions = new ArrayList<>();
+    /**
+     * Retira de um lote os votos cujo votante já está registado na cadeia e
+     * liberta esses votantes no mempool
+     * 
+     * @param batch Lote tirado do mempool
+     */
+    private void dropConfirmed(List<Transaction> batch) {
+        List<Transaction> confirmed = new ArrayList<>();
+        batch.removeIf(tx -> voterRegistry.hasVoted(tx.getPublicVoterKey(), tx.getElectionId()) && confirmed.add(tx));
+        mempool.release(confirmed);
     }
 
     /**
      * Adiciona um bloco já minerado à blockchain
      * Usado durante sincronização com outros nós
+     * Só aceita um bloco que estenda o topo atual; ramos alternativos
+     * entram pelo sync, que aplica a regra do maior trabalho acumulado.
+     * Passa pelo sync: o bloco é validado (Merkle root, ligação, altura,
+     * dificuldade e prova de trabalho) antes de alterar a cadeia, a
+     * contagem, o registo de votantes, o armazenamento ou o snapshot
      * 
      * @param block Bloco a adicionar
+     * @throws IllegalStateException Se o bloco não estender o topo ou for inválido
+     * @throws UncheckedIOException Se o bloco não puder ser guardado (a cadeia não muda)
      */
-    public void addBlock(Block block) {
-        chain.add(block);
+    public synchronized void addBlock(Block block) {
+        // Só estende o topo: um bloco ligado a um bloco anterior não pode
+        // fazer a cadeia recuar
+        if (!block.getPreviousHash().equals(view.getLatest().getCurrentHash())) {
+            throw new IllegalStateException("Block " + block.getBlockID() + " does not extend the chain tip");
+        }
+        sync(List.of(block));
     }
 
     /**
-     * Valida uma transação verificando assinatura e estado da eleição
+     * Valida uma transação verificando assinatura, prova de trabalho, ID e
+     * estado da eleição
      * 
      * @param transaction Transação a validar
      * @param publicKey Chave pública para verificar a assinatura
@@ -221,6 +901,18 @@ public class Blockchain {
             return false;
         }
 
+        // Verifica a prova de trabalho da transação
+        if (!transaction.hasValidProofOfWork()) {
+            System.out.println("Invalid proof of work");
+            return false;
+        }
+
+        // Verifica se o ID corresponde aos dados da transação
+        if (!transaction.hasValidId()) {
+            System.out.println("Invalid transaction id");
+            return false;
+        }
+
         // Verifica se a eleição existe e está ativa
         Election election = elections.get(transaction.getElectionId());
         if (election == null || !election.isActive()) {
@@ -240,33 +932,52 @@ public class Blockchain {
      */
     
     public boolean hasVoted(Key voterPublicKey,String electionId){
-        return hasVoterVoted(voterPublicKey.toString(), electionId);
+        // Conta também os votos ainda pendentes no mempool
+        Hash256 fingerprint = VoterRegistry.fingerprint(voterPublicKey);
+        return hasVoterVoted(fingerprint, electionId)
+                || mempool.hasPendingVote(fingerprint, electionId);
     }
     
-    private boolean hasVoterVoted(String voterPublicKey, String electionId) {
-        Set<String> votedElections = voterRegistry.get(voterPublicKey);
-        boolean hasVoted = votedElections != null && votedElections.contains(electionId);
-        if (hasVoted) {
-            System.out.println("already voted");
-        }
-        return hasVoted;
+    /**
+     * Verifica se um votante já está registado na cadeia numa eleição
+     * Está no caminho de admissão do mempool: não escreve na consola
+     */
+    private boolean hasVoterVoted(Hash256 fingerprint, String electionId) {
+        return voterRegistry.hasVoted(fingerprint, electionId);
     }
 
     /**
      * Valida a integridade de toda a blockchain
-     * Verifica se todos os blocos têm hashes corretos e estão bem ligados
+     * Verifica se todos os blocos estão bem ligados, na altura certa e
+     * cumprem a dificuldade esperada para a sua altura
+     * Usa apenas os cabeçalhos (hash guardado), pelo que o custo por bloco
+     * não depende do número de transações; as Merkle roots são verificadas
+     * quando os blocos chegam (sync)
      * 
      * @return true se a cadeia for válida, false caso contrário
      */
     public boolean isChainValid() {
-        // Percorre todos os blocos (começando do segundo)
-        for (int i = 1; i < chain.size(); i++) {
+        ChainView chain = view;
+        return isChainValid(chain, 1, chain.size());
+    }
+
+    /**
+     * Valida um segmento de uma vista, assumindo válido o bloco anterior a from
+     * 
+     * @param chain Vista a validar
+     * @param from Altura do primeiro bloco a validar (pelo menos 1)
+     * @param to Altura a seguir ao último bloco a validar
+     * @return true se o segmento for válido, false caso contrário
+     */
+    private boolean isChainValid(ChainView chain, int from, int to) {
+        // Percorre os blocos do segmento
+        for (int i = Math.max(from, 1); i < to; i++) {
             Block currentBlock = chain.get(i);
             Block previousBlock = chain.get(i - 1);
 
-            // Verifica se o hash do bloco atual está correto
-            if (!currentBlock.getCurrentHash().equals(currentBlock.calculateHash())) {
-                System.out.println("Block " + i + " hash is invalid");
+            // Verifica se o bloco declara a altura em que está
+            if (currentBlock.getBlockID() != i) {
+                System.out.println("Block " + i + " has wrong height");
                 return false;
             }
 
@@ -276,30 +987,57 @@ public class Blockchain {
                 System.out.println("Block " + i + " is not properly linked");
                 return false;
             }
+
+            // Verifica se o bloco usa a dificuldade esperada nesta altura
+            if (currentBlock.getDifficulty() != getDifficultyAt(chain, i)) {
+                System.out.println("Block " + i + " has unexpected difficulty");
+                return false;
+            }
+
+            // Verifica a prova de trabalho e a ordem temporal
+            if (!currentBlock.hasValidProofOfWork()
+                    || currentBlock.getTimestamp() < previousBlock.getTimestamp()) {
+                System.out.println("Block " + i + " proof of work is invalid");
+                return false;
+            }
         }
         return true;
     }
 
     /**
-     * Conta os votos de uma eleição específica
-     * Percorre toda a blockchain e desencripta os votos
+     * Obtém os resultados de uma eleição específica
+     * Lê a contagem materializada (atualizada quando os blocos entram e saem
+     * da cadeia), pelo que o custo depende só do número de candidatos
+     * 
+     * @param electionId ID da eleição a contar
+     * @return Mapa com os resultados: candidato -> número de votos
+     */
+    public Map<String, Long> tallyVotes(String electionId) {
+        return tally.get(electionId);
+    }
+
+    /**
+     * Conta os votos de uma eleição específica (modo de auditoria)
+     * Percorre toda a blockchain e desencripta os votos, sem usar a contagem
+     * materializada; serve para a verificar (verifyTally)
      * 
      * @param electionId ID da eleição a contar
      * @return Mapa com os resultados: candidato -> número de votos
      */
-    public Map<String, Integer> tallyVotes(String electionId) {
-        Map<String, Integer> results = new HashMap<>();
+    public Map<String, Long> auditTallyVotes(String electionId) {
+        Map<String, Long> results = new HashMap<>();
 
         // Percorre todos os blocos da cadeia
-        for (Block block : chain) {
-            // Percorre todas as transações de cada bloco
-            for (Transaction tx : block.getTransactions()) {
+        for (Block block : view.getBlocks()) {
+            // Percorre todas as transações de cada bloco (sem as descodificar)
+            TransactionView tx = TransactionView.of(block);
+            while (tx.next()) {
                 // Se a transação pertence à eleição pretendida
                 if (tx.getElectionId().equals(electionId)) {
                     // Desencripta o voto
                     String vote = decryptVote(tx.getEncryptedVote());
                     // Incrementa o contador para esse candidato
-                    results.put(vote, results.getOrDefault(vote, 0) + 1);
+                    results.merge(vote, 1L, Long::sum);
                 }
             }
         }
@@ -307,6 +1045,46 @@ public class Blockchain {
         return results;
     }
 
+    /**
+     * Compara a contagem materializada de uma eleição com o reconto completo
+     * 
+     * @param electionId ID da eleição
+     * @return true se as duas contagens forem iguais
+     */
+    public boolean verifyTally(String electionId) {
+        return tallyVotes(electionId).equals(auditTallyVotes(electionId));
+    }
+
+    /**
+     * Auditoria completa da cadeia em paralelo (common pool)
+     * Verifica cabeçalhos, ligações, provas de trabalho e assinaturas e
+     * reconta todas as eleições
+     * 
+     * @return Resultado da auditoria
+     */
+    public ChainAudit.Result auditChain() {
+        return auditChain(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Auditoria completa da cadeia em paralelo
+     * 
+     * @param pool Pool onde correm as tarefas
+     * @return Resultado da auditoria (igual ao de auditChainSequential)
+     */
+    public ChainAudit.Result auditChain(ForkJoinPool pool) {
+        return new ChainAudit(this, view).run(pool);
+    }
+
+    /**
+     * Auditoria completa da cadeia numa só thread
+     * 
+     * @return Resultado da auditoria
+     */
+    public ChainAudit.Result auditChainSequential() {
+        return new ChainAudit(this, view).runSequential();
+    }
+
     /**
      * Desencripta um voto (versão simplificada para demonstração)
      * Em produção, deveria usar desencriptação real com chaves apropriadas
@@ -314,7 +1092,7 @@ public class Blockchain {
      * @param encryptedVote Voto encriptado em Base64
      * @return Voto desencriptado
      */
-    private String decryptVote(String encryptedVote) {
+    static String decryptVote(String encryptedVote) {
         // Descodificação simples para demonstração
         // Em produção usar desencriptação real
         return new String(Base64.getDecoder().decode(encryptedVote));
@@ -326,7 +1104,7 @@ public class Blockchain {
      * @param eleicao Objeto eleição a criar
      */
     public void createElection(Election eleicao) {
-        createElection(eleicao.getElectionId(), eleicao.getTitle());
+        createElection(eleicao.getElectionId(), eleicao.getTitle(), eleicao.getExpectedVoters());
     }
 
     /**
@@ -336,8 +1114,34 @@ public class Blockchain {
      * @param title Título/descrição da eleição
      */
     public void createElection(String electionId, String title) {
-        elections.put(electionId, new Election(electionId, title));
+        createElection(new Election(electionId, title));
+    }
+
+    /**
+     * Cria uma nova eleição com ID, título e número esperado de votantes
+     * (dimensiona o filtro de Bloom da verificação de voto duplo)
+     * 
+     * @param electionId ID único da eleição
+     * @param title Título/descrição da eleição
+     * @param expectedVoters Número esperado de votantes elegíveis
+     */
+    public void createElection(String electionId, String title, int expectedVoters) {
+        elections.put(electionId, new Election(electionId, title, expectedVoters));
+        voterRegistry.addElection(electionId, expectedVoters);
         System.out.println("Election created: " + title);
+        // As eleições não estão nos blocos: só sobrevivem a um reinício no snapshot
+        saveStateIfDue(true);
+    }
+
+    /**
+     * Obtém uma eleição
+     * 
+     * @param electionId ID da eleição
+     * @return Eleição ou null se não existir (por exemplo, não foi criada
+     * nem carregada de um snapshot)
+     */
+    public Election getElection(String electionId) {
+        return elections.get(electionId);
     }
 
     /**
@@ -346,7 +1150,7 @@ public class Blockchain {
      * @return Número de blocos na cadeia
      */
     public int getHeight() {
-        return chain.size();
+        return view.size();
     }
 
     /**
@@ -355,7 +1159,7 @@ public class Blockchain {
      */
     public void printBlockchain() {
         System.out.println("\n=== BLOCKCHAIN ===");
-        for (Block block : chain) {
+        for (Block block : view.getBlocks()) {
             System.out.println(block);
             for (Transaction tx : block.getTransactions()) {
                 System.out.println("  └─ " + tx);
@@ -370,7 +1174,25 @@ public class Blockchain {
      * @return Número de transações pendentes
      */
     public int getPendingTransactionCount() {
-        return pendingTransactions.size();
+        return mempool.size();
+    }
+
+    /**
+     * Obtém o mempool (transações pendentes e respetivas métricas)
+     * 
+     * @return Mempool desta blockchain
+     */
+    public Mempool getMempool() {
+        return mempool;
+    }
+
+    /**
+     * Obtém o registo de votantes (e respetivos filtros de Bloom)
+     * 
+     * @return Registo desta blockchain
+     */
+    public VoterRegistry getVoterRegistry() {
+        return voterRegistry;
     }
 
     /**
@@ -380,19 +1202,15 @@ public class Blockchain {
      * @param desiredHash Hash do bloco a partir do qual obter blocos
      * @return Lista de blocos desde o hash especificado até ao fim
      */
-    public List<Block> getBlocksFrom(String desiredHash) {
-        List<Block> list = new ArrayList<>();
-
-        // Procura o bloco com o hash pretendido
-        for (int i = 0; i < chain.size(); i++) {
-            if (chain.get(i).getCurrentHash().equals(desiredHash)) {
-                // Cria uma nova ArrayList a partir da sublista
-                // (todos os blocos desde este até ao fim)
-                list = new ArrayList<>(chain.subList(i+1, chain.size()));
-                break;
-            }
+    public List<Block> getBlocksFrom(Hash256 desiredHash) {
+        // Procura o bloco com o hash pretendido no índice
+        ChainView chain = view;
+        int height = chain.getHeightOf(desiredHash);
+        if (height == -1) {
+            return new ArrayList<>();
         }
-
-        return list;
+        // Cria uma nova ArrayList a partir da sublista
+        // (todos os blocos a seguir a este até ao fim)
+        return new ArrayList<>(chain.subList(height + 1, chain.size()));
     }
-}
\ No newline at end of file
+}
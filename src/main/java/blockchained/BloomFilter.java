@@ -0,0 +1,169 @@
+package blockchained;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom de impressões digitais (Hash256)
+ * Responde "de certeza que não está" sem consultar o registo; um "talvez
+ * esteja" obriga a confirmar no registo. Como os Hash256 já são uniformes,
+ * as k posições saem dos próprios bytes do hash (h0 + i*h1), sem voltar a
+ * calcular hashes
+ *
+ * O número de bits e de funções é calculado a partir do número esperado de
+ * elementos e da taxa de falsos positivos pretendida. Os bits estão num
+ * AtomicLongArray: um elemento acrescentado é visto por todas as leituras
+ * seguintes, em qualquer thread
+ *
+ * @author Acer
+ */
+public class BloomFilter implements Serializable {
+
+    private final AtomicLongArray bits; // Bits do filtro
+    private final long bitCount; // Número de bits (m)
+    private final int hashes; // Número de funções de hash (k)
+    private final int expected; // Número esperado de elementos (n)
+
+    /**
+     * Cria um filtro dimensionado para um número de elementos
+     *
+     * @param expected Número esperado de elementos
+     * @param falsePositiveRate Taxa de falsos positivos pretendida com esse número de elementos
+     */
+    public BloomFilter(int expected, double falsePositiveRate) {
+        if (expected < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter size: " + expected + ", " + falsePositiveRate);
+        }
+        // m = -n ln(p) / ln(2)^2 ; k = m/n ln(2)
+        long m = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) >>> 6));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words << 6;
+        this.hashes = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+        this.expected = expected;
+    }
+
+    private BloomFilter(long[] words, int hashes, int expected) {
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words.length << 6;
+        this.hashes = hashes;
+        this.expected = expected;
+    }
+
+    /**
+     * Escreve o filtro (snapshot do estado)
+     * Formato: esperados (4) | k (4) | palavras (4) | palavras de 64 bits
+     *
+     * @param out Destino
+     * @throws IOException Se a escrita falhar
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(expected);
+        out.writeInt(hashes);
+        out.writeInt(bits.length());
+        for (int i = 0; i < bits.length(); i++) {
+            out.writeLong(bits.get(i));
+        }
+    }
+
+    /**
+     * Lê um filtro escrito por writeTo
+     *
+     * @param in Origem
+     * @return Filtro com os mesmos bits
+     * @throws IOException Se a leitura falhar ou os dados forem inválidos
+     */
+    static BloomFilter readFrom(DataInput in) throws IOException {
+        int expected = in.readInt();
+        int hashes = in.readInt();
+        int words = in.readInt();
+        if (expected < 1 || hashes < 1 || words < 1) {
+            throw new IOException("Invalid Bloom filter in snapshot");
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, hashes, expected);
+    }
+
+    /**
+     * Acrescenta um elemento
+     *
+     * @param item Impressão digital
+     */
+    public void add(Hash256 item) {
+        long h0 = item.word(0);
+        long h1 = item.word(1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            // (h * m) >> 64 leva h para [0, m) sem divisão
+            long bit = Math.unsignedMultiplyHigh(h0 + i * h1, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((bits.get(word) & mask) == 0) {
+                bits.getAndAccumulate(word, mask, (a, b) -> a | b);
+            }
+        }
+    }
+
+    /**
+     * Verifica se um elemento pode estar no filtro
+     *
+     * @param item Impressão digital
+     * @return false se de certeza não estiver; true se talvez esteja
+     */
+    public boolean mightContain(Hash256 item) {
+        long h0 = item.word(0);
+        long h1 = item.word(1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.unsignedMultiplyHigh(h0 + i * h1, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Obtém o número esperado de elementos com que o filtro foi criado
+     *
+     * @return Número esperado de elementos
+     */
+    public int getExpected() {
+        return expected;
+    }
+
+    /**
+     * Obtém o tamanho do filtro
+     *
+     * @return Número de bits
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Obtém o número de funções de hash
+     *
+     * @return Posições marcadas por elemento
+     */
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * Estima a taxa de falsos positivos atual a partir dos bits marcados
+     *
+     * @return Probabilidade de um elemento ausente dar "talvez esteja"
+     */
+    public double estimatedFalsePositiveRate() {
+        long set = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            set += Long.bitCount(bits.get(i));
+        }
+        return Math.pow((double) set / bitCount, hashes);
+    }
+}
@@ -0,0 +1,252 @@
+package blockchained;
+
+import java.io.Serializable;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Auditoria completa de uma vista da cadeia (fecho de eleição)
+ * Para cada bloco recalcula o hash do cabeçalho, verifica a altura, a
+ * ligação ao bloco anterior, a dificuldade, a prova de trabalho, a ordem
+ * temporal, a Merkle root e a assinatura de todas as transações, e reconta
+ * os votos de todas as eleições sem usar a contagem materializada
+ *
+ * A versão paralela divide a cadeia em intervalos de blocos num ForkJoinPool;
+ * cada intervalo produz um resultado parcial (primeiro bloco inválido e
+ * contagens) e os parciais são juntados por ordem. Como se guarda sempre o
+ * bloco inválido mais baixo e as contagens são somas, o resultado é igual ao
+ * da versão sequencial
+ *
+ * @author Acer
+ */
+public class ChainAudit {
+
+    static final int LEAF_BLOCKS = 16; // Blocos por tarefa folha
+
+    private final Blockchain blockchain; // Regras da cadeia (dificuldade esperada)
+    private final ChainView chain; // Vista auditada
+
+    /**
+     * Cria uma auditoria de uma vista da cadeia
+     *
+     * @param blockchain Blockchain a que a vista pertence
+     * @param chain Vista a auditar
+     */
+    ChainAudit(Blockchain blockchain, ChainView chain) {
+        this.blockchain = blockchain;
+        this.chain = chain;
+    }
+
+    /**
+     * Executa a auditoria numa só thread
+     *
+     * @return Resultado da auditoria
+     */
+    public Result runSequential() {
+        return verifyRange(0, chain.size());
+    }
+
+    /**
+     * Executa a auditoria em paralelo
+     *
+     * @param pool Pool onde correm as tarefas
+     * @return Resultado da auditoria (igual ao sequencial)
+     */
+    public Result run(ForkJoinPool pool) {
+        return pool.invoke(new RangeTask(0, chain.size()));
+    }
+
+    /**
+     * Tarefa que audita um intervalo de blocos, dividindo-o ao meio até
+     * LEAF_BLOCKS blocos
+     */
+    private class RangeTask extends RecursiveTask<Result> {
+
+        private final int from; // Primeira altura (inclusiva)
+        private final int to; // Última altura (exclusiva)
+
+        RangeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= LEAF_BLOCKS) {
+                return verifyRange(from, to);
+            }
+            int mid = (from + to) >>> 1;
+            RangeTask left = new RangeTask(from, mid);
+            left.fork();
+            Result right = new RangeTask(mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Audita sequencialmente um intervalo de blocos
+     * Continua depois de um bloco inválido (as contagens cobrem sempre o
+     * intervalo todo) e guarda o primeiro
+     *
+     * @param from Primeira altura (inclusiva)
+     * @param to Última altura (exclusiva)
+     * @return Resultado parcial
+     */
+    private Result verifyRange(int from, int to) {
+        Result result = new Result();
+        for (int i = from; i < to; i++) {
+            Block block = chain.get(i);
+            String error = verifyBlock(block, i);
+            if (error != null && result.invalidHeight == -1) {
+                result.invalidHeight = i;
+                result.reason = error;
+            }
+            TransactionView tx = TransactionView.of(block);
+            while (tx.next()) {
+                String vote = Blockchain.decryptVote(tx.getEncryptedVote());
+                result.tallies.computeIfAbsent(tx.getElectionId(), k -> new HashMap<>()).merge(vote, 1L, Long::sum);
+                result.transactions++;
+            }
+            result.blocks++;
+        }
+        return result;
+    }
+
+    /**
+     * Verifica um bloco
+     *
+     * @param block Bloco
+     * @param height Altura do bloco na vista
+     * @return Motivo da invalidade ou null se o bloco for válido
+     */
+    private String verifyBlock(Block block, int height) {
+        // Hash recalculado a partir do cabeçalho (não usa o valor guardado)
+        if (!block.calculateHash().equals(block.getCurrentHash())) {
+            return "hash mismatch";
+        }
+        if (block.getBlockID() != height) {
+            return "wrong height";
+        }
+        if (height > 0) {
+            Block previous = chain.get(height - 1);
+            if (!block.getPreviousHash().equals(previous.getCurrentHash())) {
+                return "not properly linked";
+            }
+            if (block.getDifficulty() != blockchain.getDifficultyAt(chain, height)) {
+                return "unexpected difficulty";
+            }
+            if (!block.hasValidProofOfWork() || block.getTimestamp() < previous.getTimestamp()) {
+                return "proof of work is invalid";
+            }
+        }
+        if (!block.isValid()) {
+            return "invalid Merkle root";
+        }
+        for (Transaction tx : block.getTransactions()) {
+            try {
+                if (!tx.verifySignature((PublicKey) tx.getPublicVoterKey())) {
+                    return "invalid signature in " + tx.getTransactionId();
+                }
+            } catch (Exception ex) {
+                return "invalid signature in " + tx.getTransactionId() + ": " + ex.getMessage();
+            }
+            if (!tx.hasValidProofOfWork()) {
+                return "invalid transaction proof of work in " + tx.getTransactionId();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resultado (parcial ou final) de uma auditoria
+     */
+    public static class Result implements Serializable {
+
+        private int invalidHeight = -1; // Altura do primeiro bloco inválido (-1 se todos forem válidos)
+        private String reason; // Motivo da invalidade do primeiro bloco inválido
+        private long blocks; // Blocos auditados
+        private long transactions; // Transações auditadas
+        private Map<String, Map<String, Long>> tallies = new HashMap<>(); // Eleição -> candidato -> votos
+
+        /**
+         * Junta o resultado do intervalo seguinte a este
+         *
+         * @param next Resultado do intervalo seguinte
+         * @return Este resultado, atualizado
+         */
+        Result merge(Result next) {
+            if (invalidHeight == -1 && next.invalidHeight != -1) {
+                invalidHeight = next.invalidHeight;
+                reason = next.reason;
+            }
+            blocks += next.blocks;
+            transactions += next.transactions;
+            for (Map.Entry<String, Map<String, Long>> e : next.tallies.entrySet()) {
+                Map<String, Long> election = tallies.computeIfAbsent(e.getKey(), k -> new HashMap<>());
+                for (Map.Entry<String, Long> c : e.getValue().entrySet()) {
+                    election.merge(c.getKey(), c.getValue(), Long::sum);
+                }
+            }
+            return this;
+        }
+
+        public boolean isValid() {
+            return invalidHeight == -1;
+        }
+
+        public int getInvalidHeight() {
+            return invalidHeight;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public long getBlocks() {
+            return blocks;
+        }
+
+        public long getTransactions() {
+            return transactions;
+        }
+
+        /**
+         * Obtém a contagem de uma eleição
+         *
+         * @param electionId ID da eleição
+         * @return Mapa candidato -> número de votos
+         */
+        public Map<String, Long> getTally(String electionId) {
+            return tallies.getOrDefault(electionId, new HashMap<>());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Result)) {
+                return false;
+            }
+            Result o = (Result) obj;
+            return invalidHeight == o.invalidHeight && Objects.equals(reason, o.reason)
+                    && blocks == o.blocks && transactions == o.transactions && tallies.equals(o.tallies);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(invalidHeight, reason, blocks, transactions, tallies);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("audit: %s, %,d blocks, %,d transactions%s",
+                    isValid() ? "valid" : "block " + invalidHeight + " " + reason,
+                    blocks, transactions, tallies.isEmpty() ? "" : ", tallies " + tallies);
+        }
+    }
+}
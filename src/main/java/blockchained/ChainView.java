@@ -0,0 +1,193 @@
+package blockchained;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Vista imutável da cadeia de blocos num dado instante
+ * A Blockchain publica uma nova vista (através de uma referência volatile) em
+ * cada alteração; as threads RMI leem sempre uma vista completa e coerente,
+ * sem locks e sem ConcurrentModificationException
+ *
+ * Para acrescentar um bloco não é preciso copiar a cadeia: os blocos estão em
+ * pedaços de CHUNK posições partilhados entre vistas e cada vista só lê as
+ * posições abaixo do seu tamanho. O escritor só escreve numa posição que
+ * nenhuma vista publicada viu; se a posição já estiver ocupada (depois de uma
+ * reorganização), copia apenas esse pedaço e o array de pedaços (n / CHUNK
+ * referências), nunca a cadeia inteira. O índice hash -> altura também é partilhado: cada vista confirma
+ * que a entrada aponta para um bloco seu, pelo que as entradas de blocos
+ * descartados numa reorganização são simplesmente ignoradas
+ *
+ * Só uma thread de cada vez pode criar vistas (o escritor da Blockchain)
+ *
+ * @author Acer
+ */
+public final class ChainView {
+
+    private static final int SHIFT = 10; // log2 do tamanho de cada pedaço
+    private static final int CHUNK = 1 << SHIFT; // Blocos por pedaço
+    private static final int MASK = CHUNK - 1;
+
+    private final Block[][] chunks; // Pedaços de blocos (partilhados com as vistas seguintes)
+    private final int size; // Número de blocos desta vista
+    private final Map<Hash256, Integer> heights; // Índice partilhado: hash -> altura
+
+    private ChainView(Block[][] chunks, int size, Map<Hash256, Integer> heights) {
+        this.chunks = chunks;
+        this.size = size;
+        this.heights = heights;
+    }
+
+    /**
+     * Cria a vista de uma cadeia só com o bloco génesis
+     *
+     * @param genesis Bloco génesis
+     * @return Vista com um bloco
+     */
+    static ChainView of(Block genesis) {
+        return new ChainView(new Block[4][], 0, new ConcurrentHashMap<>()).append(genesis);
+    }
+
+    /**
+     * Cria a vista seguinte com um bloco acrescentado no fim
+     * Só pode ser chamado pelo escritor
+     *
+     * @param block Bloco a acrescentar
+     * @return Nova vista
+     */
+    ChainView append(Block block) {
+        int c = size >>> SHIFT;
+        int offset = size & MASK;
+        Block[][] outer = chunks;
+        if (c == outer.length) {
+            outer = Arrays.copyOf(outer, outer.length * 2);
+        }
+        Block[] chunk = outer[c];
+        if (chunk == null) {
+            // Pedaço novo: nenhuma vista lê esta posição do array de pedaços
+            chunk = new Block[CHUNK];
+            outer[c] = chunk;
+        } else if (chunk[offset] != null) {
+            // Posição já vista por outra vista (reorganização): copia só o
+            // que é desta vista e esquece os pedaços seguintes
+            chunk = Arrays.copyOf(chunk, CHUNK);
+            Arrays.fill(chunk, offset, CHUNK, null);
+            outer = Arrays.copyOf(outer, outer.length);
+            Arrays.fill(outer, c + 1, outer.length, null);
+            outer[c] = chunk;
+        }
+        chunk[offset] = block;
+        heights.put(block.getCurrentHash(), size);
+        return new ChainView(outer, size + 1, heights);
+    }
+
+    /**
+     * Cria a vista com os blocos a partir de uma altura removidos
+     * As vistas já publicadas continuam a ver os blocos removidos
+     *
+     * @param from Altura do primeiro bloco a remover
+     * @return Nova vista
+     */
+    ChainView truncate(int from) {
+        return new ChainView(chunks, from, heights);
+    }
+
+    /**
+     * Obtém o número de blocos
+     *
+     * @return Altura da cadeia
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Obtém o bloco numa altura
+     *
+     * @param height Altura (0 = génesis)
+     * @return Bloco
+     */
+    public Block get(int height) {
+        if (height < 0 || height >= size) {
+            throw new IndexOutOfBoundsException("Height " + height + " out of " + size);
+        }
+        return block(chunks, height);
+    }
+
+    /**
+     * Obtém o último bloco
+     *
+     * @return Bloco no topo da cadeia
+     */
+    public Block getLatest() {
+        return block(chunks, size - 1);
+    }
+
+    /**
+     * Obtém a altura de um bloco a partir do seu hash
+     *
+     * @param hash Hash do bloco
+     * @return Altura do bloco ou -1 se não estiver nesta vista
+     */
+    public int getHeightOf(Hash256 hash) {
+        Integer height = hash == null ? null : heights.get(hash);
+        if (height == null || height >= size || !block(chunks, height).getCurrentHash().equals(hash)) {
+            return -1;
+        }
+        return height;
+    }
+
+    /**
+     * Verifica se um bloco faz parte desta vista
+     *
+     * @param hash Hash do bloco
+     * @return true se o bloco estiver na vista
+     */
+    public boolean contains(Hash256 hash) {
+        return getHeightOf(hash) != -1;
+    }
+
+    /**
+     * Obtém uma lista só de leitura com todos os blocos desta vista
+     *
+     * @return Blocos do génesis ao topo
+     */
+    public List<Block> getBlocks() {
+        return subList(0, size);
+    }
+
+    /**
+     * Obtém uma lista só de leitura com os blocos de um intervalo de alturas
+     *
+     * @param from Primeira altura (inclusiva)
+     * @param to Última altura (exclusiva)
+     * @return Blocos do intervalo
+     */
+    public List<Block> subList(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + ".." + to + " out of " + size);
+        }
+        Block[][] array = chunks;
+        return new AbstractList<Block>() {
+            @Override
+            public Block get(int index) {
+                if (index < 0 || index >= to - from) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return block(array, from + index);
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    private static Block block(Block[][] chunks, int height) {
+        return chunks[height >>> SHIFT][height & MASK];
+    }
+}
@@ -16,17 +16,31 @@ public class Election {
     private long startTime; // Timestamp de início da eleição (em milissegundos)
     private long endTime; // Timestamp de fim da eleição (em milissegundos)
     private boolean active; // Indica se a eleição está ativa
+    private int expectedVoters; // Número esperado de votantes elegíveis (dimensiona o filtro de Bloom)
     
     /**
      * Construtor que cria uma nova eleição
-     * A eleição é automaticamente ativada e tem duração de 24 horas
+     * O número esperado de votantes vem de -Delection.expectedVoters (100000 por defeito)
      * 
      * @param electionId Identificador único da eleição
      * @param title Título ou descrição da eleição
      */
     public Election(String electionId, String title) {
+        this(electionId, title, Integer.getInteger("election.expectedVoters", 100_000));
+    }
+    
+    /**
+     * Construtor que cria uma nova eleição
+     * A eleição é automaticamente ativada e tem duração de 24 horas
+     * 
+     * @param electionId Identificador único da eleição
+     * @param title Título ou descrição da eleição
+     * @param expectedVoters Número esperado de votantes elegíveis
+     */
+    public Election(String electionId, String title, int expectedVoters) {
         this.electionId = electionId;
         this.title = title;
+        this.expectedVoters = expectedVoters;
         // Define o tempo de início como o momento atual
         this.startTime = System.currentTimeMillis();
         // Define o tempo de fim como 24 horas após o início
@@ -36,6 +50,25 @@ public class Election {
         System.out.println(this.active);
     }
     
+    /**
+     * Construtor que recria uma eleição guardada num snapshot do estado
+     * 
+     * @param electionId Identificador único da eleição
+     * @param title Título ou descrição da eleição
+     * @param expectedVoters Número esperado de votantes elegíveis
+     * @param startTime Timestamp de início (ms)
+     * @param endTime Timestamp de fim (ms)
+     * @param active false se a eleição tiver sido fechada
+     */
+    Election(String electionId, String title, int expectedVoters, long startTime, long endTime, boolean active) {
+        this.electionId = electionId;
+        this.title = title;
+        this.expectedVoters = expectedVoters;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.active = active;
+    }
+    
     /**
      * Verifica se a eleição está ativa e dentro do período de votação
      * Uma eleição é considerada ativa se:
@@ -76,4 +109,31 @@ public class Election {
     public String getTitle() { 
         return title; 
     }
+    
+    /**
+     * Obtém o número esperado de votantes elegíveis
+     * 
+     * @return Número esperado de votantes
+     */
+    public int getExpectedVoters() { 
+        return expectedVoters; 
+    }
+    
+    /**
+     * Obtém o timestamp de início da eleição
+     * 
+     * @return Início em milissegundos
+     */
+    public long getStartTime() { 
+        return startTime; 
+    }
+    
+    /**
+     * Obtém o timestamp de fim da eleição
+     * 
+     * @return Fim em milissegundos
+     */
+    public long getEndTime() { 
+        return endTime; 
+    }
 }
\ No newline at end of file
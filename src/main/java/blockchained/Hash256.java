@@ -0,0 +1,197 @@
+package blockchained;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash de 256 bits imutável
+ * Guarda os 32 bytes em quatro longs (big-endian), com o hashCode calculado
+ * na criação. equals compara quatro longs em vez de 64 caracteres e a versão
+ * hexadecimal só é gerada quando pedida (toString)
+ *
+ * Usado nos hashes dos blocos, das transações, nas Merkle roots, nos índices
+ * da cadeia e nos métodos RMI
+ *
+ * @author Acer
+ */
+public final class Hash256 implements Serializable, Comparable<Hash256> {
+
+    public static final int SIZE = 32; // Tamanho em bytes
+    public static final Hash256 ZERO = new Hash256(0, 0, 0, 0); // Hash nulo (anterior ao bloco génesis)
+
+    private final long w0, w1, w2, w3; // Os 32 bytes em big-endian
+    private final transient int hash; // hashCode pré-calculado (não vem do outro nó: readResolve)
+    private transient String hex; // Representação hexadecimal (gerada quando pedida)
+
+    private Hash256(long w0, long w1, long w2, long w3) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+        // Os hashes dos blocos começam com zeros (prova de trabalho), por isso
+        // w0 sozinho não chega: dobra as quatro palavras
+        long folded = w0 ^ w1 ^ w2 ^ w3;
+        this.hash = (int) (folded ^ (folded >>> 32));
+    }
+
+    /**
+     * Recalcula o hashCode a partir das quatro palavras ao receber um hash
+     * (RMI): um valor vindo do outro nó podia não corresponder ao equals e
+     * estragar os índices hash -> altura
+     *
+     * @return Hash com o hashCode calculado localmente
+     */
+    private Object readResolve() {
+        return new Hash256(w0, w1, w2, w3);
+    }
+
+    /**
+     * Cria um hash a partir de 32 bytes
+     *
+     * @param bytes Digest de 32 bytes
+     * @return Hash
+     */
+    public static Hash256 of(byte[] bytes) {
+        if (bytes.length != SIZE) {
+            throw new IllegalArgumentException("Hash256 precisa de " + SIZE + " bytes, recebeu " + bytes.length);
+        }
+        return new Hash256(readLong(bytes, 0), readLong(bytes, 8), readLong(bytes, 16), readLong(bytes, 24));
+    }
+
+    /**
+     * Cria um hash a partir da sua representação hexadecimal
+     *
+     * @param hex 64 caracteres hexadecimais
+     * @return Hash
+     */
+    public static Hash256 fromHex(String hex) {
+        if (hex.length() != SIZE * 2) {
+            throw new IllegalArgumentException("Hash inválido: " + hex);
+        }
+        byte[] bytes = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("Hash inválido: " + hex);
+            }
+            bytes[i] = (byte) (hi << 4 | lo);
+        }
+        return of(bytes);
+    }
+
+    /**
+     * Calcula o SHA-256 de um array de bytes
+     *
+     * @param data Dados
+     * @return Hash dos dados
+     */
+    public static Hash256 sha256(byte[] data) {
+        try {
+            return of(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Escreve os 32 bytes num buffer
+     *
+     * @param out Buffer de destino
+     * @param offset Posição inicial
+     */
+    public void writeTo(byte[] out, int offset) {
+        NonceSearch.writeNonce(out, offset, w0);
+        NonceSearch.writeNonce(out, offset + 8, w1);
+        NonceSearch.writeNonce(out, offset + 16, w2);
+        NonceSearch.writeNonce(out, offset + 24, w3);
+    }
+
+    /**
+     * Obtém 8 dos 32 bytes como long (usado como hash já uniforme, por
+     * exemplo nos filtros de Bloom)
+     *
+     * @param index Índice do long (0 a 3)
+     * @return Bytes index*8 a index*8+7 em big-endian
+     */
+    long word(int index) {
+        switch (index) {
+            case 0:
+                return w0;
+            case 1:
+                return w1;
+            case 2:
+                return w2;
+            case 3:
+                return w3;
+            default:
+                throw new IndexOutOfBoundsException(index);
+        }
+    }
+
+    /**
+     * Obtém uma cópia dos 32 bytes
+     *
+     * @return Bytes do hash
+     */
+    public byte[] toBytes() {
+        byte[] out = new byte[SIZE];
+        writeTo(out, 0);
+        return out;
+    }
+
+    /**
+     * Obtém a representação hexadecimal (gerada na primeira chamada)
+     *
+     * @return 64 caracteres hexadecimais
+     */
+    public String toHex() {
+        if (hex == null) {
+            hex = ProofOfWork.toHex(toBytes());
+        }
+        return hex;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Hash256)) {
+            return false;
+        }
+        Hash256 o = (Hash256) obj;
+        return w0 == o.w0 && w1 == o.w1 && w2 == o.w2 && w3 == o.w3;
+    }
+
+    @Override
+    public int compareTo(Hash256 o) {
+        int c = Long.compareUnsigned(w0, o.w0);
+        if (c == 0) {
+            c = Long.compareUnsigned(w1, o.w1);
+        }
+        if (c == 0) {
+            c = Long.compareUnsigned(w2, o.w2);
+        }
+        return c != 0 ? c : Long.compareUnsigned(w3, o.w3);
+    }
+
+    private static long readLong(byte[] b, int offset) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = v << 8 | (b[offset + i] & 0xFF);
+        }
+        return v;
+    }
+}
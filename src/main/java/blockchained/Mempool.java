@@ -0,0 +1,512 @@
+package blockchained;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+
+/**
+ * Conjunto de transações pendentes (mempool)
+ * Indexado pelo id da transação (rejeição de duplicados em O(1)) e por
+ * votante + eleição (um único voto pendente por votante em cada eleição).
+ * O votante é identificado pela impressão digital da chave pública
+ * (VoterRegistry.fingerprint), como no registo de votantes
+ * A inserção não usa locks; tirar um lote para o próximo bloco é atómico
+ *
+ * Limites: número de transações, bytes e idade (as transações mais antigas
+ * que maxAgeMillis expiram e libertam o lugar do votante). Quando o mempool
+ * está cheio, expira primeiro as transações antigas e, se continuar cheio,
+ * rejeita a nova (um voto aceite nunca é descartado para dar lugar a outro)
+ *
+ * Os lugares dos votantes só são libertados com release, depois de o bloco
+ * ser adicionado à cadeia e o registo de votantes atualizado, para que um
+ * segundo voto não passe enquanto o primeiro está a ser minerado
+ *
+ * A Blockchain reconcilia o mempool com a cadeia: os blocos que entram
+ * removem as transações e os votantes confirmados (removeConfirmed) e os
+ * blocos que saem numa reorganização devolvem as suas transações (requeue)
+ *
+ * Configuração no arranque:
+ * -Dmempool.maxCount=10000 -Dmempool.maxBytes=16777216 -Dmempool.maxAge=600000 (ms)
+ *
+ * @author Acer
+ */
+public class Mempool {
+
+    /**
+     * Resultado de uma tentativa de inserção
+     */
+    public enum Admission {
+        ADDED, // Aceite
+        DUPLICATE, // Transação já pendente
+        VOTER_PENDING, // O votante já tem um voto pendente nesta eleição
+        ALREADY_VOTED, // O voto do votante já está na cadeia
+        FULL // Limite de transações ou de bytes atingido
+    }
+
+    /**
+     * Transação pendente e dados de admissão
+     */
+    private static class Entry {
+        final Transaction tx; // Transação
+        final VoterKey voter; // Votante + eleição
+        final int bytes; // Tamanho aproximado
+        final long admitted; // Instante de admissão (ms)
+
+        Entry(Transaction tx, VoterKey voter, int bytes, long admitted) {
+            this.tx = tx;
+            this.voter = voter;
+            this.bytes = bytes;
+            this.admitted = admitted;
+        }
+    }
+
+    private final int maxCount; // Número máximo de transações
+    private final long maxBytes; // Bytes máximos
+    private final long maxAgeMillis; // Idade máxima de uma transação
+    private final BiPredicate<Hash256, String> committed; // Verifica se o voto (impressão digital, eleição) já está na cadeia
+
+    private final Map<Hash256, Entry> byId = new ConcurrentHashMap<>(); // Índice: id -> transação pendente
+    private final Map<VoterKey, Hash256> byVoter = new ConcurrentHashMap<>(); // Índice: votante + eleição -> id
+    private final ConcurrentLinkedDeque<Entry> queue = new ConcurrentLinkedDeque<>(); // Ordem de chegada
+    private final AtomicInteger count = new AtomicInteger(); // Transações pendentes
+    private final AtomicLong bytes = new AtomicLong(); // Bytes pendentes
+
+    private final LongAdder added = new LongAdder(); // Transações aceites
+    private final LongAdder duplicates = new LongAdder(); // Rejeitadas por duplicado
+    private final LongAdder voterPending = new LongAdder(); // Rejeitadas por voto pendente do votante
+    private final LongAdder alreadyVoted = new LongAdder(); // Rejeitadas por voto já na cadeia
+    private final LongAdder full = new LongAdder(); // Rejeitadas por falta de espaço
+    private final LongAdder expired = new LongAdder(); // Expiradas
+    private final LongAdder taken = new LongAdder(); // Tiradas para blocos
+    private final LongAdder confirmed = new LongAdder(); // Removidas por blocos recebidos
+    private final LongAdder requeued = new LongAdder(); // Devolvidas por reorganizações
+
+    /**
+     * Cria um mempool com os limites das propriedades do sistema
+     *
+     * @param committed Verifica se o voto de um votante (impressão digital)
+     * numa eleição já está na cadeia
+     */
+    public Mempool(BiPredicate<Hash256, String> committed) {
+        this(Integer.parseInt(System.getProperty("mempool.maxCount", "10000")),
+                Long.parseLong(System.getProperty("mempool.maxBytes", "16777216")),
+                Long.parseLong(System.getProperty("mempool.maxAge", "600000")),
+                committed);
+    }
+
+    /**
+     * Cria um mempool
+     *
+     * @param maxCount Número máximo de transações
+     * @param maxBytes Bytes máximos
+     * @param maxAgeMillis Idade máxima de uma transação (ms)
+     * @param committed Verifica se o voto de um votante (impressão digital)
+     * numa eleição já está na cadeia
+     */
+    public Mempool(int maxCount, long maxBytes, long maxAgeMillis, BiPredicate<Hash256, String> committed) {
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.committed = committed;
+    }
+
+    /**
+     * Tenta inserir uma transação (já validada)
+     *
+     * @param tx Transação
+     * @return Resultado da inserção
+     */
+    public Admission add(Transaction tx) {
+        Hash256 id = tx.getTransactionId();
+        if (byId.containsKey(id)) {
+            duplicates.increment();
+            return Admission.DUPLICATE;
+        }
+
+        // Reserva o lugar do votante nesta eleição
+        VoterKey voter = voterKey(tx);
+        Hash256 owner = byVoter.putIfAbsent(voter, id);
+        if (owner != null) {
+            if (owner.equals(id)) {
+                duplicates.increment();
+                return Admission.DUPLICATE;
+            }
+            voterPending.increment();
+            return Admission.VOTER_PENDING;
+        }
+
+        // Com o lugar reservado, o voto não pode ser confirmado entretanto
+        if (committed.test(voter.fingerprint, voter.electionId)) {
+            byVoter.remove(voter, id);
+            alreadyVoted.increment();
+            return Admission.ALREADY_VOTED;
+        }
+
+        // Reserva espaço (expira as transações antigas se for preciso)
+        int size = tx.getSize();
+        if (!reserve(size)) {
+            purgeExpired();
+            if (!reserve(size)) {
+                byVoter.remove(voter, id);
+                full.increment();
+                return Admission.FULL;
+            }
+        }
+
+        Entry entry = new Entry(tx, voter, size, System.currentTimeMillis());
+        byId.put(id, entry);
+        queue.addLast(entry);
+        added.increment();
+        return Admission.ADDED;
+    }
+
+    /**
+     * Tira atomicamente um lote de transações, por ordem de chegada, para o
+     * próximo bloco. Os votantes continuam reservados até release
+     *
+     * @param maxTransactions Número máximo de transações do lote
+     * @param maxBatchBytes Bytes máximos do lote
+     * @return Transações do lote (pode ser vazio)
+     */
+    public synchronized List<Transaction> take(int maxTransactions, long maxBatchBytes) {
+        purgeExpired();
+        List<Transaction> batch = new ArrayList<>();
+        long batchBytes = 0;
+        while (batch.size() < maxTransactions) {
+            Entry entry = queue.peekFirst();
+            if (entry == null || (!batch.isEmpty() && batchBytes + entry.bytes > maxBatchBytes)) {
+                break;
+            }
+            // Ignora entradas removidas entretanto (expiradas)
+            if (queue.removeFirstOccurrence(entry) && byId.remove(entry.tx.getTransactionId(), entry)) {
+                unreserve(entry.bytes);
+                batch.add(entry.tx);
+                batchBytes += entry.bytes;
+            }
+        }
+        taken.add(batch.size());
+        return batch;
+    }
+
+    /**
+     * Liberta os votantes de um lote depois de o bloco estar na cadeia
+     *
+     * @param batch Lote tirado com take
+     */
+    public void release(List<Transaction> batch) {
+        for (Transaction tx : batch) {
+            byVoter.remove(voterKey(tx), tx.getTransactionId());
+        }
+    }
+
+    /**
+     * Devolve ao início do mempool um lote que não chegou a ser minerado
+     * (os votantes continuam reservados)
+     *
+     * @param batch Lote tirado com take
+     */
+    public synchronized void putBack(List<Transaction> batch) {
+        long now = System.currentTimeMillis();
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Transaction tx = batch.get(i);
+            Entry entry = new Entry(tx, voterKey(tx), tx.getSize(), now);
+            count.incrementAndGet();
+            bytes.addAndGet(entry.bytes);
+            byId.put(tx.getTransactionId(), entry);
+            queue.addFirst(entry);
+        }
+        taken.add(-batch.size());
+    }
+
+    /**
+     * Remove as transações confirmadas por um bloco que entrou na cadeia e
+     * liberta os respetivos votantes. Um voto pendente do mesmo votante na
+     * mesma eleição, com outro id, deixou de ser válido e também sai.
+     * Deve ser chamado depois de o registo de votantes ter o bloco, para que
+     * o votante libertado não volte a ser aceite
+     * As entradas removidas ficam na fila até take ou purgeExpired as
+     * ignorarem (já não estão no índice por id)
+     *
+     * @param block Bloco que entrou na cadeia
+     * @return Número de transações removidas
+     */
+    public int removeConfirmed(Block block) {
+        int removed = 0;
+        TransactionView tx = TransactionView.of(block);
+        while (tx.next()) {
+            Hash256 id = tx.getTransactionId();
+            Hash256 owner = byVoter.remove(new VoterKey(tx.getVoterFingerprint(), tx.getElectionId()));
+            if (owner != null && !owner.equals(id) && remove(owner)) {
+                removed++;
+            }
+            if (remove(id)) {
+                removed++;
+            }
+        }
+        confirmed.add(removed);
+        return removed;
+    }
+
+    /**
+     * Devolve ao mempool as transações de um bloco que saiu da cadeia numa
+     * reorganização. Passam pela admissão normal, pelo que as que já estão
+     * na nova cadeia (votante já registado) são rejeitadas
+     * Deve ser chamado depois de o registo de votantes ter a nova cadeia
+     *
+     * @param block Bloco que saiu da cadeia
+     * @return Número de transações readmitidas
+     */
+    public int requeue(Block block) {
+        int readmitted = 0;
+        TransactionView tx = TransactionView.of(block);
+        while (tx.next()) {
+            if (add(tx.toTransaction()) == Admission.ADDED) {
+                readmitted++;
+            }
+        }
+        requeued.add(readmitted);
+        return readmitted;
+    }
+
+    /**
+     * Remove uma transação pendente do índice por id (fica na fila até ser
+     * ignorada por take ou purgeExpired)
+     *
+     * @param id Id da transação
+     * @return true se a transação estava pendente
+     */
+    private boolean remove(Hash256 id) {
+        Entry entry = byId.get(id);
+        if (entry != null && byId.remove(id, entry)) {
+            unreserve(entry.bytes);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove as transações mais antigas que a idade máxima
+     *
+     * @return Número de transações expiradas
+     */
+    public int purgeExpired() {
+        long limit = System.currentTimeMillis() - maxAgeMillis;
+        int removed = 0;
+        Entry entry;
+        while ((entry = queue.peekFirst()) != null && entry.admitted < limit) {
+            // Só quem remove a entrada do índice a conta (take pode correr em paralelo)
+            if (queue.removeFirstOccurrence(entry) && byId.remove(entry.tx.getTransactionId(), entry)) {
+                unreserve(entry.bytes);
+                byVoter.remove(entry.voter, entry.tx.getTransactionId());
+                removed++;
+            }
+        }
+        expired.add(removed);
+        return removed;
+    }
+
+    /**
+     * Verifica se uma transação está pendente
+     *
+     * @param id Id da transação
+     * @return true se estiver no mempool
+     */
+    public boolean contains(Hash256 id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * Verifica se um votante tem um voto pendente (ou a ser minerado) numa eleição
+     *
+     * @param fingerprint Impressão digital da chave pública do votante
+     * @param electionId ID da eleição
+     * @return true se houver um voto reservado
+     */
+    public boolean hasPendingVote(Hash256 fingerprint, String electionId) {
+        return byVoter.containsKey(new VoterKey(fingerprint, electionId));
+    }
+
+    /**
+     * Obtém o número de transações pendentes
+     *
+     * @return Número de transações
+     */
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Obtém uma cópia das transações pendentes, por ordem de chegada
+     *
+     * @return Transações pendentes
+     */
+    public List<Transaction> getTransactions() {
+        List<Transaction> list = new ArrayList<>();
+        for (Iterator<Entry> it = queue.iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (byId.get(entry.tx.getTransactionId()) == entry) {
+                list.add(entry.tx);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Obtém uma cópia serializável das métricas atuais
+     *
+     * @return Snapshot das métricas
+     */
+    public Stats snapshot() {
+        Stats s = new Stats();
+        s.count = count.get();
+        s.bytes = bytes.get();
+        s.maxCount = maxCount;
+        s.maxBytes = maxBytes;
+        Entry oldest = queue.peekFirst();
+        s.oldestAgeMillis = oldest == null ? 0 : System.currentTimeMillis() - oldest.admitted;
+        s.added = added.sum();
+        s.duplicates = duplicates.sum();
+        s.voterPending = voterPending.sum();
+        s.alreadyVoted = alreadyVoted.sum();
+        s.full = full.sum();
+        s.expired = expired.sum();
+        s.taken = taken.sum();
+        s.confirmed = confirmed.sum();
+        s.requeued = requeued.sum();
+        return s;
+    }
+
+    private boolean reserve(int size) {
+        if (count.incrementAndGet() > maxCount) {
+            count.decrementAndGet();
+            return false;
+        }
+        if (bytes.addAndGet(size) > maxBytes) {
+            bytes.addAndGet(-size);
+            count.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void unreserve(int size) {
+        count.decrementAndGet();
+        bytes.addAndGet(-size);
+    }
+
+    private static VoterKey voterKey(Transaction tx) {
+        return new VoterKey(VoterRegistry.fingerprint(tx.getPublicVoterKey()), tx.getElectionId());
+    }
+
+    /**
+     * Chave do índice por votante: impressão digital da chave pública e ID
+     * da eleição (interned, comparado por referência)
+     */
+    private static final class VoterKey {
+
+        final Hash256 fingerprint; // Impressão digital da chave pública
+        final String electionId; // ID da eleição (interned)
+
+        VoterKey(Hash256 fingerprint, String electionId) {
+            this.fingerprint = fingerprint;
+            this.electionId = electionId.intern();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof VoterKey other && electionId == other.electionId
+                    && fingerprint.equals(other.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fingerprint.hashCode() + electionId.hashCode();
+        }
+    }
+
+    /**
+     * Cópia imutável das métricas, enviada por RMI
+     */
+    public static class Stats implements Serializable {
+
+        private int count; // Transações pendentes
+        private long bytes; // Bytes pendentes
+        private int maxCount; // Limite de transações
+        private long maxBytes; // Limite de bytes
+        private long oldestAgeMillis; // Idade da transação mais antiga
+        private long added; // Aceites
+        private long duplicates; // Rejeitadas por duplicado
+        private long voterPending; // Rejeitadas por voto pendente do votante
+        private long alreadyVoted; // Rejeitadas por voto já na cadeia
+        private long full; // Rejeitadas por falta de espaço
+        private long expired; // Expiradas
+        private long taken; // Tiradas para blocos
+        private long confirmed; // Removidas por blocos recebidos
+        private long requeued; // Devolvidas por reorganizações
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getOldestAgeMillis() {
+            return oldestAgeMillis;
+        }
+
+        public long getAdded() {
+            return added;
+        }
+
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        public long getVoterPending() {
+            return voterPending;
+        }
+
+        public long getAlreadyVoted() {
+            return alreadyVoted;
+        }
+
+        public long getFull() {
+            return full;
+        }
+
+        public long getExpired() {
+            return expired;
+        }
+
+        public long getTaken() {
+            return taken;
+        }
+
+        public long getConfirmed() {
+            return confirmed;
+        }
+
+        public long getRequeued() {
+            return requeued;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mempool: %d/%d transactions, %,d/%,d bytes, oldest %d ms%n"
+                    + "  added %d, taken %d, expired %d, confirmed %d, requeued %d,"
+                    + " rejected: duplicate %d, voter pending %d, already voted %d, full %d",
+                    count, maxCount, bytes, maxBytes, oldestAgeMillis,
+                    added, taken, expired, confirmed, requeued, duplicates, voterPending, alreadyVoted, full);
+        }
+    }
+}
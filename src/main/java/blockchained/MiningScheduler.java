@@ -0,0 +1,210 @@
+package blockchained;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Escalonador das threads de mineração
+ * Decide quantos processadores a mineração pode ocupar, cria os workers com
+ * prioridade baixa e faz os workers cederem o processador enquanto há pedidos
+ * RMI sensíveis à latência em curso (vote, getBlocksFrom, addTransaction)
+ *
+ * Os handlers RMI marcam a zona crítica com enterCritical/exitCritical. Os
+ * workers chamam shouldYield/backoff entre lotes de nonces: com a política
+ * PAUSE dormem em passos de PAUSE_STEP ms (no máximo maxPauseMillis seguidos,
+ * para a mineração nunca parar de vez), com YIELD apenas cedem a vez.
+ * Trabalhos submetidos a partir de uma zona crítica (ex.: a transação minerada
+ * dentro de vote) são urgentes e nunca são pausados
+ *
+ * Configuração no arranque:
+ * -Dmining.cores=0.5 (fração dos processadores) ou =3 (número de workers)
+ * -Dmining.policy=pause|yield|off
+ * -Dmining.maxPause=200 (ms)
+ * A prioridade das threads só tem efeito em Linux com -XX:ThreadPriorityPolicy=1
+ *
+ * @author Acer
+ */
+public class MiningScheduler {
+
+    /**
+     * Comportamento dos workers enquanto há pedidos críticos
+     */
+    public enum Policy {
+        OFF, // Ignora os pedidos críticos
+        YIELD, // Cede a vez (Thread.yield) entre lotes
+        PAUSE // Dorme até não haver pedidos críticos (limitado a maxPauseMillis)
+    }
+
+    static final long PAUSE_STEP = 1; // Duração de cada pausa (ms)
+
+    private static MiningScheduler instance; // Escalonador partilhado da aplicação
+
+    private final int workers; // Threads de mineração permitidas
+    private final int priority; // Prioridade das threads de mineração
+    private final Policy policy; // Política durante pedidos críticos
+    private final long maxPauseMillis; // Pausa máxima seguida de um worker
+    private final AtomicInteger critical = new AtomicInteger(); // Pedidos críticos em curso
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]); // Zonas críticas da thread atual
+
+    /**
+     * Obtém o escalonador partilhado, configurado pelas propriedades do sistema
+     *
+     * @return Escalonador por defeito
+     */
+    public static synchronized MiningScheduler getDefault() {
+        if (instance == null) {
+            double cores = Double.parseDouble(System.getProperty("mining.cores", "1.0"));
+            Policy policy = Policy.valueOf(System.getProperty("mining.policy", "pause").toUpperCase());
+            long maxPause = Long.parseLong(System.getProperty("mining.maxPause", "200"));
+            instance = new MiningScheduler(cores, Thread.MIN_PRIORITY, policy, maxPause);
+        }
+        return instance;
+    }
+
+    /**
+     * Cria um escalonador
+     *
+     * @param cores Fração dos processadores (até 1.0) ou número de workers (acima de 1)
+     * @param priority Prioridade das threads de mineração
+     * @param policy Política durante pedidos críticos
+     * @param maxPauseMillis Pausa máxima seguida de um worker
+     */
+    public MiningScheduler(double cores, int priority, Policy policy, long maxPauseMillis) {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        this.workers = Math.max(1, cores <= 1.0 ? (int) Math.round(cpus * cores) : (int) cores);
+        this.priority = priority;
+        this.policy = policy;
+        this.maxPauseMillis = maxPauseMillis;
+    }
+
+    /**
+     * Obtém o número de threads de mineração permitidas
+     *
+     * @return Número de workers
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Obtém a política durante pedidos críticos
+     *
+     * @return Política
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Cria threads de mineração (daemon e com a prioridade configurada)
+     *
+     * @param prefix Prefixo do nome das threads
+     * @return Fábrica de threads
+     */
+    public ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            configure(t);
+            return t;
+        };
+    }
+
+    /**
+     * Aplica a configuração do escalonador a uma thread de mineração
+     *
+     * @param t Thread ainda não iniciada
+     */
+    public void configure(Thread t) {
+        t.setDaemon(true);
+        t.setPriority(priority);
+    }
+
+    /**
+     * Marca o início de um pedido sensível à latência
+     * Deve ser sempre seguido de exitCritical (num finally)
+     */
+    public void enterCritical() {
+        depth.get()[0]++;
+        critical.incrementAndGet();
+    }
+
+    /**
+     * Marca o fim de um pedido sensível à latência
+     */
+    public void exitCritical() {
+        critical.decrementAndGet();
+        depth.get()[0]--;
+    }
+
+    /**
+     * Verifica se a thread atual está dentro de um pedido crítico
+     * (o trabalho que submeter é urgente)
+     *
+     * @return true se estiver numa zona crítica
+     */
+    public boolean isCritical() {
+        return depth.get()[0] > 0;
+    }
+
+    /**
+     * Obtém o número de pedidos críticos em curso
+     *
+     * @return Pedidos críticos
+     */
+    public int getCriticalInFlight() {
+        return critical.get();
+    }
+
+    /**
+     * Verifica se um worker deve ceder o processador agora
+     *
+     * @return true se houver pedidos críticos e a política não for OFF
+     */
+    public boolean shouldYield() {
+        return policy != Policy.OFF && critical.get() > 0;
+    }
+
+    /**
+     * Cede o processador uma vez (dorme PAUSE_STEP ms ou faz yield)
+     */
+    public void backoff() {
+        if (policy == Policy.PAUSE) {
+            try {
+                Thread.sleep(PAUSE_STEP);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Ponto de paragem para workers com thread própria
+     * Cede o processador enquanto houver pedidos críticos, no máximo
+     * maxPauseMillis seguidos (com YIELD cede apenas uma vez)
+     */
+    public void checkpoint() {
+        if (!shouldYield()) {
+            return;
+        }
+        if (policy == Policy.YIELD) {
+            Thread.yield();
+            return;
+        }
+        long end = System.currentTimeMillis() + maxPauseMillis;
+        while (shouldYield() && System.currentTimeMillis() < end && !Thread.currentThread().isInterrupted()) {
+            backoff();
+        }
+    }
+
+    /**
+     * Obtém a pausa máxima seguida de um worker
+     *
+     * @return Milissegundos
+     */
+    public long getMaxPauseMillis() {
+        return maxPauseMillis;
+    }
+}
@@ -0,0 +1,336 @@
+package blockchained;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serviço de prova de trabalho baseado em instâncias
+ * Mantém um conjunto fixo de threads de longa duração que executa vários
+ * trabalhos de mineração em simultâneo. Cada trabalho tem o seu próprio
+ * estado de procura (tickets, flag de solução e resultado), pelo que
+ * mineração concorrente de blocos e transações não partilha estado
+ *
+ * Cada tarefa reclama um intervalo contíguo de CHUNK nonces de uma só vez
+ * (um único getAndIncrement por intervalo), procura nele consultando a flag
+ * partilhada apenas de vez em quando, e volta à fila no fim do intervalo,
+ * para que trabalhos concorrentes avancem de forma equilibrada
+ *
+ * O número de workers, a sua prioridade e as pausas durante pedidos RMI
+ * críticos vêm do MiningScheduler. Entre fatias de SLICE nonces uma tarefa
+ * que deva ceder volta para o fim da fila em vez de bloquear o worker, pelo
+ * que os trabalhos urgentes (submetidos dentro de uma zona crítica) passam
+ * à frente dos trabalhos em pausa
+ *
+ * Os intervalos são numerados sequencialmente: o intervalo c corresponde ao
+ * extra-nonce c / chunksPerExtra e aos nonces a partir de
+ * (c % chunksPerExtra) * CHUNK. Quando o espaço de maxNonce nonces se
+ * esgota o extra-nonce avança automaticamente, pelo que nenhuma combinação
+ * é testada duas vezes e a procura nunca termina sem solução. Por defeito
+ * maxNonce é MAX_NONCE; um serviço pode usar um espaço mais pequeno
+ * (por exemplo, para exercitar a passagem de extra-nonce)
+ *
+ * @author Acer
+ */
+public class MiningService {
+
+    public static final long MAX_NONCE = Long.MAX_VALUE; // Nonces por extra-nonce por defeito
+    static final int CHUNK = 1 << 16; // Nonces por intervalo reclamado (e por passagem na fila)
+    static final int SLICE = 1 << 13; // Nonces entre consultas ao escalonador
+
+    private static MiningService instance; // Serviço partilhado da aplicação
+
+    private final ExecutorService pool; // Workers de longa duração
+    private final ProofOfWork pow; // Regra de prova de trabalho (função de hash)
+    private final MiningScheduler scheduler; // Número, prioridade e pausas dos workers
+    private final int workers; // Número de workers
+    private final long maxNonce; // Nonces por extra-nonce antes de avançar o extra-nonce
+    private final MiningStats stats = new MiningStats("blocks"); // Telemetria dos trabalhos deste serviço
+
+    /**
+     * Obtém o serviço partilhado, com os workers permitidos pelo escalonador
+     *
+     * @return Serviço de mineração por defeito
+     */
+    public static synchronized MiningService getDefault() {
+        if (instance == null) {
+            instance = new MiningService(MiningScheduler.getDefault().getWorkers());
+        }
+        return instance;
+    }
+
+    /**
+     * Cria um serviço com um número fixo de workers e a prova de trabalho por defeito
+     *
+     * @param workers Número de threads de mineração
+     */
+    public MiningService(int workers) {
+        this(workers, ProofOfWork.getDefault());
+    }
+
+    /**
+     * Cria um serviço com um número fixo de workers
+     *
+     * @param workers Número de threads de mineração
+     * @param pow Prova de trabalho a usar
+     */
+    public MiningService(int workers, ProofOfWork pow) {
+        this(workers, pow, MiningScheduler.getDefault());
+    }
+
+    /**
+     * Cria um serviço com um número fixo de workers e um escalonador
+     *
+     * @param workers Número de threads de mineração
+     * @param pow Prova de trabalho a usar
+     * @param scheduler Escalonador que controla prioridade e pausas
+     */
+    public MiningService(int workers, ProofOfWork pow, MiningScheduler scheduler) {
+        this(workers, pow, scheduler, MAX_NONCE);
+    }
+
+    /**
+     * Cria um serviço com um número fixo de workers, um escalonador e um
+     * espaço de nonces por extra-nonce
+     *
+     * @param workers Número de threads de mineração
+     * @param pow Prova de trabalho a usar
+     * @param scheduler Escalonador que controla prioridade e pausas
+     * @param maxNonce Nonces testados com cada extra-nonce (pelo menos 1)
+     */
+    public MiningService(int workers, ProofOfWork pow, MiningScheduler scheduler, long maxNonce) {
+        if (maxNonce < 1) {
+            throw new IllegalArgumentException("Invalid nonce space: " + maxNonce);
+        }
+        this.maxNonce = maxNonce;
+        this.workers = workers;
+        this.pow = pow;
+        this.scheduler = scheduler;
+        this.pool = Executors.newFixedThreadPool(workers, scheduler.threadFactory("mining-worker-"));
+    }
+
+    /**
+     * Submete um trabalho de mineração
+     * Procura um par (extraNonce, nonce) tal que
+     * H(data + extraNonce + nonce) comece com difficultyBits bits a zero
+     *
+     * @param data Dados a minerar
+     * @param difficultyBits Número de bits a zero exigidos
+     * @return Futuro com a solução encontrada
+     */
+    public CompletableFuture<Nonce> submit(String data, int difficultyBits) {
+        return submit(data.getBytes(StandardCharsets.UTF_8), difficultyBits);
+    }
+
+    /**
+     * Submete um trabalho de mineração sobre um prefixo binário
+     * (ex.: a parte fixa de um BlockHeader)
+     *
+     * @param data Bytes fixos a minerar
+     * @param difficultyBits Número de bits a zero exigidos
+     * @return Futuro com a solução encontrada
+     */
+    public CompletableFuture<Nonce> submit(byte[] data, int difficultyBits) {
+        Job job = new Job(data, difficultyBits, maxNonce, scheduler.isCritical());
+        // Um cancelamento externo também para os workers
+        job.result.whenComplete((nonce, ex) -> {
+            job.done.set(true);
+            stats.recordJob(System.nanoTime() - job.started, job.attempts.sum(), ex == null);
+        });
+        for (int i = 0; i < workers; i++) {
+            pool.execute(new Task(job));
+        }
+        return job.result;
+    }
+
+    /**
+     * Submete um trabalho e espera pelo resultado
+     *
+     * @param data Dados a minerar
+     * @param difficultyBits Número de bits a zero exigidos
+     * @return Solução encontrada
+     * @throws InterruptedException Se a espera for interrompida
+     */
+    public Nonce mine(String data, int difficultyBits) throws InterruptedException {
+        return mine(data.getBytes(StandardCharsets.UTF_8), difficultyBits);
+    }
+
+    /**
+     * Submete um trabalho sobre um prefixo binário e espera pelo resultado
+     *
+     * @param data Bytes fixos a minerar
+     * @param difficultyBits Número de bits a zero exigidos
+     * @return Solução encontrada
+     * @throws InterruptedException Se a espera for interrompida (o trabalho
+     * é cancelado e os workers deixam-no)
+     */
+    public Nonce mine(byte[] data, int difficultyBits) throws InterruptedException {
+        CompletableFuture<Nonce> result = submit(data, difficultyBits);
+        try {
+            return result.get();
+        } catch (InterruptedException ex) {
+            // Ninguém vai esperar pela solução: liberta os workers
+            result.cancel(true);
+            throw ex;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Obtém a telemetria de mineração deste serviço
+     *
+     * @return Estatísticas acumuladas
+     */
+    public MiningStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Termina os workers do serviço
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Estado isolado de um trabalho de mineração
+     */
+    private static class Job {
+
+        final byte[] data; // Dados a minerar
+        final int difficultyBits; // Bits a zero exigidos
+        final long maxNonce; // Nonces por extra-nonce
+        final long chunksPerExtra; // Intervalos por extra-nonce
+        final AtomicLong chunks = new AtomicLong(0); // Próximo intervalo a distribuir
+        final AtomicBoolean done = new AtomicBoolean(false); // Indica se o trabalho terminou
+        final CompletableFuture<Nonce> result = new CompletableFuture<>();
+        final long started = System.nanoTime(); // Início do trabalho
+        final LongAdder attempts = new LongAdder(); // Tentativas feitas por todos os workers
+        final boolean urgent; // Submetido durante um pedido crítico (nunca é pausado)
+
+        Job(byte[] data, int difficultyBits, long maxNonce, boolean urgent) {
+            this.data = data;
+            this.difficultyBits = difficultyBits;
+            this.urgent = urgent;
+            this.maxNonce = maxNonce;
+            this.chunksPerExtra = (maxNonce - 1) / CHUNK + 1;
+        }
+
+        /**
+         * Regista a solução, se ainda ninguém a tiver encontrado
+         */
+        void found(int extraNonce, long nonce) {
+            if (done.compareAndSet(false, true)) {
+                result.complete(new Nonce(extraNonce, nonce));
+            }
+        }
+
+        /**
+         * Termina o trabalho com erro (só se ainda estiver em curso)
+         */
+        void fail(Throwable ex) {
+            if (done.compareAndSet(false, true)) {
+                result.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * Tarefa de procura de um worker para um trabalho
+     * Cria o seu NonceSearch na primeira execução e reutiliza-o nas seguintes;
+     * se ceder a vez a meio de um intervalo, continua-o na execução seguinte
+     */
+    private class Task implements Runnable {
+
+        final Job job;
+        NonceSearch search;
+        int extraNonce; // Extra-nonce do intervalo atual
+        long next; // Próximo nonce do intervalo atual
+        long end; // Fim do intervalo atual (exclusive)
+        long pausedSince; // Início da pausa atual (0 se não estiver em pausa)
+
+        Task(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (search == null) {
+                    search = pow.newSearch(job.data, job.difficultyBits);
+                }
+                if (job.done.get()) {
+                    return;
+                }
+                if (next >= end) {
+                    // Reclama o próximo intervalo contíguo de nonces
+                    long chunk = job.chunks.getAndIncrement();
+                    long extra = chunk / job.chunksPerExtra;
+                    if (extra > Integer.MAX_VALUE) {
+                        job.fail(new IllegalStateException("Espaço de extra-nonces esgotado"));
+                        return;
+                    }
+                    extraNonce = (int) extra;
+                    next = (chunk % job.chunksPerExtra) * CHUNK;
+                    end = next < job.maxNonce - CHUNK ? next + CHUNK : job.maxNonce;
+                    search.setExtraNonce(extraNonce);
+                }
+                long before = search.getAttempts();
+                long begin = System.nanoTime();
+                long nonce = -1;
+                while (next < end && nonce < 0 && !job.done.get()) {
+                    if (mustYield()) {
+                        break;
+                    }
+                    long to = end - next > SLICE ? next + SLICE : end;
+                    nonce = search.search(next, to, job.done);
+                    next = to;
+                }
+                long attempts = search.getAttempts() - before;
+                job.attempts.add(attempts);
+                stats.recordHashes(Thread.currentThread().getName(), attempts, System.nanoTime() - begin);
+                if (nonce >= 0) {
+                    job.found(extraNonce, nonce);
+                    return;
+                }
+                if (pausedSince != 0) {
+                    // Dá o processador aos pedidos críticos antes de voltar à fila
+                    scheduler.backoff();
+                }
+                // Volta à fila para dar vez aos outros trabalhos
+                pool.execute(this);
+            } catch (Exception ex) {
+                job.fail(ex);
+            }
+        }
+
+        /**
+         * Decide se a tarefa deve ceder a vez antes da próxima fatia
+         * (nunca para trabalhos urgentes nem para além da pausa máxima)
+         * Esgotada a pausa máxima, a tarefa avança uma fatia e volta a
+         * ceder enquanto houver pedidos críticos (mesmo que sejam outros)
+         */
+        boolean mustYield() {
+            if (job.urgent || !scheduler.shouldYield()) {
+                pausedSince = 0;
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (pausedSince == 0) {
+                pausedSince = now;
+            }
+            if (now - pausedSince < scheduler.getMaxPauseMillis()) {
+                return true;
+            }
+            // Retoma forçada: a próxima pausa conta de novo a partir daqui
+            pausedSince = 0;
+            return false;
+        }
+    }
+}
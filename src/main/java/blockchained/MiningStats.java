@@ -0,0 +1,187 @@
+package blockchained;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Telemetria de mineração com contadores de baixo custo
+ * Os workers registam hashes em lotes (um registo por intervalo de nonces,
+ * não por tentativa) em LongAdders, pelo que o custo é desprezável face ao
+ * hashing. Guarda:
+ * - hashes e tempo de cálculo por worker (para obter hashes/s por worker)
+ * - histograma da duração dos trabalhos em potências de 2 milissegundos
+ * - tentativas por solução
+ * - trabalhos ganhos (solução encontrada aqui) e perdidos (parados por outro)
+ *
+ * @author Acer
+ */
+public class MiningStats {
+
+    public static final int BUCKETS = 24; // Baldes do histograma: <1ms, <2ms, <4ms, ... , resto
+
+    private final String name; // Nome do minerador a que as estatísticas pertencem
+    private final long created = System.currentTimeMillis(); // Início da recolha
+    private final Map<String, Worker> workers = new ConcurrentHashMap<>(); // Contadores por worker
+    private final LongAdder[] durations = new LongAdder[BUCKETS]; // Histograma de duração dos trabalhos
+    private final LongAdder wins = new LongAdder(); // Trabalhos resolvidos por este minerador
+    private final LongAdder losses = new LongAdder(); // Trabalhos parados sem solução local
+    private final LongAdder solvedAttempts = new LongAdder(); // Tentativas gastas em trabalhos resolvidos
+
+    /**
+     * Contadores de um worker
+     */
+    private static class Worker {
+        final LongAdder hashes = new LongAdder(); // Hashes calculados
+        final LongAdder nanos = new LongAdder(); // Tempo gasto a calcular
+    }
+
+    /**
+     * Cria um conjunto de estatísticas
+     *
+     * @param name Nome do minerador
+     */
+    public MiningStats(String name) {
+        this.name = name;
+        for (int i = 0; i < BUCKETS; i++) {
+            durations[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Regista um lote de hashes calculados por um worker
+     *
+     * @param worker Nome estável do worker (ex.: índice da thread)
+     * @param hashes Número de hashes do lote
+     * @param nanos Tempo gasto no lote (nanossegundos)
+     */
+    public void recordHashes(String worker, long hashes, long nanos) {
+        Worker w = workers.computeIfAbsent(worker, k -> new Worker());
+        w.hashes.add(hashes);
+        w.nanos.add(nanos);
+    }
+
+    /**
+     * Regista o fim de um trabalho
+     *
+     * @param nanos Duração do trabalho (nanossegundos)
+     * @param attempts Tentativas feitas no trabalho
+     * @param won true se a solução foi encontrada por este minerador
+     */
+    public void recordJob(long nanos, long attempts, boolean won) {
+        long millis = nanos / 1_000_000;
+        int bucket = millis == 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis);
+        durations[Math.min(bucket, BUCKETS - 1)].increment();
+        if (won) {
+            wins.increment();
+            solvedAttempts.add(attempts);
+        } else {
+            losses.increment();
+        }
+    }
+
+    /**
+     * Obtém uma cópia serializável dos contadores atuais
+     *
+     * @return Snapshot das estatísticas
+     */
+    public Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        s.name = name;
+        s.uptimeMillis = System.currentTimeMillis() - created;
+        for (Map.Entry<String, Worker> e : workers.entrySet()) {
+            long hashes = e.getValue().hashes.sum();
+            long nanos = e.getValue().nanos.sum();
+            s.totalHashes += hashes;
+            s.hashRateByWorker.put(e.getKey(), nanos == 0 ? 0 : hashes * 1E9 / nanos);
+        }
+        for (double rate : s.hashRateByWorker.values()) {
+            s.hashRate += rate;
+        }
+        s.durationHistogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            s.durationHistogram[i] = durations[i].sum();
+        }
+        s.wins = wins.sum();
+        s.losses = losses.sum();
+        s.attemptsPerSolution = s.wins == 0 ? 0 : (double) solvedAttempts.sum() / s.wins;
+        return s;
+    }
+
+    /**
+     * Cópia imutável das estatísticas, enviada por RMI
+     */
+    public static class Snapshot implements Serializable {
+
+        private String name; // Nome do minerador
+        private long uptimeMillis; // Tempo desde o início da recolha
+        private long totalHashes; // Hashes calculados por todos os workers
+        private double hashRate; // Soma dos hashes/s dos workers
+        private Map<String, Double> hashRateByWorker = new LinkedHashMap<>(); // Hashes/s por worker
+        private long[] durationHistogram; // Trabalhos por balde de duração
+        private long wins; // Trabalhos ganhos
+        private long losses; // Trabalhos perdidos
+        private double attemptsPerSolution; // Média de tentativas por solução
+
+        public String getName() {
+            return name;
+        }
+
+        public long getUptimeMillis() {
+            return uptimeMillis;
+        }
+
+        public long getTotalHashes() {
+            return totalHashes;
+        }
+
+        public double getHashRate() {
+            return hashRate;
+        }
+
+        public Map<String, Double> getHashRateByWorker() {
+            return hashRateByWorker;
+        }
+
+        /**
+         * Histograma da duração dos trabalhos
+         * O balde 0 conta trabalhos com menos de 1 ms e o balde i
+         * trabalhos entre 2^(i-1) e 2^i ms (o último acumula o resto)
+         *
+         * @return Contagens por balde
+         */
+        public long[] getDurationHistogram() {
+            return durationHistogram;
+        }
+
+        public long getWins() {
+            return wins;
+        }
+
+        public long getLosses() {
+            return losses;
+        }
+
+        public double getAttemptsPerSolution() {
+            return attemptsPerSolution;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%s: %,.0f hashes/s, %,d hashes, wins %d / losses %d, %,.0f attempts/solution%n",
+                    name, hashRate, totalHashes, wins, losses, attemptsPerSolution));
+            for (Map.Entry<String, Double> e : hashRateByWorker.entrySet()) {
+                sb.append(String.format("  %-20s %,15.0f hashes/s%n", e.getKey(), e.getValue()));
+            }
+            for (int i = 0; i < durationHistogram.length; i++) {
+                if (durationHistogram[i] > 0) {
+                    sb.append(String.format("  < %8d ms : %d%n", 1L << i, durationHistogram[i]));
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
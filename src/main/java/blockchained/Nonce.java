@@ -0,0 +1,50 @@
+package blockchained;
+
+import java.io.Serializable;
+
+/**
+ * Solução de uma prova de trabalho
+ * Agrupa o extra-nonce (que avança sempre que o espaço de 64 bits do nonce
+ * se esgota) e o nonce propriamente dito
+ *
+ * @author Acer
+ */
+public class Nonce implements Serializable {
+
+    private final int extraNonce; // Extra-nonce usado na solução
+    private final long nonce; // Nonce de 64 bits usado na solução
+
+    /**
+     * Cria uma solução de prova de trabalho
+     *
+     * @param extraNonce Extra-nonce
+     * @param nonce Nonce
+     */
+    public Nonce(int extraNonce, long nonce) {
+        this.extraNonce = extraNonce;
+        this.nonce = nonce;
+    }
+
+    /**
+     * Obtém o extra-nonce
+     *
+     * @return Extra-nonce
+     */
+    public int getExtraNonce() {
+        return extraNonce;
+    }
+
+    /**
+     * Obtém o nonce
+     *
+     * @return Nonce
+     */
+    public long getNonce() {
+        return nonce;
+    }
+
+    @Override
+    public String toString() {
+        return extraNonce + ":" + nonce;
+    }
+}
@@ -0,0 +1,359 @@
+package blockchained;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Motor de procura de nonces sobre bytes (sem Strings nem Base64)
+ * Cada instância pertence a um único worker e reutiliza sempre os mesmos
+ * buffers: o ciclo de tentativas não faz alocações. O extra-nonce e o nonce
+ * são escritos em binário no fim do buffer (prefixo + extraNonce + nonce) e
+ * a dificuldade é verificada diretamente nos bits do digest, sem Base64.
+ * A função de hash é a do ProofOfWork que criou o motor (SHA-256 por defeito)
+ *
+ * Com SHA-256 a compressão é feita pelo próprio motor: os blocos completos
+ * do prefixo são comprimidos uma única vez (midstate, 8 ints) e em cada
+ * tentativa o midstate é copiado para o estado de trabalho e só os blocos
+ * finais (resto do prefixo, nonce e padding) são comprimidos. O
+ * MessageDigest só permite repor um estado intermédio com clone(), que
+ * aloca; com outras funções de hash usa-se um único MessageDigest sobre o
+ * prefixo inteiro em cada tentativa
+ *
+ * @author Acer
+ */
+public class NonceSearch {
+
+    public static final String ALGORITHM = ProofOfWork.SHA256; // Função de hash por defeito
+    public static final int EXTRA_NONCE_BYTES = 4; // Tamanho do extra-nonce em binário (big-endian)
+    public static final int NONCE_BYTES = 8; // Tamanho do nonce em binário (big-endian)
+    private static final int BLOCK_SIZE = 64; // Tamanho de um bloco interno do SHA-256
+    static final int CHECK_INTERVAL = 1024; // Tentativas entre consultas à flag partilhada
+
+    // Constantes de ronda do SHA-256
+    static final int[] K = {
+        0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+        0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+        0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+        0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+        0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+        0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+        0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+        0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    // Estado inicial do SHA-256
+    static final int[] IV = {
+        0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private final MessageDigest digest; // Digest reutilizado (funções de hash que não o SHA-256)
+    private final int[] midstate; // Estado SHA-256 após os blocos completos do prefixo (null = MessageDigest)
+    private final int[] state = new int[8]; // Estado SHA-256 de trabalho
+    private final int[] schedule = new int[64]; // Message schedule SHA-256
+    private final byte[] input; // Entrada de cada tentativa (SHA-256: blocos finais já com padding)
+    private final int inputLength; // Bytes de input passados ao MessageDigest
+    private final int extraNonceOffset; // Posição do extra-nonce dentro do buffer de entrada
+    private final int nonceOffset; // Posição do nonce dentro do buffer de entrada
+    private final byte[] hash; // Buffer de saída reutilizado
+    private final int difficultyBits; // Número de bits a zero exigidos no início do hash
+    long attempts; // Tentativas feitas por este motor (contador local, sem partilha)
+
+    // Backend escolhido no arranque: -Dmining.backend=scalar|vector
+    public static final String BACKEND = System.getProperty("mining.backend", "scalar");
+    private static final boolean VECTOR = vectorAvailable(); // Backend SIMD ativo
+
+    /**
+     * Cria um motor de procura SHA-256 para um prefixo fixo
+     *
+     * @param prefix Dados fixos que antecedem o nonce
+     * @param difficultyBits Número de bits a zero exigidos no início do hash
+     * @throws NoSuchAlgorithmException Se o SHA-256 não estiver disponível
+     */
+    public NonceSearch(byte[] prefix, int difficultyBits) throws NoSuchAlgorithmException {
+        this(ALGORITHM, prefix, difficultyBits);
+    }
+
+    /**
+     * Cria um motor de procura para um prefixo fixo e uma função de hash
+     *
+     * @param algorithm Função de hash (nome do MessageDigest)
+     * @param prefix Dados fixos que antecedem o nonce
+     * @param difficultyBits Número de bits a zero exigidos no início do hash
+     * @throws NoSuchAlgorithmException Se o algoritmo não estiver disponível
+     */
+    public NonceSearch(String algorithm, byte[] prefix, int difficultyBits) throws NoSuchAlgorithmException {
+        this.difficultyBits = difficultyBits;
+        this.digest = MessageDigest.getInstance(algorithm);
+        this.hash = new byte[digest.getDigestLength()];
+
+        int total = prefix.length + EXTRA_NONCE_BYTES + NONCE_BYTES;
+        if (ALGORITHM.equals(digest.getAlgorithm())) {
+            // Comprime já os blocos completos do prefixo (midstate)
+            int fixed = (prefix.length / BLOCK_SIZE) * BLOCK_SIZE;
+            this.midstate = IV.clone();
+            for (int off = 0; off < fixed; off += BLOCK_SIZE) {
+                compress(midstate, prefix, off, schedule);
+            }
+            // Blocos finais: resto do prefixo + extra-nonce + nonce + 0x80 + zeros + tamanho em bits
+            int tail = total - fixed;
+            this.input = new byte[((tail + 8) / BLOCK_SIZE + 1) * BLOCK_SIZE];
+            System.arraycopy(prefix, fixed, input, 0, prefix.length - fixed);
+            input[tail] = (byte) 0x80;
+            long bits = (long) total * 8;
+            for (int i = 0; i < 8; i++) {
+                input[input.length - 1 - i] = (byte) (bits >>> (8 * i));
+            }
+            this.inputLength = input.length;
+            this.extraNonceOffset = prefix.length - fixed;
+        } else {
+            // Prefixo inteiro em cada tentativa
+            this.midstate = null;
+            this.input = new byte[total];
+            System.arraycopy(prefix, 0, input, 0, prefix.length);
+            this.inputLength = total;
+            this.extraNonceOffset = prefix.length;
+        }
+        this.nonceOffset = extraNonceOffset + EXTRA_NONCE_BYTES;
+    }
+
+    /**
+     * Cria um motor de procura para dados em texto
+     *
+     * @param data Dados fixos que antecedem o nonce
+     * @param difficultyBits Número de bits a zero exigidos no início do hash
+     * @throws NoSuchAlgorithmException Se o SHA-256 não estiver disponível
+     */
+    public NonceSearch(String data, int difficultyBits) throws NoSuchAlgorithmException {
+        this(data.getBytes(StandardCharsets.UTF_8), difficultyBits);
+    }
+
+    /**
+     * Cria o motor de procura do backend configurado
+     * Com -Dmining.backend=vector e SHA-256 usa o VectorNonceSearch (SIMD),
+     * desde que o módulo jdk.incubator.vector esteja carregado e o auto-teste
+     * passe; caso contrário usa o motor escalar
+     *
+     * @param algorithm Função de hash (nome do MessageDigest)
+     * @param prefix Bytes fixos que antecedem o nonce
+     * @param difficultyBits Número de bits a zero exigidos no início do hash
+     * @return Motor de procura
+     * @throws NoSuchAlgorithmException Se o algoritmo não estiver disponível
+     */
+    static NonceSearch create(String algorithm, byte[] prefix, int difficultyBits) throws NoSuchAlgorithmException {
+        if (VECTOR && ALGORITHM.equals(algorithm)) {
+            return new VectorNonceSearch(prefix, difficultyBits);
+        }
+        return new NonceSearch(algorithm, prefix, difficultyBits);
+    }
+
+    /**
+     * Verifica se o backend SIMD foi pedido e pode ser usado
+     */
+    private static boolean vectorAvailable() {
+        if (!"vector".equals(BACKEND)) {
+            return false;
+        }
+        System.Logger logger = System.getLogger(NonceSearch.class.getName());
+        // Sem o módulo não se pode sequer carregar o VectorNonceSearch
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            logger.log(System.Logger.Level.WARNING, "jdk.incubator.vector não carregado (--add-modules), a usar o motor escalar");
+            return false;
+        }
+        try {
+            if (VectorNonceSearch.selfTest()) {
+                return true;
+            }
+            logger.log(System.Logger.Level.WARNING, "Auto-teste do SHA-256 vetorial falhou, a usar o motor escalar");
+        } catch (LinkageError ex) {
+            logger.log(System.Logger.Level.WARNING, "Backend vetorial indisponível, a usar o motor escalar", ex);
+        }
+        return false;
+    }
+
+    /**
+     * Define o extra-nonce usado nas tentativas seguintes
+     *
+     * @param extraNonce Extra-nonce a escrever no buffer
+     */
+    public void setExtraNonce(int extraNonce) {
+        writeInt(input, extraNonceOffset, extraNonce);
+    }
+
+    /**
+     * Testa um nonce escrevendo-o no buffer e calculando o hash
+     *
+     * @param nonce Nonce a testar
+     * @return true se o hash tiver os bits a zero exigidos
+     */
+    public boolean test(long nonce) {
+        attempts++;
+        writeNonce(input, nonceOffset, nonce);
+        if (midstate != null) {
+            // Repõe o midstate sem alocar e comprime só os blocos finais
+            System.arraycopy(midstate, 0, state, 0, 8);
+            for (int off = 0; off < input.length; off += BLOCK_SIZE) {
+                compress(state, input, off, schedule);
+            }
+            for (int i = 0; i < 8; i++) {
+                writeInt(hash, i * 4, state[i]);
+            }
+        } else {
+            try {
+                digest.update(input, 0, inputLength);
+                digest.digest(hash, 0, hash.length);
+            } catch (DigestException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return hasLeadingZeroBits(hash, difficultyBits);
+    }
+
+    /**
+     * Procura sequencialmente um nonce válido num intervalo
+     *
+     * @param from Primeiro nonce a testar (inclusive)
+     * @param to Último nonce a testar (exclusive)
+     * @return Nonce encontrado ou -1 se o intervalo não tiver solução
+     */
+    public long search(long from, long to) {
+        for (long nonce = from; nonce < to; nonce++) {
+            if (test(nonce)) {
+                return nonce;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Procura um nonce válido num intervalo contíguo, consultando a flag
+     * partilhada apenas a cada CHECK_INTERVAL tentativas
+     *
+     * @param from Primeiro nonce a testar (inclusive)
+     * @param to Último nonce a testar (exclusive)
+     * @param stop Flag partilhada que indica que o trabalho terminou
+     * @return Nonce encontrado ou -1 se o intervalo se esgotar ou o trabalho parar
+     */
+    public long search(long from, long to, AtomicBoolean stop) {
+        long nonce = from;
+        while (nonce < to) {
+            if (stop.get()) {
+                return -1;
+            }
+            long end = to - nonce > CHECK_INTERVAL ? nonce + CHECK_INTERVAL : to;
+            for (; nonce < end; nonce++) {
+                if (test(nonce)) {
+                    return nonce;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Obtém o número de tentativas feitas por este motor
+     *
+     * @return Total de hashes calculados
+     */
+    public long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Obtém o último hash calculado (o buffer é reutilizado)
+     *
+     * @return Digest da última tentativa
+     */
+    public byte[] getLastHash() {
+        return hash;
+    }
+
+    /**
+     * Compressão SHA-256 escalar de um bloco de 64 bytes
+     *
+     * @param st Estado (8 palavras), atualizado
+     * @param msg Mensagem
+     * @param off Início do bloco na mensagem
+     * @param w Message schedule (64 palavras) reutilizado
+     */
+    static void compress(int[] st, byte[] msg, int off, int[] w) {
+        for (int i = 0; i < 16; i++) {
+            w[i] = readInt(msg, off + i * 4);
+        }
+        for (int i = 16; i < 64; i++) {
+            int s0 = Integer.rotateRight(w[i - 15], 7) ^ Integer.rotateRight(w[i - 15], 18) ^ (w[i - 15] >>> 3);
+            int s1 = Integer.rotateRight(w[i - 2], 17) ^ Integer.rotateRight(w[i - 2], 19) ^ (w[i - 2] >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+        int a = st[0], b = st[1], c = st[2], d = st[3], e = st[4], f = st[5], g = st[6], h = st[7];
+        for (int i = 0; i < 64; i++) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            int ch = (e & f) ^ (~e & g);
+            int t1 = h + s1 + ch + K[i] + w[i];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            int maj = (a & b) ^ (a & c) ^ (b & c);
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + s0 + maj;
+        }
+        st[0] += a;
+        st[1] += b;
+        st[2] += c;
+        st[3] += d;
+        st[4] += e;
+        st[5] += f;
+        st[6] += g;
+        st[7] += h;
+    }
+
+    /**
+     * Lê um inteiro de 32 bits em big-endian de um buffer
+     */
+    static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | (buffer[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Escreve um inteiro de 32 bits em big-endian num buffer
+     */
+    static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Escreve um nonce de 64 bits em big-endian num buffer
+     */
+    static void writeNonce(byte[] buffer, int offset, long nonce) {
+        writeInt(buffer, offset, (int) (nonce >>> 32));
+        writeInt(buffer, offset + 4, (int) nonce);
+    }
+
+    /**
+     * Verifica se um hash começa com um determinado número de bits a zero
+     *
+     * @param hash Digest a verificar
+     * @param bits Número de bits a zero exigidos
+     * @return true se os primeiros bits forem todos zero
+     */
+    public static boolean hasLeadingZeroBits(byte[] hash, int bits) {
+        int full = bits >>> 3;
+        for (int i = 0; i < full; i++) {
+            if (hash[i] != 0) {
+                return false;
+            }
+        }
+        int rest = bits & 7;
+        return rest == 0 || (hash[full] & (0xFF << (8 - rest)) & 0xFF) == 0;
+    }
+}
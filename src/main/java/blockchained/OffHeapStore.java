@@ -0,0 +1,273 @@
+package blockchained;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Armazenamento das transações dos blocos fora do heap (FFM)
+ * No modo -Dchain.storage=offheap a Blockchain guarda as transações de cada
+ * bloco, codificadas no formato do BlockStore, em MemorySegments de um Arena
+ * partilhado; no heap fica só o bloco com o cabeçalho (que é a cache de
+ * cabeçalhos usada pela ChainView, pelo sync e pelo localizador) e um int por
+ * transação com a sua posição. O GC deixa de percorrer milhões de
+ * Transaction, Key e String que vivem até ao fim da eleição
+ *
+ * A memória é reservada em pedaços de CHUNK bytes: do próprio Arena ou, com
+ * -Dchain.offheap.dir, de ficheiros mapeados nessa diretoria (o sistema
+ * operativo pode então paginar as transações antigas para o disco). Os
+ * pedaços só são libertados em close()
+ *
+ * As leituras são feitas pelo TransactionView (sem criar objetos) ou pela
+ * lista de transações do bloco, que descodifica cada Transaction quando é
+ * pedida e não a guarda
+ *
+ * Os blocos reabertos do BlockStore não são copiados ao arrancar (defer):
+ * as transações de cada um só passam para fora do heap na primeira leitura
+ *
+ * @author Acer
+ */
+public class OffHeapStore implements Closeable {
+
+    static final long CHUNK = 16L << 20; // Tamanho de cada pedaço (16 MB)
+
+    private final Arena arena = Arena.ofShared(); // Dono de toda a memória
+    private final Path dir; // Diretoria dos ficheiros mapeados (null = memória do Arena)
+    private final List<FileChannel> files = new ArrayList<>(); // Ficheiros mapeados
+    private MemorySegment chunk; // Pedaço atual
+    private long used; // Bytes usados no pedaço atual
+    private long reserved; // Bytes reservados em todos os pedaços
+    private long stored; // Bytes de transações guardados
+
+    /**
+     * Cria um armazenamento com a memória das propriedades do sistema
+     * (-Dchain.offheap.dir para usar ficheiros mapeados)
+     */
+    public OffHeapStore() {
+        this(System.getProperty("chain.offheap.dir") == null ? null : Path.of(System.getProperty("chain.offheap.dir")));
+    }
+
+    /**
+     * Cria um armazenamento
+     *
+     * @param dir Diretoria dos ficheiros mapeados ou null para usar memória do Arena
+     */
+    public OffHeapStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Copia as transações de um bloco para fora do heap
+     *
+     * @param block Bloco com as transações no heap (ou no BlockStore)
+     * @return Bloco com o mesmo cabeçalho e as transações fora do heap
+     */
+    public Block store(Block block) {
+        List<Transaction> transactions = block.getTransactions();
+        if (transactions instanceof OffHeapTransactions) {
+            return block;
+        }
+        if (transactions instanceof BlockStore.StoredTransactions) {
+            // Já codificadas no registo: copia os bytes sem descodificar
+            return new Block(block.getHeader(), copy((BlockStore.StoredTransactions) transactions, block.getBlockID()));
+        }
+        List<byte[]> parts = new ArrayList<>(transactions.size());
+        int length = 4;
+        for (Transaction tx : transactions) {
+            byte[] part = BlockStore.encodeTransaction(tx);
+            parts.add(part);
+            length += part.length;
+        }
+        ByteBuffer body = ByteBuffer.allocate(length).putInt(parts.size());
+        for (byte[] part : parts) {
+            body.put(part);
+        }
+        body.flip();
+        return new Block(block.getHeader(), copy(body));
+    }
+
+    /**
+     * Associa a este armazenamento um bloco lido do BlockStore sem copiar
+     * as transações: são copiadas para fora do heap na primeira leitura
+     * (usado ao reabrir a cadeia, para o arranque não ler o registo todo)
+     *
+     * @param block Bloco com as transações no heap ou no BlockStore
+     * @return Bloco com o mesmo cabeçalho e as transações fora do heap
+     */
+    public Block defer(Block block) {
+        if (!(block.getTransactions() instanceof BlockStore.StoredTransactions)) {
+            return store(block);
+        }
+        return new Block(block.getHeader(), new OffHeapTransactions(this,
+                (BlockStore.StoredTransactions) block.getTransactions(), block.getBlockID()));
+    }
+
+    /**
+     * Copia para fora do heap as transações de um bloco do BlockStore
+     */
+    private OffHeapTransactions copy(BlockStore.StoredTransactions stored, int height) {
+        try {
+            return copy(stored.body());
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot read block " + height + " from the store", ex);
+        }
+    }
+
+    /**
+     * Copia para fora do heap as transações codificadas (n e as n transações)
+     */
+    private OffHeapTransactions copy(ByteBuffer body) {
+        int count = body.getInt(0);
+        int length = body.remaining() - 4;
+        MemorySegment segment = allocate(Math.max(1, length));
+        MemorySegment.copy(MemorySegment.ofBuffer(body), 4, segment, 0, length);
+        ByteBuffer view = segment.asByteBuffer().order(ByteOrder.BIG_ENDIAN);
+        return new OffHeapTransactions(view, TransactionView.offsets(view, count));
+    }
+
+    private synchronized MemorySegment allocate(long size) {
+        if (chunk == null || used + size > chunk.byteSize()) {
+            long capacity = Math.max(CHUNK, size);
+            if (dir == null) {
+                chunk = arena.allocate(capacity);
+            } else {
+                try {
+                    Files.createDirectories(dir);
+                    FileChannel channel = FileChannel.open(dir.resolve(String.format("bodies-%05d.bin", files.size())),
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    files.add(channel);
+                    chunk = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity, arena);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Cannot map off-heap chunk in " + dir, ex);
+                }
+            }
+            used = 0;
+            reserved += capacity;
+        }
+        MemorySegment slice = chunk.asSlice(used, size);
+        used += size;
+        stored += size;
+        return slice;
+    }
+
+    /**
+     * Obtém os bytes de transações guardados
+     *
+     * @return Bytes usados
+     */
+    public synchronized long getStoredBytes() {
+        return stored;
+    }
+
+    /**
+     * Obtém os bytes reservados (pedaços inteiros)
+     *
+     * @return Bytes reservados fora do heap
+     */
+    public synchronized long getReservedBytes() {
+        return reserved;
+    }
+
+    /**
+     * Liberta toda a memória (os blocos guardados deixam de poder ser lidos)
+     *
+     * @throws IOException Se não for possível fechar os ficheiros mapeados
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        arena.close();
+        for (FileChannel channel : files) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Transações de um bloco guardadas fora do heap
+     * Cada get descodifica uma Transaction nova (que o GC recolhe logo);
+     * ao ser serializada (RMI) é substituída por uma ArrayList
+     * Se vierem de defer, são copiadas do BlockStore na primeira leitura
+     */
+    static final class OffHeapTransactions extends AbstractList<Transaction> implements Serializable {
+
+        private transient volatile ByteBuffer body; // Transações codificadas (null = ainda no BlockStore)
+        private transient int[] offsets; // Início de cada transação (escrito antes do body)
+        private transient OffHeapStore owner; // Destino da cópia adiada (null depois da cópia)
+        private transient BlockStore.StoredTransactions source; // Origem da cópia adiada
+        private final transient int height; // Altura do bloco (mensagens de erro)
+
+        OffHeapTransactions(ByteBuffer body, int[] offsets) {
+            this.offsets = offsets;
+            this.body = body;
+            this.height = -1;
+        }
+
+        OffHeapTransactions(OffHeapStore owner, BlockStore.StoredTransactions source, int height) {
+            this.owner = owner;
+            this.source = source;
+            this.height = height;
+        }
+
+        /**
+         * Copia as transações para fora do heap se ainda estiverem no BlockStore
+         *
+         * @return Transações codificadas
+         */
+        private ByteBuffer resolve() {
+            ByteBuffer b = body;
+            if (b == null) {
+                synchronized (this) {
+                    b = body;
+                    if (b == null) {
+                        OffHeapTransactions copy = owner.copy(source, height);
+                        offsets = copy.offsets;
+                        b = copy.body;
+                        body = b;
+                        owner = null;
+                        source = null;
+                    }
+                }
+            }
+            return b;
+        }
+
+        ByteBuffer body() {
+            return resolve();
+        }
+
+        int[] offsets() {
+            resolve();
+            return offsets;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            ByteBuffer b = resolve();
+            try {
+                return BlockStore.decodeTransaction(b.duplicate().position(offsets[index]));
+            } catch (IOException ex) {
+                throw new IllegalStateException("Invalid off-heap transaction", ex);
+            }
+        }
+
+        @Override
+        public int size() {
+            return offsets().length;
+        }
+
+        private Object writeReplace() {
+            return new ArrayList<>(this);
+        }
+    }
+}
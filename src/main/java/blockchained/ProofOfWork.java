@@ -0,0 +1,168 @@
+package blockchained;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Motor único de prova de trabalho
+ * Define a regra usada por todos os mineradores (blocos, transações,
+ * MinerDistributed e utils.Miner) e pelos validadores:
+ *
+ * hash = H(dados em UTF-8 + extraNonce (4 bytes) + nonce (8 bytes)), com os
+ * inteiros em binário big-endian, e a solução é válida quando o hash começa
+ * com difficultyBits bits a zero
+ *
+ * A função H é configurável (-Dmining.hash=SHA-256|SHA3-256, por defeito
+ * SHA-256) e tem de ser a mesma em todos os nós. A procura é feita pelos
+ * motores NonceSearch (escalar ou SIMD), pelo que qualquer otimização do
+ * motor serve todos os caminhos. A verificação percorre sempre o hash
+ * inteiro, sem sair ao primeiro byte diferente de zero
+ *
+ * @author Acer
+ */
+public class ProofOfWork {
+
+    public static final String SHA256 = "SHA-256"; // SHA-2 (pode usar o backend SIMD)
+    public static final String SHA3_256 = "SHA3-256"; // SHA-3
+
+    private static ProofOfWork instance; // Motor partilhado da aplicação
+
+    private final String algorithm; // Função de hash da prova de trabalho
+
+    /**
+     * Obtém o motor partilhado, com a função de hash de -Dmining.hash
+     *
+     * @return Motor de prova de trabalho por defeito
+     */
+    public static synchronized ProofOfWork getDefault() {
+        if (instance == null) {
+            try {
+                instance = new ProofOfWork(System.getProperty("mining.hash", SHA256));
+            } catch (NoSuchAlgorithmException ex) {
+                System.getLogger(ProofOfWork.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+                throw new IllegalStateException(ex);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Cria um motor para uma função de hash
+     *
+     * @param algorithm Nome do algoritmo do MessageDigest (ex.: SHA-256, SHA3-256)
+     * @throws NoSuchAlgorithmException Se o algoritmo não estiver disponível
+     */
+    public ProofOfWork(String algorithm) throws NoSuchAlgorithmException {
+        MessageDigest.getInstance(algorithm);
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Obtém a função de hash usada
+     *
+     * @return Nome do algoritmo
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Cria um motor de procura para um worker
+     *
+     * @param data Dados fixos que antecedem o nonce
+     * @param difficultyBits Número de bits a zero exigidos
+     * @return Motor de procura (um por thread)
+     * @throws NoSuchAlgorithmException Se o algoritmo não estiver disponível
+     */
+    public NonceSearch newSearch(String data, int difficultyBits) throws NoSuchAlgorithmException {
+        return newSearch(data.getBytes(StandardCharsets.UTF_8), difficultyBits);
+    }
+
+    /**
+     * Cria um motor de procura para um prefixo binário
+     *
+     * @param prefix Bytes fixos que antecedem o nonce
+     * @param difficultyBits Número de bits a zero exigidos
+     * @return Motor de procura (um por thread)
+     * @throws NoSuchAlgorithmException Se o algoritmo não estiver disponível
+     */
+    public NonceSearch newSearch(byte[] prefix, int difficultyBits) throws NoSuchAlgorithmException {
+        return NonceSearch.create(algorithm, prefix, difficultyBits);
+    }
+
+    /**
+     * Calcula o hash de prova de trabalho de uma solução
+     *
+     * @param data Dados fixos que antecedem o nonce
+     * @param nonce Extra-nonce e nonce
+     * @return Digest de dados + extraNonce + nonce
+     */
+    public byte[] hash(String data, Nonce nonce) {
+        return hash(data.getBytes(StandardCharsets.UTF_8), nonce);
+    }
+
+    /**
+     * Calcula o hash de prova de trabalho de uma solução sobre um prefixo binário
+     *
+     * @param prefix Bytes fixos que antecedem o nonce
+     * @param nonce Extra-nonce e nonce
+     * @return Digest de prefixo + extraNonce + nonce
+     */
+    public byte[] hash(byte[] prefix, Nonce nonce) {
+        byte[] buffer = new byte[prefix.length + NonceSearch.EXTRA_NONCE_BYTES + NonceSearch.NONCE_BYTES];
+        System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+        NonceSearch.writeInt(buffer, prefix.length, nonce.getExtraNonce());
+        NonceSearch.writeNonce(buffer, prefix.length + NonceSearch.EXTRA_NONCE_BYTES, nonce.getNonce());
+        try {
+            return MessageDigest.getInstance(algorithm).digest(buffer);
+        } catch (NoSuchAlgorithmException ex) {
+            // Verificado no construtor
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Verifica uma solução de prova de trabalho
+     *
+     * @param data Dados fixos que antecedem o nonce
+     * @param nonce Extra-nonce e nonce a verificar
+     * @param difficultyBits Número de bits a zero exigidos
+     * @return true se o hash cumprir a dificuldade
+     */
+    public boolean verify(String data, Nonce nonce, int difficultyBits) {
+        return meetsTarget(hash(data, nonce), difficultyBits);
+    }
+
+    /**
+     * Verifica se um hash começa com um número de bits a zero
+     * Percorre sempre todos os bytes (o tempo não depende do conteúdo do hash)
+     *
+     * @param hash Digest a verificar
+     * @param bits Número de bits a zero exigidos
+     * @return true se os primeiros bits forem todos zero
+     */
+    public static boolean meetsTarget(byte[] hash, int bits) {
+        int acc = 0;
+        for (int i = 0; i < hash.length; i++) {
+            int remaining = bits - 8 * i;
+            int mask = remaining >= 8 ? 0xFF : remaining <= 0 ? 0 : (0xFF << (8 - remaining)) & 0xFF;
+            acc |= hash[i] & mask;
+        }
+        return acc == 0 && bits <= hash.length * 8;
+    }
+
+    /**
+     * Converte um hash para hexadecimal
+     *
+     * @param hash Digest
+     * @return String hexadecimal
+     */
+    public static String toHex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,259 @@
+package blockchained;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot do estado derivado da cadeia: eleições, contagem dos votos e
+ * registo de votantes (com os filtros de Bloom), marcado com a altura e o
+ * hash do bloco a que corresponde
+ * Ao abrir a Blockchain a partir do BlockStore carrega-se o snapshot mais
+ * recente e só os blocos acima dele são contados; sem snapshot é preciso
+ * percorrer (e descodificar) todos os blocos
+ *
+ * Formato binário, na diretoria do BlockStore (state-0000001000.snap):
+ * magic (4) | versão (4) | altura (4) | hash (32) | eleições | contagem |
+ * registo | crc32 (4) de tudo o que está antes
+ *
+ * A escrita é atómica: o snapshot é escrito num ficheiro temporário, posto
+ * no disco e só depois renomeado. Ficam os KEPT mais recentes; ao abrir, um
+ * snapshot cujo bloco já não está na cadeia guardada (reorganização ou
+ * blocos perdidos numa falha) é ignorado e tenta-se o anterior
+ *
+ * @author Acer
+ */
+public final class StateSnapshot {
+
+    private static final int MAGIC = 0x564F5453; // "VOTS"
+    private static final int VERSION = 1; // Versão do formato
+    static final int KEPT = 2; // Snapshots mantidos na diretoria
+
+    private final int height; // Altura do bloco do snapshot
+    private final Hash256 hash; // Hash do bloco do snapshot
+    private final Map<String, Election> elections; // Eleições
+    private final VoteTally tally; // Contagem até ao bloco
+    private final VoterRegistry voterRegistry; // Votantes até ao bloco
+
+    private StateSnapshot(int height, Hash256 hash, Map<String, Election> elections, VoteTally tally,
+            VoterRegistry voterRegistry) {
+        this.height = height;
+        this.hash = hash;
+        this.elections = elections;
+        this.tally = tally;
+        this.voterRegistry = voterRegistry;
+    }
+
+    /**
+     * Codifica o estado (chamado pelo escritor da Blockchain, para o estado
+     * não mudar durante a codificação)
+     *
+     * @param height Altura do último bloco contado
+     * @param hash Hash desse bloco
+     * @param elections Eleições
+     * @param tally Contagem
+     * @param voterRegistry Registo de votantes
+     * @return Conteúdo do ficheiro
+     * @throws IOException Se a codificação falhar
+     */
+    static byte[] encode(int height, Hash256 hash, Collection<Election> elections, VoteTally tally,
+            VoterRegistry voterRegistry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(height);
+        byte[] hashBytes = new byte[Hash256.SIZE];
+        hash.writeTo(hashBytes, 0);
+        out.write(hashBytes);
+
+        out.writeInt(elections.size());
+        for (Election election : elections) {
+            out.writeUTF(election.getElectionId());
+            out.writeUTF(election.getTitle());
+            out.writeInt(election.getExpectedVoters());
+            out.writeLong(election.getStartTime());
+            out.writeLong(election.getEndTime());
+            out.writeBoolean(election.isActive());
+        }
+        tally.writeTo(out);
+        voterRegistry.writeTo(out);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Escreve um snapshot codificado na diretoria, de forma atómica, e apaga
+     * os snapshots mais antigos
+     *
+     * @param dir Diretoria do BlockStore
+     * @param height Altura do snapshot
+     * @param data Conteúdo devolvido por encode
+     * @throws IOException Se a escrita falhar (o snapshot anterior continua válido)
+     */
+    static void write(Path dir, int height, byte[] data) throws IOException {
+        Path path = dir.resolve(String.format("state-%010d.snap", height));
+        Path tmp = dir.resolve(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Os snapshots acima deste são de blocos substituídos numa reorganização
+        int kept = 0;
+        for (Path old : list(dir)) {
+            if (old.toString().compareTo(path.toString()) > 0 || ++kept > KEPT) {
+                Files.deleteIfExists(old);
+            }
+        }
+    }
+
+    /**
+     * Carrega o snapshot mais recente que corresponde à cadeia guardada
+     * Se nenhum corresponder, as eleições do snapshot mais recente que se
+     * consiga ler continuam a servir (não dependem dos blocos): é devolvido
+     * um snapshot só com elas, na altura -1, e todos os blocos são contados
+     *
+     * @param store Armazenamento dos blocos (onde estão os snapshots)
+     * @return Snapshot ou null se não houver nenhum que se consiga ler
+     */
+    static StateSnapshot latest(BlockStore store) {
+        List<Path> snapshots;
+        try {
+            snapshots = list(store.getDirectory());
+        } catch (IOException ex) {
+            System.getLogger(StateSnapshot.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+            return null;
+        }
+        StateSnapshot newest = null;
+        for (Path path : snapshots) {
+            try {
+                StateSnapshot snapshot = read(Files.readAllBytes(path));
+                // O bloco do snapshot tem de estar na cadeia guardada
+                if (snapshot.height < store.size() && store.get(snapshot.height).getCurrentHash().equals(snapshot.hash)) {
+                    return snapshot;
+                }
+                if (newest == null) {
+                    newest = snapshot;
+                }
+            } catch (IOException | RuntimeException ex) {
+                System.getLogger(StateSnapshot.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+            }
+        }
+        if (newest == null) {
+            return null;
+        }
+        VoterRegistry voterRegistry = new VoterRegistry();
+        for (Election election : newest.elections.values()) {
+            voterRegistry.addElection(election.getElectionId(), election.getExpectedVoters());
+        }
+        return new StateSnapshot(-1, null, newest.elections, new VoteTally(), voterRegistry);
+    }
+
+    /**
+     * Lista os snapshots da diretoria, do mais recente para o mais antigo
+     */
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return new ArrayList<>(files.filter(p -> p.getFileName().toString().matches("state-\\d{10}\\.snap"))
+                    .sorted(Comparator.comparing(Path::toString).reversed()).toList());
+        }
+    }
+
+    /**
+     * Descodifica um snapshot escrito por encode
+     *
+     * @param data Conteúdo do ficheiro
+     * @return Snapshot com o estado reconstruído
+     * @throws IOException Se o ficheiro estiver incompleto ou corrompido
+     */
+    static StateSnapshot read(byte[] data) throws IOException {
+        if (data.length < 4 + 4 + 4 + Hash256.SIZE + 4) {
+            throw new IOException("Truncated snapshot");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data).getInt(data.length - 4)) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unknown snapshot format");
+        }
+        int height = in.readInt();
+        byte[] hashBytes = new byte[Hash256.SIZE];
+        in.readFully(hashBytes);
+
+        Map<String, Election> elections = new ConcurrentHashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String electionId = in.readUTF();
+            String title = in.readUTF();
+            int expectedVoters = in.readInt();
+            long startTime = in.readLong();
+            long endTime = in.readLong();
+            boolean active = in.readBoolean();
+            elections.put(electionId, new Election(electionId, title, expectedVoters, startTime, endTime, active));
+        }
+        VoteTally tally = new VoteTally();
+        tally.readFrom(in);
+        VoterRegistry voterRegistry = new VoterRegistry();
+        voterRegistry.readFrom(in);
+        return new StateSnapshot(height, Hash256.of(hashBytes), elections, tally, voterRegistry);
+    }
+
+    /**
+     * Obtém a altura do último bloco contado no snapshot
+     *
+     * @return Altura (-1 se o snapshot só tiver as eleições)
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Obtém o hash do último bloco contado no snapshot
+     *
+     * @return Hash do bloco (null se o snapshot só tiver as eleições)
+     */
+    public Hash256 getHash() {
+        return hash;
+    }
+
+    Map<String, Election> getElections() {
+        return elections;
+    }
+
+    VoteTally getTally() {
+        return tally;
+    }
+
+    VoterRegistry getVoterRegistry() {
+        return voterRegistry;
+    }
+}
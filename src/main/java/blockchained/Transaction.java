@@ -8,8 +8,6 @@ import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.Key;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
@@ -23,12 +21,15 @@ import java.util.Date;
  */
 public class Transaction implements Serializable {
 
-    private String transactionId; // Hash único que identifica a transação
+    public static final int DIFFICULTY_BITS = 18; // Bits a zero exigidos na prova de trabalho da transação
+
+    private Hash256 transactionId; // Hash único que identifica a transação
     private Key publicVoterKey; // Chave pública do votante (identificação anónima)
     private String encryptedVote; // Voto encriptado em Base64
     private String electionId; // ID da eleição a que pertence o voto
     private byte[] signature; // Assinatura digital da transação
-    private int nonce; // Nonce para proof-of-work da transação
+    private long nonce; // Nonce para proof-of-work da transação
+    private int extraNonce; // Extra-nonce usado quando o espaço do nonce se esgota
 
     /**
      * Construtor que cria uma nova transação de voto Encripta o voto, calcula o
@@ -43,12 +44,16 @@ public class Transaction implements Serializable {
     public Transaction(Key voterPublicKey, String vote, String electionId, PrivateKey privateKey) throws Exception {
         this.publicVoterKey = voterPublicKey;
         this.electionId = electionId;
-        // Minera um nonce para a transação (proof-of-work)
-        this.nonce = Miner.getNonce(publicVoterKey.toString() + encryptedVote + electionId, 3);
 
         // Encripta o voto antes de armazenar
         this.encryptedVote = encryptVote(vote);
 
+        // Minera um nonce para a transação (proof-of-work) sobre os campos
+        // finais, já com o voto encriptado
+        Nonce solution = MiningService.getDefault().mine(getProofOfWorkData(), DIFFICULTY_BITS);
+        this.extraNonce = solution.getExtraNonce();
+        this.nonce = solution.getNonce();
+
         // Calcula o hash único da transação
         this.transactionId = calculateHash();
 
@@ -56,6 +61,28 @@ public class Transaction implements Serializable {
         this.signature = signTransaction(privateKey);
     }
 
+    /**
+     * Reconstrói uma transação já assinada e minerada (lida do disco)
+     *
+     * @param transactionId Hash da transação
+     * @param voterPublicKey Chave pública do votante
+     * @param encryptedVote Voto encriptado
+     * @param electionId ID da eleição
+     * @param signature Assinatura digital
+     * @param extraNonce Extra-nonce da prova de trabalho
+     * @param nonce Nonce da prova de trabalho
+     */
+    Transaction(Hash256 transactionId, Key voterPublicKey, String encryptedVote, String electionId,
+            byte[] signature, int extraNonce, long nonce) {
+        this.transactionId = transactionId;
+        this.publicVoterKey = voterPublicKey;
+        this.encryptedVote = encryptedVote;
+        this.electionId = electionId;
+        this.signature = signature;
+        this.extraNonce = extraNonce;
+        this.nonce = nonce;
+    }
+
     /**
      * Encripta um voto usando codificação Base64 Nota: Esta é uma implementação
      * simplificada para demonstração Em produção, deveria usar encriptação
@@ -112,41 +139,46 @@ public class Transaction implements Serializable {
     }
 
     /**
-     * Calcula o hash SHA-256 único da transação Este hash serve como ID da
-     * transação e inclui todos os dados relevantes
+     * Dados cobertos pela prova de trabalho (os mesmos que são assinados)
      *
-     * @return Hash da transação em formato hexadecimal
+     * @return Chave pública, voto encriptado e ID da eleição concatenados
      */
-    private String calculateHash() {
-        try {
-            // Concatena todos os dados da transação incluindo o nonce
-            String data = publicVoterKey.toString() + encryptedVote + electionId + nonce;
-
-            // Calcula o hash SHA-256
-            MessageDigest digest;
-            digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data.getBytes(StandardCharsets.UTF_8));
+    private String getProofOfWorkData() {
+        return publicVoterKey.toString() + encryptedVote + electionId;
+    }
 
-            // Converte para hexadecimal
-            return bytesToHex(hash);
-        } catch (NoSuchAlgorithmException ex) {
-            throw new RuntimeException(ex);
-        }
+    /**
+     * Verifica se o nonce da transação satisfaz a prova de trabalho
+     *
+     * @return true se o nonce resolver os dados finais da transação com
+     * DIFFICULTY_BITS bits a zero
+     */
+    public boolean hasValidProofOfWork() {
+        return ProofOfWork.getDefault().verify(getProofOfWorkData(), new Nonce(extraNonce, nonce), DIFFICULTY_BITS);
+    }
 
+    /**
+     * Verifica se o ID da transação corresponde ao seu conteúdo
+     * (uma transação recebida de outro nó pode trazer um ID qualquer)
+     *
+     * @return true se o ID for o hash dos dados da transação
+     */
+    public boolean hasValidId() {
+        return transactionId.equals(calculateHash());
     }
 
     /**
-     * Converte um array de bytes para representação hexadecimal
+     * Calcula o hash SHA-256 único da transação Este hash serve como ID da
+     * transação e inclui todos os dados relevantes
      *
-     * @param bytes Array de bytes a converter
-     * @return String hexadecimal
+     * @return Hash da transação
      */
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        for (byte b : bytes) {
-            result.append(String.format("%02x", b));
-        }
-        return result.toString();
+    private Hash256 calculateHash() {
+        // Concatena todos os dados da transação incluindo o nonce
+        String data = publicVoterKey.toString() + encryptedVote + electionId + extraNonce + ":" + nonce;
+
+        // Calcula o hash SHA-256
+        return Hash256.sha256(data.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -154,7 +186,7 @@ public class Transaction implements Serializable {
      *
      * @return Hash da transação
      */
-    public String getTransactionId() {
+    public Hash256 getTransactionId() {
         return transactionId;
     }
 
@@ -185,6 +217,44 @@ public class Transaction implements Serializable {
         return electionId;
     }
 
+    /**
+     * Obtém o nonce da prova de trabalho
+     *
+     * @return Nonce
+     */
+    public long getNonce() {
+        return nonce;
+    }
+
+    /**
+     * Obtém o extra-nonce da prova de trabalho
+     *
+     * @return Extra-nonce
+     */
+    public int getExtraNonce() {
+        return extraNonce;
+    }
+
+    /**
+     * Obtém a assinatura digital
+     *
+     * @return Bytes da assinatura (não copiados)
+     */
+    byte[] getSignature() {
+        return signature;
+    }
+
+    /**
+     * Obtém o tamanho aproximado da transação (id, chave, voto, eleição,
+     * assinatura e nonces), usado nos limites do mempool
+     *
+     * @return Tamanho em bytes
+     */
+    public int getSize() {
+        return Hash256.SIZE + publicVoterKey.getEncoded().length + encryptedVote.length()
+                + electionId.length() + signature.length + NonceSearch.EXTRA_NONCE_BYTES + NonceSearch.NONCE_BYTES;
+    }
+
     /**
      * Representação em string da transação com informação resumida Mostra
      * apenas os primeiros 8 caracteres dos hashes longos
@@ -194,7 +264,7 @@ public class Transaction implements Serializable {
     @Override
     public String toString() {
         return "Transaction{"
-                + "id='" + transactionId.substring(0, 8) + "...', "
+                + "id='" + transactionId.toHex().substring(0, 8) + "...', "
                 + "voter='" + publicVoterKey.toString().substring(0, 8) + "...', "
                 + "election='" + electionId + "', "
                 + '}';
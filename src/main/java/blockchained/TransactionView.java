@@ -0,0 +1,209 @@
+package blockchained;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Cursor (flyweight) sobre as transações de um bloco
+ * Num bloco fora do heap (OffHeapStore) lê os campos diretamente da
+ * memória, no formato do BlockStore, sem criar objetos Transaction nem
+ * descodificar a chave do votante: a impressão digital é o SHA-256 dos bytes
+ * da chave tal como estão guardados. Num bloco do BlockStore cujas
+ * transações ainda não foram lidas faz o mesmo sobre o registo lido do
+ * disco (sem as descodificar nem as deixar no heap). Num bloco no heap
+ * percorre os objetos Transaction
+ *
+ * Uso:
+ * TransactionView tx = TransactionView.of(block);
+ * while (tx.next()) { tx.getElectionId(); ... }
+ *
+ * @author Acer
+ */
+public final class TransactionView {
+
+    private final ByteBuffer body; // Transações codificadas (null se o bloco estiver no heap)
+    private final int[] offsets; // Início de cada transação em body
+    private final List<Transaction> objects; // Transações no heap (null se o bloco estiver fora do heap)
+    private final int count; // Número de transações
+    private int index = -1; // Transação atual
+
+    // Campos da transação atual em body
+    private int keyPos;
+    private int keyLength;
+    private int votePos;
+    private int voteLength;
+    private int electionPos;
+    private int electionLength;
+
+    private TransactionView(ByteBuffer body, int[] offsets, List<Transaction> objects) {
+        this.body = body;
+        this.offsets = offsets;
+        this.objects = objects;
+        this.count = objects != null ? objects.size() : offsets.length;
+    }
+
+    /**
+     * Cria um cursor sobre as transações de um bloco
+     *
+     * @param block Bloco
+     * @return Cursor antes da primeira transação
+     */
+    public static TransactionView of(Block block) {
+        List<Transaction> transactions = block.getTransactions();
+        if (transactions instanceof OffHeapStore.OffHeapTransactions) {
+            OffHeapStore.OffHeapTransactions stored = (OffHeapStore.OffHeapTransactions) transactions;
+            return new TransactionView(stored.body(), stored.offsets(), null);
+        }
+        if (transactions instanceof BlockStore.StoredTransactions
+                && !((BlockStore.StoredTransactions) transactions).isLoaded()) {
+            ByteBuffer body;
+            try {
+                body = ((BlockStore.StoredTransactions) transactions).body();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Cannot read block " + block.getBlockID() + " from the store", ex);
+            }
+            int count = body.getInt(0);
+            body = body.position(4).slice();
+            return new TransactionView(body, offsets(body, count), null);
+        }
+        return new TransactionView(null, null, transactions);
+    }
+
+    /**
+     * Calcula o início de cada transação codificada
+     *
+     * @param body Buffer com as transações (a partir da posição 0)
+     * @param count Número de transações
+     * @return Posições das transações
+     */
+    static int[] offsets(ByteBuffer body, int count) {
+        int[] offsets = new int[count];
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = pos;
+            pos += Hash256.SIZE;
+            pos += 1 + (body.get(pos) & 0xFF);
+            pos += 2 + (body.getShort(pos) & 0xFFFF);
+            pos += 4 + body.getInt(pos);
+            pos += 2 + (body.getShort(pos) & 0xFFFF);
+            pos += 2 + (body.getShort(pos) & 0xFFFF);
+            pos += 4 + 8;
+        }
+        return offsets;
+    }
+
+    /**
+     * Avança para a transação seguinte
+     *
+     * @return false se já não houver transações
+     */
+    public boolean next() {
+        if (index + 1 >= count) {
+            return false;
+        }
+        index++;
+        if (body != null) {
+            int pos = offsets[index] + Hash256.SIZE;
+            pos += 1 + (body.get(pos) & 0xFF);
+            keyLength = body.getShort(pos) & 0xFFFF;
+            keyPos = pos + 2;
+            pos = keyPos + keyLength;
+            voteLength = body.getInt(pos);
+            votePos = pos + 4;
+            pos = votePos + voteLength;
+            electionLength = body.getShort(pos) & 0xFFFF;
+            electionPos = pos + 2;
+        }
+        return true;
+    }
+
+    /**
+     * Obtém o número de transações do bloco
+     *
+     * @return Número de transações
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Obtém o ID da transação atual
+     *
+     * @return Hash da transação
+     */
+    public Hash256 getTransactionId() {
+        if (body == null) {
+            return objects.get(index).getTransactionId();
+        }
+        return Hash256.of(bytes(offsets[index], Hash256.SIZE));
+    }
+
+    /**
+     * Obtém a eleição da transação atual
+     *
+     * @return ID da eleição
+     */
+    public String getElectionId() {
+        if (body == null) {
+            return objects.get(index).getElectionId();
+        }
+        return new String(bytes(electionPos, electionLength), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Obtém o voto encriptado da transação atual
+     *
+     * @return Voto encriptado em Base64
+     */
+    public String getEncryptedVote() {
+        if (body == null) {
+            return objects.get(index).getEncryptedVote();
+        }
+        return new String(bytes(votePos, voteLength), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Obtém a impressão digital do votante da transação atual
+     * (VoterRegistry.fingerprint da chave), sem descodificar a chave
+     *
+     * @return SHA-256 da chave codificada
+     */
+    public Hash256 getVoterFingerprint() {
+        if (body == null) {
+            return VoterRegistry.fingerprint(objects.get(index).getPublicVoterKey());
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(body.slice(keyPos, keyLength));
+            return Hash256.of(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Obtém a transação atual como objeto (descodifica a chave)
+     *
+     * @return Transação
+     */
+    public Transaction toTransaction() {
+        if (body == null) {
+            return objects.get(index);
+        }
+        try {
+            return BlockStore.decodeTransaction(body.duplicate().position(offsets[index]));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Invalid off-heap transaction", ex);
+        }
+    }
+
+    private byte[] bytes(int pos, int length) {
+        byte[] out = new byte[length];
+        body.get(pos, out);
+        return out;
+    }
+}
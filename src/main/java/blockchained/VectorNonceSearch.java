@@ -0,0 +1,289 @@
+package blockchained;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Motor de procura de nonces SIMD (jdk.incubator.vector)
+ * Calcula o SHA-256 de 4, 8 ou 16 nonces consecutivos de uma só vez, um por
+ * lane de um IntVector. Os blocos da mensagem anteriores ao nonce são iguais
+ * em todas as lanes e são comprimidos uma única vez (midstate escalar); só os
+ * últimos blocos, que contêm o nonce e o padding, são comprimidos em SIMD
+ *
+ * O número de lanes é escolhido com -Dmining.vector.lanes=4|8|16 (por defeito
+ * o tamanho preferido do processador: 8 em AVX2, 16 em AVX-512). Cada nonce
+ * encontrado é confirmado pelo motor escalar e o backend só é ativado depois
+ * de passar o auto-teste contra o MessageDigest (selfTest)
+ *
+ * @author Acer
+ */
+public class VectorNonceSearch extends NonceSearch {
+
+    static final VectorSpecies<Integer> SPECIES = selectSpecies(); // Forma dos vetores (lanes)
+
+    private final int lanes; // Nonces calculados em paralelo
+    private final int difficultyBits; // Bits a zero exigidos
+    private final int prefixLength; // Tamanho do prefixo fixo
+    private final byte[] message; // Mensagem com padding (nonce a zero)
+    private final int fixedBlocks; // Blocos anteriores ao nonce (iguais em todas as lanes)
+    private final int tailBlocks; // Blocos com o nonce e o padding
+    private final int nonceOffset; // Posição do nonce dentro dos blocos finais
+    private final int[] midstate = new int[8]; // Estado após os blocos fixos
+    private final int[] tailWords; // Palavras dos blocos finais com o nonce a zero
+    private final int[][] schedule; // Message schedule (64 palavras x lanes) de cada bloco final
+    private final int[] state; // Estado (8 palavras x lanes)
+
+    /**
+     * Cria um motor SIMD para um prefixo fixo
+     *
+     * @param prefix Dados fixos que antecedem o nonce
+     * @param difficultyBits Número de bits a zero exigidos no início do hash
+     * @throws java.security.NoSuchAlgorithmException Se o SHA-256 não estiver disponível
+     */
+    public VectorNonceSearch(byte[] prefix, int difficultyBits) throws java.security.NoSuchAlgorithmException {
+        super(prefix, difficultyBits);
+        this.lanes = SPECIES.length();
+        this.difficultyBits = difficultyBits;
+        this.prefixLength = prefix.length;
+
+        // Mensagem completa com padding: prefixo + extraNonce + nonce + 0x80 + zeros + tamanho
+        int total = prefix.length + EXTRA_NONCE_BYTES + NONCE_BYTES;
+        this.message = new byte[((total + 8) / 64 + 1) * 64];
+        System.arraycopy(prefix, 0, message, 0, prefix.length);
+        message[total] = (byte) 0x80;
+        long bits = (long) total * 8;
+        for (int i = 0; i < 8; i++) {
+            message[message.length - 1 - i] = (byte) (bits >>> (8 * i));
+        }
+
+        int nonceStart = prefix.length + EXTRA_NONCE_BYTES;
+        this.fixedBlocks = nonceStart / 64;
+        this.tailBlocks = message.length / 64 - fixedBlocks;
+        this.nonceOffset = nonceStart - fixedBlocks * 64;
+        this.tailWords = new int[tailBlocks * 16];
+        this.schedule = new int[tailBlocks][64 * lanes];
+        this.state = new int[8 * lanes];
+        setExtraNonce(0);
+    }
+
+    /**
+     * Define o extra-nonce e recalcula o midstate e as palavras constantes
+     *
+     * @param extraNonce Extra-nonce a usar nas tentativas seguintes
+     */
+    @Override
+    public void setExtraNonce(int extraNonce) {
+        super.setExtraNonce(extraNonce);
+        writeInt(message, prefixLength, extraNonce);
+
+        System.arraycopy(IV, 0, midstate, 0, 8);
+        int[] w = new int[64];
+        for (int b = 0; b < fixedBlocks; b++) {
+            compress(midstate, message, b * 64, w);
+        }
+        for (int i = 0; i < tailWords.length; i++) {
+            tailWords[i] = readInt(message, fixedBlocks * 64 + i * 4);
+            Arrays.fill(schedule[i / 16], (i % 16) * lanes, (i % 16 + 1) * lanes, tailWords[i]);
+        }
+    }
+
+    /**
+     * Procura um nonce válido num intervalo, lanes nonces de cada vez
+     *
+     * @param from Primeiro nonce a testar (inclusive)
+     * @param to Último nonce a testar (exclusive)
+     * @param stop Flag partilhada que indica que o trabalho terminou
+     * @return Nonce encontrado ou -1 se o intervalo se esgotar ou o trabalho parar
+     */
+    @Override
+    public long search(long from, long to, AtomicBoolean stop) {
+        long nonce = from;
+        while (nonce < to) {
+            if (stop.get()) {
+                return -1;
+            }
+            long end = to - nonce > CHECK_INTERVAL ? nonce + CHECK_INTERVAL : to;
+            while (nonce < end) {
+                int count = (int) Math.min(lanes, end - nonce);
+                int lane = searchBatch(nonce, count);
+                attempts += count;
+                if (lane >= 0) {
+                    long found = nonce + lane;
+                    // Confirma com o motor escalar antes de aceitar
+                    if (!test(found)) {
+                        throw new IllegalStateException("Vector SHA-256 diverge do motor escalar no nonce " + found);
+                    }
+                    return found;
+                }
+                nonce += count;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Calcula os hashes de lanes nonces consecutivos e devolve a primeira
+     * lane (dentro de count) que cumpre a dificuldade
+     */
+    private int searchBatch(long base, int count) {
+        computeBatch(base);
+        VectorMask<Integer> ok = SPECIES.indexInRange(0, count);
+        int bits = difficultyBits;
+        for (int k = 0; k < 8 && bits > 0; k++, bits -= 32) {
+            int mask = bits >= 32 ? -1 : -1 << (32 - bits);
+            IntVector h = IntVector.fromArray(SPECIES, state, k * lanes);
+            ok = ok.and(h.and(mask).compare(VectorOperators.EQ, 0));
+            if (!ok.anyTrue()) {
+                return -1;
+            }
+        }
+        return ok.firstTrue();
+    }
+
+    /**
+     * Calcula o estado final (hash) de lanes nonces consecutivos a partir de base
+     */
+    private void computeBatch(long base) {
+        // Repõe as palavras que contêm o nonce e escreve o nonce de cada lane
+        for (int q = nonceOffset & ~3; q < nonceOffset + NONCE_BYTES; q += 4) {
+            int w = q >>> 2;
+            Arrays.fill(schedule[w >>> 4], (w & 15) * lanes, ((w & 15) + 1) * lanes, tailWords[w]);
+        }
+        for (int j = 0; j < lanes; j++) {
+            long n = base + j;
+            for (int p = 0; p < NONCE_BYTES; p++) {
+                int q = nonceOffset + p;
+                int w = q >>> 2;
+                schedule[w >>> 4][(w & 15) * lanes + j] |= (int) ((n >>> (56 - 8 * p)) & 0xFF) << ((3 - (q & 3)) * 8);
+            }
+        }
+        for (int k = 0; k < 8; k++) {
+            Arrays.fill(state, k * lanes, (k + 1) * lanes, midstate[k]);
+        }
+        for (int b = 0; b < tailBlocks; b++) {
+            compress(state, schedule[b]);
+        }
+    }
+
+    /**
+     * Compressão SHA-256 de um bloco em todas as lanes
+     *
+     * @param st Estado (8 palavras x lanes), atualizado no fim
+     * @param w Message schedule (16 palavras preenchidas, 64 x lanes no total)
+     */
+    private void compress(int[] st, int[] w) {
+        final int n = lanes;
+        for (int i = 16; i < 64; i++) {
+            IntVector w15 = IntVector.fromArray(SPECIES, w, (i - 15) * n);
+            IntVector w2 = IntVector.fromArray(SPECIES, w, (i - 2) * n);
+            IntVector s0 = w15.lanewise(VectorOperators.ROR, 7)
+                    .lanewise(VectorOperators.XOR, w15.lanewise(VectorOperators.ROR, 18))
+                    .lanewise(VectorOperators.XOR, w15.lanewise(VectorOperators.LSHR, 3));
+            IntVector s1 = w2.lanewise(VectorOperators.ROR, 17)
+                    .lanewise(VectorOperators.XOR, w2.lanewise(VectorOperators.ROR, 19))
+                    .lanewise(VectorOperators.XOR, w2.lanewise(VectorOperators.LSHR, 10));
+            IntVector.fromArray(SPECIES, w, (i - 16) * n)
+                    .add(s0)
+                    .add(IntVector.fromArray(SPECIES, w, (i - 7) * n))
+                    .add(s1)
+                    .intoArray(w, i * n);
+        }
+
+        IntVector a = IntVector.fromArray(SPECIES, st, 0);
+        IntVector b = IntVector.fromArray(SPECIES, st, n);
+        IntVector c = IntVector.fromArray(SPECIES, st, 2 * n);
+        IntVector d = IntVector.fromArray(SPECIES, st, 3 * n);
+        IntVector e = IntVector.fromArray(SPECIES, st, 4 * n);
+        IntVector f = IntVector.fromArray(SPECIES, st, 5 * n);
+        IntVector g = IntVector.fromArray(SPECIES, st, 6 * n);
+        IntVector h = IntVector.fromArray(SPECIES, st, 7 * n);
+
+        for (int i = 0; i < 64; i++) {
+            IntVector s1 = e.lanewise(VectorOperators.ROR, 6)
+                    .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 11))
+                    .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 25));
+            IntVector ch = e.and(f).lanewise(VectorOperators.XOR, e.not().and(g));
+            IntVector t1 = h.add(s1).add(ch).add(K[i]).add(IntVector.fromArray(SPECIES, w, i * n));
+            IntVector s0 = a.lanewise(VectorOperators.ROR, 2)
+                    .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 13))
+                    .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 22));
+            IntVector maj = a.and(b).lanewise(VectorOperators.XOR, a.and(c)).lanewise(VectorOperators.XOR, b.and(c));
+            h = g;
+            g = f;
+            f = e;
+            e = d.add(t1);
+            d = c;
+            c = b;
+            b = a;
+            a = t1.add(s0.add(maj));
+        }
+
+        a.add(IntVector.fromArray(SPECIES, st, 0)).intoArray(st, 0);
+        b.add(IntVector.fromArray(SPECIES, st, n)).intoArray(st, n);
+        c.add(IntVector.fromArray(SPECIES, st, 2 * n)).intoArray(st, 2 * n);
+        d.add(IntVector.fromArray(SPECIES, st, 3 * n)).intoArray(st, 3 * n);
+        e.add(IntVector.fromArray(SPECIES, st, 4 * n)).intoArray(st, 4 * n);
+        f.add(IntVector.fromArray(SPECIES, st, 5 * n)).intoArray(st, 5 * n);
+        g.add(IntVector.fromArray(SPECIES, st, 6 * n)).intoArray(st, 6 * n);
+        h.add(IntVector.fromArray(SPECIES, st, 7 * n)).intoArray(st, 7 * n);
+    }
+
+    /**
+     * Escolhe o número de lanes a partir de -Dmining.vector.lanes
+     */
+    private static VectorSpecies<Integer> selectSpecies() {
+        switch (System.getProperty("mining.vector.lanes", "")) {
+            case "4":
+                return IntVector.SPECIES_128;
+            case "8":
+                return IntVector.SPECIES_256;
+            case "16":
+                return IntVector.SPECIES_512;
+            default:
+                return IntVector.SPECIES_PREFERRED;
+        }
+    }
+
+    /**
+     * Compara o SHA-256 vetorial com o MessageDigest para prefixos de vários
+     * tamanhos (incluindo os que fazem o nonce atravessar blocos)
+     *
+     * @return true se todas as lanes coincidirem
+     */
+    static boolean selfTest() {
+        try {
+            Random rnd = new Random(42);
+            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
+            for (int len = 0; len <= 200; len++) {
+                byte[] prefix = new byte[len];
+                rnd.nextBytes(prefix);
+                int extra = rnd.nextInt();
+                long base = rnd.nextLong();
+                VectorNonceSearch search = new VectorNonceSearch(prefix, 0);
+                search.setExtraNonce(extra);
+                search.computeBatch(base);
+                for (int j = 0; j < search.lanes; j++) {
+                    byte[] input = new byte[len + EXTRA_NONCE_BYTES + NONCE_BYTES];
+                    System.arraycopy(prefix, 0, input, 0, len);
+                    writeInt(input, len, extra);
+                    writeNonce(input, len + EXTRA_NONCE_BYTES, base + j);
+                    byte[] expected = md.digest(input);
+                    for (int k = 0; k < 8; k++) {
+                        if (search.state[k * search.lanes + j] != readInt(expected, k * 4)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        } catch (java.security.NoSuchAlgorithmException ex) {
+            return false;
+        }
+    }
+}
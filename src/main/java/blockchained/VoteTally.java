@@ -0,0 +1,112 @@
+package blockchained;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contagem materializada dos votos
+ * Mantém um contador por eleição e candidato, atualizado pela Blockchain
+ * quando um bloco entra na cadeia (+1 por voto) e quando sai numa
+ * reorganização do sync (-1 por voto). Ler os resultados de uma eleição
+ * custa O(candidatos), seja qual for o tamanho da cadeia
+ *
+ * Só o escritor da Blockchain altera os contadores; os leitores podem ler
+ * em qualquer thread
+ *
+ * @author Acer
+ */
+public class VoteTally {
+
+    private final Map<String, Map<String, AtomicLong>> counts = new ConcurrentHashMap<>(); // Eleição -> candidato -> votos
+
+    /**
+     * Conta os votos de um bloco que entrou na cadeia
+     *
+     * @param block Bloco acrescentado
+     */
+    void add(Block block) {
+        apply(block, 1);
+    }
+
+    /**
+     * Desconta os votos de um bloco que saiu da cadeia
+     *
+     * @param block Bloco removido
+     */
+    void remove(Block block) {
+        apply(block, -1);
+    }
+
+    private void apply(Block block, long delta) {
+        TransactionView tx = TransactionView.of(block);
+        while (tx.next()) {
+            String vote = Blockchain.decryptVote(tx.getEncryptedVote());
+            counts.computeIfAbsent(tx.getElectionId(), k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(vote, k -> new AtomicLong())
+                    .addAndGet(delta);
+        }
+    }
+
+    /**
+     * Obtém os resultados de uma eleição
+     * Os candidatos sem votos (depois de uma reorganização) não aparecem
+     *
+     * @param electionId ID da eleição
+     * @return Mapa candidato -> número de votos
+     */
+    public Map<String, Long> get(String electionId) {
+        Map<String, Long> results = new HashMap<>();
+        Map<String, AtomicLong> election = counts.get(electionId);
+        if (election != null) {
+            for (Map.Entry<String, AtomicLong> e : election.entrySet()) {
+                long votes = e.getValue().get();
+                if (votes != 0) {
+                    results.put(e.getKey(), votes);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Escreve os contadores (snapshot do estado)
+     * Formato: eleições n | (eleição, candidatos m | (candidato, votos (8)))
+     * Só deve ser chamado pelo escritor da Blockchain
+     *
+     * @param out Destino
+     * @throws IOException Se a escrita falhar
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Map<String, AtomicLong>> election : counts.entrySet()) {
+            out.writeUTF(election.getKey());
+            out.writeInt(election.getValue().size());
+            for (Map.Entry<String, AtomicLong> e : election.getValue().entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().get());
+            }
+        }
+    }
+
+    /**
+     * Carrega numa contagem vazia os contadores escritos por writeTo
+     *
+     * @param in Origem
+     * @throws IOException Se a leitura falhar
+     */
+    void readFrom(DataInput in) throws IOException {
+        int elections = in.readInt();
+        for (int i = 0; i < elections; i++) {
+            Map<String, AtomicLong> election = counts.computeIfAbsent(in.readUTF(), k -> new ConcurrentHashMap<>());
+            int candidates = in.readInt();
+            for (int c = 0; c < candidates; c++) {
+                election.put(in.readUTF(), new AtomicLong(in.readLong()));
+            }
+        }
+    }
+}
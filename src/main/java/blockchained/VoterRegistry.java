@@ -0,0 +1,285 @@
+package blockchained;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registo dos votantes que já votaram
+ * Cada votante é identificado pela impressão digital da sua chave pública
+ * (SHA-256 da chave codificada, 32 bytes num Hash256) em vez do
+ * Key.toString(), que numa chave RSA tem centenas de caracteres
+ *
+ * As eleições são internadas num id inteiro pequeno (0, 1, 2, ...) e as
+ * eleições em que um votante votou são um bitmap de longs (um long cobre 64
+ * eleições). O bitmap de cada votante é imutável: votar numa nova eleição
+ * substitui-o por uma cópia, pelo que os leitores não precisam de locks
+ *
+ * Cada eleição tem um filtro de Bloom, dimensionado pelo número esperado de
+ * votantes, à frente do registo: como quase todos os votos são o primeiro
+ * voto do votante, a maior parte das consultas termina no filtro ("de certeza
+ * que não votou") sem tocar no mapa. Um filtro não permite remover
+ * elementos, pelo que é reconstruído quando uma reorganização remove votos
+ * (rebuild). A taxa de falsos positivos vem de -Dbloom.falsePositiveRate
+ * (0.01 por defeito); se votarem mais votantes do que o esperado a taxa
+ * sobe, mas a resposta continua certa (só fica mais lenta)
+ *
+ * Só o escritor da Blockchain altera o registo
+ *
+ * @author Acer
+ */
+public class VoterRegistry {
+
+    private final Map<Hash256, long[]> voted = new ConcurrentHashMap<>(); // Impressão digital -> bitmap de eleições
+    private final Map<String, Integer> electionIds = new ConcurrentHashMap<>(); // Eleição -> id internado
+    private final AtomicInteger nextElectionId = new AtomicInteger(); // Próximo id de eleição
+    private final Map<String, BloomFilter> filters = new ConcurrentHashMap<>(); // Eleição -> filtro dos votantes
+    private final double falsePositiveRate = Double.parseDouble(System.getProperty("bloom.falsePositiveRate", "0.01"));
+    private final LongAdder filtered = new LongAdder(); // Consultas respondidas só pelo filtro
+    private final LongAdder probed = new LongAdder(); // Consultas que foram ao registo
+
+    /**
+     * Calcula a impressão digital de uma chave pública
+     *
+     * @param publicKey Chave pública
+     * @return SHA-256 da chave codificada
+     */
+    public static Hash256 fingerprint(Key publicKey) {
+        return Hash256.sha256(publicKey.getEncoded());
+    }
+
+    /**
+     * Regista uma eleição e cria o seu filtro
+     *
+     * @param electionId ID da eleição
+     * @param expectedVoters Número esperado de votantes elegíveis
+     */
+    public void addElection(String electionId, int expectedVoters) {
+        electionIds.computeIfAbsent(electionId, k -> nextElectionId.getAndIncrement());
+        filters.computeIfAbsent(electionId, k -> new BloomFilter(Math.max(1, expectedVoters), falsePositiveRate));
+    }
+
+    /**
+     * Regista que um votante votou numa eleição
+     *
+     * @param publicKey Chave pública do votante
+     * @param electionId ID da eleição
+     */
+    public void add(Key publicKey, String electionId) {
+        add(fingerprint(publicKey), electionId);
+    }
+
+    /**
+     * Regista que um votante votou numa eleição
+     *
+     * @param fingerprint Impressão digital da chave do votante
+     * @param electionId ID da eleição
+     */
+    public void add(Hash256 fingerprint, String electionId) {
+        int id = electionIds.computeIfAbsent(electionId, k -> nextElectionId.getAndIncrement());
+        // Primeiro o filtro: quem vê o votante no registo também o vê no filtro
+        filters.computeIfAbsent(electionId, k -> new BloomFilter(
+                Integer.getInteger("election.expectedVoters", 100_000), falsePositiveRate)).add(fingerprint);
+        voted.compute(fingerprint, (k, bits) -> {
+            int word = id >>> 6;
+            long[] copy = bits == null ? new long[word + 1] : Arrays.copyOf(bits, Math.max(bits.length, word + 1));
+            copy[word] |= 1L << id;
+            return copy;
+        });
+    }
+
+    /**
+     * Remove o voto de um votante numa eleição (reorganização)
+     * O filtro da eleição continua a dar "talvez" para este votante até ser
+     * reconstruído com rebuild
+     *
+     * @param publicKey Chave pública do votante
+     * @param electionId ID da eleição
+     */
+    public void remove(Key publicKey, String electionId) {
+        remove(fingerprint(publicKey), electionId);
+    }
+
+    /**
+     * Remove o voto de um votante numa eleição (reorganização)
+     *
+     * @param fingerprint Impressão digital da chave do votante
+     * @param electionId ID da eleição
+     */
+    public void remove(Hash256 fingerprint, String electionId) {
+        Integer id = electionIds.get(electionId);
+        if (id == null) {
+            return;
+        }
+        voted.computeIfPresent(fingerprint, (k, bits) -> {
+            int word = id >>> 6;
+            if (word >= bits.length) {
+                return bits;
+            }
+            long[] copy = bits.clone();
+            copy[word] &= ~(1L << id);
+            for (long w : copy) {
+                if (w != 0) {
+                    return copy;
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Reconstrói o filtro de uma eleição a partir do registo
+     * Os leitores usam o filtro antigo (que contém todos os votantes do novo)
+     * até o novo ser publicado
+     *
+     * @param electionId ID da eleição
+     */
+    public void rebuild(String electionId) {
+        Integer id = electionIds.get(electionId);
+        BloomFilter old = filters.get(electionId);
+        if (id == null || old == null) {
+            return;
+        }
+        int word = id >>> 6;
+        long mask = 1L << id;
+        BloomFilter filter = new BloomFilter(old.getExpected(), falsePositiveRate);
+        for (Map.Entry<Hash256, long[]> e : voted.entrySet()) {
+            long[] bits = e.getValue();
+            if (word < bits.length && (bits[word] & mask) != 0) {
+                filter.add(e.getKey());
+            }
+        }
+        filters.put(electionId, filter);
+    }
+
+    /**
+     * Verifica se um votante já votou numa eleição
+     *
+     * @param publicKey Chave pública do votante
+     * @param electionId ID da eleição
+     * @return true se já tiver votado
+     */
+    public boolean hasVoted(Key publicKey, String electionId) {
+        return hasVoted(fingerprint(publicKey), electionId);
+    }
+
+    /**
+     * Verifica se um votante já votou numa eleição
+     *
+     * @param fingerprint Impressão digital da chave pública do votante
+     * @param electionId ID da eleição
+     * @return true se já tiver votado
+     */
+    public boolean hasVoted(Hash256 fingerprint, String electionId) {
+        Integer id = electionIds.get(electionId);
+        if (id == null) {
+            return false;
+        }
+        BloomFilter filter = filters.get(electionId);
+        if (filter != null && !filter.mightContain(fingerprint)) {
+            filtered.increment();
+            return false;
+        }
+        probed.increment();
+        long[] bits = voted.get(fingerprint);
+        int word = id >>> 6;
+        return bits != null && word < bits.length && (bits[word] & (1L << id)) != 0;
+    }
+
+    /**
+     * Escreve o registo (snapshot do estado)
+     * Formato: eleições n | (nome, id) ; filtros n | (nome, filtro) ;
+     * votantes n | (impressão digital (32) | palavras (1) | bitmap)
+     * Só deve ser chamado pelo escritor da Blockchain
+     *
+     * @param out Destino
+     * @throws IOException Se a escrita falhar
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(electionIds.size());
+        for (Map.Entry<String, Integer> e : electionIds.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue());
+        }
+        out.writeInt(filters.size());
+        for (Map.Entry<String, BloomFilter> e : filters.entrySet()) {
+            out.writeUTF(e.getKey());
+            e.getValue().writeTo(out);
+        }
+        out.writeInt(voted.size());
+        byte[] bytes = new byte[Hash256.SIZE];
+        for (Map.Entry<Hash256, long[]> e : voted.entrySet()) {
+            e.getKey().writeTo(bytes, 0);
+            out.write(bytes);
+            long[] bits = e.getValue();
+            out.writeByte(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    /**
+     * Carrega num registo vazio o conteúdo escrito por writeTo
+     *
+     * @param in Origem
+     * @throws IOException Se a leitura falhar ou os dados forem inválidos
+     */
+    void readFrom(DataInput in) throws IOException {
+        int elections = in.readInt();
+        for (int i = 0; i < elections; i++) {
+            String electionId = in.readUTF();
+            int id = in.readInt();
+            electionIds.put(electionId, id);
+            nextElectionId.accumulateAndGet(id + 1, Math::max);
+        }
+        int filterCount = in.readInt();
+        for (int i = 0; i < filterCount; i++) {
+            String electionId = in.readUTF();
+            filters.put(electionId, BloomFilter.readFrom(in));
+        }
+        int voters = in.readInt();
+        byte[] bytes = new byte[Hash256.SIZE];
+        for (int i = 0; i < voters; i++) {
+            in.readFully(bytes);
+            long[] bits = new long[in.readUnsignedByte()];
+            for (int w = 0; w < bits.length; w++) {
+                bits[w] = in.readLong();
+            }
+            voted.put(Hash256.of(bytes), bits);
+        }
+    }
+
+    /**
+     * Obtém o número de votantes registados
+     *
+     * @return Votantes que votaram em pelo menos uma eleição
+     */
+    public int size() {
+        return voted.size();
+    }
+
+    /**
+     * Obtém o número de consultas respondidas só pelo filtro
+     *
+     * @return Consultas que não foram ao registo
+     */
+    public long getFilteredCount() {
+        return filtered.sum();
+    }
+
+    /**
+     * Obtém o número de consultas que foram ao registo
+     *
+     * @return Consultas em que o filtro respondeu "talvez"
+     */
+    public long getProbedCount() {
+        return probed.sum();
+    }
+}
@@ -15,10 +15,12 @@
 //////////////////////////////////////////////////////////////////////////////
 package utils;
 
-import java.security.MessageDigest;
+import blockchained.NonceSearch;
+import blockchained.ProofOfWork;
+import blockchained.Nonce;
 import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created on 27/11/2024, 14:14:13
@@ -30,74 +32,82 @@ public class Miner {
     public static void main(String[] args) {
         String msg = "Transaction 7";
         Miner miner = new Miner();
-        int n = miner.mine(msg, 4);
+        long n = miner.mine(msg, 20);
         System.out.println("Message = " + msg);
-        System.out.println("Hash = " + getHash(msg + n));
+        System.out.println("Hash = " + getHash(msg, n));
 
     }
 
-    public int mine(String msg, int dificulty) {
+    /**
+     * mine msg with the shared proof of work rule (blockchained.ProofOfWork)
+     *
+     * @param msg message to mine
+     * @param dificulty number of leading zero bits
+     * @return nonce found (extra nonce 0), -1 on error
+     */
+    public long mine(String msg, int dificulty) {
         try {
             //shared objects
-            AtomicInteger nonce = new AtomicInteger(0); //nonce of message
-            AtomicInteger ticket = new AtomicInteger(0); // tickets to numbers
+            AtomicLong nonce = new AtomicLong(-1); //nonce of message
+            AtomicBoolean found = new AtomicBoolean(); //stop flag
             MinerThr thr[] = new MinerThr[Runtime.getRuntime().availableProcessors()];
             for (int i = 0; i < thr.length; i++) {
-                thr[i] = new MinerThr(nonce, ticket, dificulty, msg);
+                //static stride: thread i tests blocks i, i+N, i+2N ...
+                thr[i] = new MinerThr(nonce, found, i, thr.length,
+                        ProofOfWork.getDefault().newSearch(msg, dificulty));
                 thr[i].start();
             }
-            thr[0].join();
+            for (MinerThr t : thr) {
+                t.join();
+            }
             return nonce.get();
-        } catch (InterruptedException ex) {
-            return 0;
+        } catch (InterruptedException | NoSuchAlgorithmException ex) {
+            return -1;
         }
 
     }
 
     private static class MinerThr extends Thread {
 
-        AtomicInteger trueNonce; //nounce found
-        AtomicInteger numberTicket; // number to test
-        int dificulty; // number of zeros
-        String message; // message to mine
+        static final int CHECK_INTERVAL = 1024; // numbers tested between checks of the shared flag
+        AtomicLong trueNonce; //nounce found
+        AtomicBoolean found; //nonce found by some thread
+        long first; // first block to test
+        int stride; // distance between blocks (number of threads)
+        NonceSearch search; // search engine of this thread
 
-        public MinerThr(AtomicInteger nonce, AtomicInteger ticket, int dificulty, String msg) {
+        public MinerThr(AtomicLong nonce, AtomicBoolean found, long first, int stride, NonceSearch search) {
             this.trueNonce = nonce;
-            this.numberTicket = ticket;
-            this.dificulty = dificulty;
-            this.message = msg;
+            this.found = found;
+            this.first = first;
+            this.stride = stride;
+            this.search = search;
         }
 
         @Override
         public void run() {
-            //zeros to find in hash
-            String zeros = String.format("%0" + dificulty + "d", 0);
-            //nounce not found
-            while (trueNonce.get() == 0) {
-                //get a number to test
-                int n = numberTicket.getAndIncrement();
-                //calculate hash with nonce
-                String hash = getHash(message + n);
-                //starts with zeros
-                if (hash.startsWith(zeros)) {
+            //blocks of CHECK_INTERVAL numbers (shared flag is read once per block)
+            for (long b = first; !found.get(); b += stride) {
+                long n = search.search(b * CHECK_INTERVAL, (b + 1) * CHECK_INTERVAL);
+                if (n >= 0) {
                     System.out.println(Thread.currentThread().getName() + " found nonce " + n);
-                    System.out.println(message + " " + hash);
+                    System.out.println(ProofOfWork.toHex(search.getLastHash()));
                     //update true nonce
-                    trueNonce.set(n);
+                    if (found.compareAndSet(false, true)) {
+                        trueNonce.set(n);
+                    }
+                    return;
                 }
             }
         }
 
     }
 
-    public static String getHash(String msg) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA3-256");
-            md.update(msg.getBytes());
-            return Base64.getEncoder().encodeToString(md.digest());
-        } catch (NoSuchAlgorithmException ex) {
-            return "ERROR";
-        }
+    /**
+     * proof of work hash of msg with a nonce (hexadecimal)
+     */
+    public static String getHash(String msg, long nonce) {
+        return ProofOfWork.toHex(ProofOfWork.getDefault().hash(msg, new Nonce(0, nonce)));
     }
 
 }
@@ -0,0 +1,78 @@
+package RemoteNodes;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import blockchained.Nonce;
+import blockchained.ProofOfWork;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.RMI;
+
+/**
+ * Benchmark da mineração distribuída coordenada
+ *
+ * Arranca N nós RMI em loopback na mesma JVM (portas 10100 + i) e mede o
+ * tempo médio para minerar com o MiningCoordinator sobre um só nó e sobre
+ * todos. Corre com mvn test -Pbenchmarks (-Dbench.nodes=3 -Dbench.bits=20
+ * -Dbench.rounds=5)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class MiningCoordinatorBenchmark {
+
+    @Test
+    void coordinatedMiningOverLoopbackPeers(@TempDir Path dir) throws Exception {
+        int nodes = Integer.getInteger("bench.nodes", 3);
+        int bits = Integer.getInteger("bench.bits", 20);
+        int rounds = Integer.getInteger("bench.rounds", 5);
+        List<RemoteVotingObject> objects = new ArrayList<>();
+        List<RemoteVotingI> peers = new ArrayList<>();
+        try {
+            for (int i = 0; i < nodes; i++) {
+                int port = 10_100 + i;
+                // Cada nó guarda a sua blockchain numa diretoria própria
+                System.setProperty("store.dir", dir.resolve("node" + i).toString());
+                RemoteVotingObject node = new RemoteVotingObject(port, null);
+                objects.add(node);
+                String address = RMI.getRemoteName("127.0.0.1", port, RemoteVotingObject.REMOTE_OBJECT_NAME);
+                RMI.startRemoteObject(node, address);
+                peers.add((RemoteVotingI) RMI.getRemote(address));
+            }
+            System.clearProperty("store.dir");
+
+            double single = mine(List.of(peers.get(0)), bits, rounds, "single");
+            double all = mine(peers, bits, rounds, "all");
+            System.out.printf("1 nó   : %,10.1f ms/bloco%n", single);
+            System.out.printf("%d nós  : %,10.1f ms/bloco (speedup %.2fx)%n", nodes, all, single / all);
+            for (RemoteVotingI peer : peers) {
+                System.out.println(peer.getMiningStats());
+            }
+        } finally {
+            System.clearProperty("store.dir");
+            for (RemoteVotingObject node : objects) {
+                node.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Minera rounds mensagens sobre os peers dados (um coordenador por
+     * mensagem, como em mineCoordinated)
+     *
+     * @return Tempo médio por mensagem em ms
+     */
+    private static double mine(List<RemoteVotingI> peers, int bits, int rounds, String label) throws Exception {
+        long begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            String msg = "Transaction " + label + " " + i;
+            long nonce = new MiningCoordinator(peers).mine(msg, bits);
+            assertTrue(ProofOfWork.getDefault().verify(msg, new Nonce(0, nonce), bits), "nonce " + nonce + " inválido");
+        }
+        return (System.nanoTime() - begin) / 1E6 / rounds;
+    }
+}
@@ -0,0 +1,65 @@
+package RemoteNodes;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import blockchained.Nonce;
+import blockchained.NonceSearch;
+import blockchained.ProofOfWork;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes do MiningCoordinator com peers simulados (sem RMI)
+ *
+ * @author Acer
+ */
+public class MiningCoordinatorTest {
+
+    private static final int BITS = 12;
+
+    /**
+     * Cria um peer que responde a mineRange com o resultado de miner
+     */
+    private static RemoteVotingI peer(RangeMiner miner) {
+        return (RemoteVotingI) Proxy.newProxyInstance(RemoteVotingI.class.getClassLoader(),
+                new Class<?>[]{RemoteVotingI.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "mineRange" -> miner.mine((String) args[0], (Integer) args[1], (Long) args[2], (Long) args[3]);
+                    case "getHashRate" -> 1_000_000.0;
+                    case "cancelRange" -> null;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "peer";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private interface RangeMiner {
+        long mine(String message, int bits, long start, long end) throws Exception;
+    }
+
+    private static long honest(String message, int bits, long start, long end) throws Exception {
+        NonceSearch search = ProofOfWork.getDefault().newSearch(message, bits);
+        search.setExtraNonce(0);
+        return search.search(start, end);
+    }
+
+    @Test
+    void rejectsAWrongNonceAndUsesTheHonestPeer() throws Exception {
+        // O peer mentiroso responde logo com um nonce que não cumpre a dificuldade
+        RemoteVotingI liar = peer((message, bits, start, end) -> {
+            long nonce = start;
+            while (ProofOfWork.getDefault().verify(message, new Nonce(0, nonce), bits)) {
+                nonce++;
+            }
+            return nonce;
+        });
+        RemoteVotingI slowHonest = peer((message, bits, start, end) -> {
+            Thread.sleep(50);
+            return honest(message, bits, start, end);
+        });
+        String message = "coordinated";
+        long nonce = new MiningCoordinator(List.of(liar, slowHonest), 100, 50, 1 << 12).mine(message, BITS);
+        assertTrue(ProofOfWork.getDefault().verify(message, new Nonce(0, nonce), BITS), "nonce " + nonce);
+    }
+}
@@ -0,0 +1,77 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Benchmark do índice hash -> altura numa cadeia sintética até 1M blocos
+ *
+ * Para cada tamanho mede a procura de blocos aleatórios por hash, a
+ * extração do fim da cadeia (getBlocksFrom) e o ponto de bifurcação a
+ * partir de um localizador de um nó que divergiu nos últimos blocos; os
+ * tempos não devem crescer com a cadeia. Corre com mvn test -Pbenchmarks
+ * (-Dbench.sizes=1000,10000,100000,1000000 -Dbench.lookups=100000)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class BlockIndexBenchmark {
+
+    private static final int SEGMENT = 10;
+    private static final int DIVERGED = 5; // Blocos do outro nó que esta cadeia não tem
+
+    @Test
+    void lookupsDoNotDependOnChainLength() throws Exception {
+        int lookups = Integer.getInteger("bench.lookups", 100_000);
+        Random random = new Random(42);
+        // Intervalo alvo 0: a dificuldade fica no mínimo e a cadeia constrói-se depressa
+        Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+        for (String s : System.getProperty("bench.sizes", "1000,10000,100000,1000000").split(",")) {
+            int size = Integer.parseInt(s.trim());
+            long begin = System.nanoTime();
+            Votes.grow(bc, size);
+            long build = System.nanoTime() - begin;
+            ChainView chain = bc.snapshot();
+
+            // Procura por hash de blocos aleatórios (e de um hash desconhecido)
+            Hash256[] probes = new Hash256[lookups];
+            int[] expected = new int[lookups];
+            for (int i = 0; i < lookups; i++) {
+                expected[i] = random.nextInt(size);
+                probes[i] = chain.get(expected[i]).getCurrentHash();
+            }
+            begin = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                assertEquals(expected[i], bc.getHeightOf(probes[i]), "altura errada");
+            }
+            long lookup = System.nanoTime() - begin;
+            assertFalse(bc.contains(Hash256.sha256(new byte[0])), "hash desconhecido encontrado no índice");
+
+            // Extração do fim da cadeia a partir de um hash
+            begin = System.nanoTime();
+            List<Block> range = bc.getBlocksFrom(chain.get(size - SEGMENT - 1).getCurrentHash());
+            long extract = System.nanoTime() - begin;
+            assertEquals(SEGMENT, range.size());
+            assertEquals(size - SEGMENT, range.get(0).getBlockID());
+
+            // Localizador de um nó cujos últimos blocos esta cadeia não conhece
+            Hash256[] locator = bc.getBlockLocator();
+            for (int i = 0; i < DIVERGED; i++) {
+                locator[i] = Hash256.sha256(new byte[]{(byte) i, 1});
+            }
+            begin = System.nanoTime();
+            Hash256 fork = bc.findForkPoint(locator);
+            long forkPoint = System.nanoTime() - begin;
+            assertEquals(size - 1 - DIVERGED, bc.getHeightOf(fork));
+
+            System.out.printf("%,9d blocos (%,6d ms a construir): getHeightOf %6.1f ns/procura  getBlocksFrom %8.3f ms"
+                    + "  findForkPoint %8.3f ms (%d hashes)%n",
+                    size, build / 1_000_000, (double) lookup / lookups, extract / 1E6, forkPoint / 1E6, locator.length);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import utils.SecurityUtils;
+import utils.Session;
+
+/**
+ * Teste de carga: votos por segundo com um bloco por voto (como vote()
+ * fazia) e com o produtor de blocos
+ *
+ * As transações são criadas antes (a prova de trabalho da transação é do
+ * votante) e a dificuldade dos blocos é fixa. Corre com
+ * mvn test -Pbenchmarks (-Dbench.votes=200 -Dbench.bits=18)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class BlockProducerBenchmark {
+
+    @Test
+    void votesPerSecondWithAndWithoutBatching() throws Exception {
+        int votes = Integer.getInteger("bench.votes", 200);
+        int bits = Integer.getInteger("bench.bits", 18);
+        KeyPair keys = SecurityUtils.generateRSAKeyPair(1024);
+        Session.set(new Session.Keys("load", keys.getPublic(), keys.getPrivate(), null));
+
+        PrintStream out = System.out;
+        try {
+            for (boolean batched : new boolean[]{false, true}) {
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                Blockchain bc = new Blockchain(bits, Blockchain.DEFAULT_TARGET_BLOCK_TIME, Integer.MAX_VALUE);
+                // Uma eleição por voto: o mesmo eleitor pode votar em todas
+                List<Transaction> txs = new ArrayList<>();
+                for (int i = 0; i < votes; i++) {
+                    bc.createElection("e" + i, "load " + i);
+                    txs.add(new Transaction(keys.getPublic(), "c" + (i % 3), "e" + i, keys.getPrivate()));
+                }
+                BlockProducer producer = new BlockProducer(bc, 200, 100);
+                producer.start();
+
+                long begin = System.nanoTime();
+                for (Transaction tx : txs) {
+                    bc.addTransaction(tx);
+                    if (batched) {
+                        producer.onTransaction();
+                    } else {
+                        bc.minePendingTransactions();
+                    }
+                }
+                long admitted = System.nanoTime() - begin;
+                assertTrue(producer.awaitEmpty(600_000), "o produtor não esvaziou o mempool");
+                long committed = System.nanoTime() - begin;
+                producer.shutdown();
+                System.setOut(out);
+
+                System.out.printf("%-16s %d votos, %d blocos: vote() %,8.1f votos/s (%.2f ms/voto), confirmados %,8.1f votos/s%n",
+                        batched ? "produtor" : "bloco por voto", votes, bc.getHeight() - 1,
+                        votes * 1E9 / admitted, admitted / 1E6 / votes, votes * 1E9 / committed);
+                assertEquals(0, bc.getPendingTransactionCount());
+                for (int i = 0; i < votes; i++) {
+                    assertTrue(bc.hasVoted(keys.getPublic(), "e" + i), "voto " + i + " não confirmado");
+                }
+            }
+        } finally {
+            System.setOut(out);
+            Session.logout();
+        }
+    }
+}
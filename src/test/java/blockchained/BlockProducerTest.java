@@ -0,0 +1,56 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes do produtor de blocos
+ *
+ * @author Acer
+ */
+public class BlockProducerTest {
+
+    @Test
+    void producesOneBlockWhenTheThresholdIsReached() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        // Intervalo longo: só o limiar dispara a produção
+        BlockProducer producer = new BlockProducer(bc, 60_000, 4);
+        producer.start();
+        try {
+            for (Transaction tx : Votes.distinct(4, 2, "e")) {
+                bc.getMempool().add(tx);
+                producer.onTransaction();
+            }
+            assertTrue(producer.awaitEmpty(30_000));
+        } finally {
+            producer.shutdown();
+        }
+        assertEquals(2, bc.getHeight());
+        assertEquals(4, bc.getTransactionsAt(1).size());
+        assertTrue(bc.verifyTally("e"));
+    }
+
+    @Test
+    void producesPendingTransactionsAfterTheInterval() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        BlockProducer producer = new BlockProducer(bc, 50, 1000);
+        producer.start();
+        try {
+            List<Transaction> votes = Votes.distinct(2, 2, "e");
+            for (Transaction tx : votes) {
+                bc.getMempool().add(tx);
+                producer.onTransaction();
+            }
+            assertTrue(producer.awaitEmpty(30_000));
+        } finally {
+            producer.shutdown();
+            assertTrue(producer.awaitTermination(30_000));
+        }
+        assertTrue(bc.getHeight() >= 2);
+        assertEquals(0, bc.getPendingTransactionCount());
+        assertEquals(2L, bc.tallyVotes("e").values().stream().mapToLong(Long::longValue).sum());
+    }
+}
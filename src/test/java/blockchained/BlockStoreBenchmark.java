@@ -0,0 +1,108 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.SecurityUtils;
+
+/**
+ * Benchmark do armazenamento em disco
+ *
+ * Escreve uma cadeia de N blocos (com transações) com commit em grupo e com
+ * fsync por bloco, fecha, e mede o tempo de reabrir o armazenamento e de
+ * reconstruir a Blockchain a partir dele. Corre com mvn test -Pbenchmarks
+ * (-Dbench.blocks=10000 -Dbench.perBlock=10)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class BlockStoreBenchmark {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void groupCommitAndReopen() throws Exception {
+        int blocks = Integer.getInteger("bench.blocks", 10_000);
+        int perBlock = Integer.getInteger("bench.perBlock", 10);
+
+        PrintStream out = System.out;
+        List<Block> chain = new ArrayList<>();
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            KeyPair voter = SecurityUtils.generateRSAKeyPair(1024);
+            List<Transaction> txs = new ArrayList<>();
+            for (int i = 0; i < perBlock; i++) {
+                txs.add(new Transaction(voter.getPublic(), "c" + i, "e", voter.getPrivate()));
+            }
+            Hash256 previous = Hash256.ZERO;
+            for (int h = 0; h < blocks; h++) {
+                Block block = new Block(h, previous, h == 0 ? List.of() : txs, Blockchain.MIN_DIFFICULTY);
+                chain.add(block);
+                previous = block.getCurrentHash();
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        for (boolean grouped : new boolean[]{true, false}) {
+            Path dir = root.resolve(grouped ? "group" : "single");
+            int n = grouped ? blocks : Math.min(blocks, 2000);
+            long begin = System.nanoTime();
+            try (BlockStore store = new BlockStore(dir, 64L << 20, 10)) {
+                for (int h = 0; h < n; h++) {
+                    store.append(chain.get(h));
+                    if (!grouped) {
+                        store.commit();
+                    }
+                }
+                store.commit();
+            }
+            long nanos = System.nanoTime() - begin;
+            System.out.printf("%-20s %,7d blocos: %8.1f ms (%,9.0f blocos/s)%n",
+                    grouped ? "commit em grupo" : "fsync por bloco", n, nanos / 1E6, n * 1E9 / nanos);
+        }
+
+        Path dir = root.resolve("group");
+        long begin = System.nanoTime();
+        try (BlockStore store = new BlockStore(dir)) {
+            long opened = System.nanoTime() - begin;
+            List<Block> loaded = store.getBlocks();
+            long headers = System.nanoTime() - begin;
+            Block last = loaded.get(loaded.size() - 1);
+            System.out.printf("reabrir: índices %.1f ms, %,d cabeçalhos %.1f ms%n",
+                    opened / 1E6, loaded.size(), headers / 1E6);
+            assertEquals(chain.get(blocks - 1).getCurrentHash(), last.getCurrentHash());
+            assertTrue(last.isValid(), "Merkle root inválida no topo reaberto");
+            assertEquals(blocks - 1, store.find(last.getCurrentHash()));
+        }
+
+        Blockchain bc;
+        long restart;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            begin = System.nanoTime();
+            bc = new Blockchain(Blockchain.MIN_DIFFICULTY, Blockchain.DEFAULT_TARGET_BLOCK_TIME,
+                    Blockchain.DEFAULT_RETARGET_INTERVAL, new BlockStore(dir));
+            restart = System.nanoTime() - begin;
+        } finally {
+            System.setOut(out);
+        }
+        try {
+            System.out.printf("Blockchain a partir do disco: %,d blocos em %.1f ms (votos %d candidatos)%n",
+                    bc.getHeight(), restart / 1E6, bc.tallyVotes("e").size());
+            assertEquals(blocks, bc.getHeight());
+        } finally {
+            bc.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Testes do armazenamento de blocos
+ *
+ * @author Acer
+ */
+public class BlockStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopensTheStoredBlocks() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        List<Transaction> votes = Votes.distinct(3, 2, "e");
+        bc.addBlock(Votes.next(bc, votes));
+        bc.addBlock(Votes.next(bc, List.of()));
+
+        // Segmentos pequenos: os blocos ficam repartidos por vários ficheiros
+        try (BlockStore store = new BlockStore(dir, 1024, 10)) {
+            for (Block block : bc.snapshot().getBlocks()) {
+                store.append(block);
+            }
+            store.setValidatedHeight(2);
+            store.commit();
+        }
+        try (BlockStore store = new BlockStore(dir)) {
+            assertEquals(3, store.size());
+            assertEquals(2, store.getValidatedHeight());
+            Block stored = store.get(1);
+            assertEquals(bc.snapshot().get(1).getCurrentHash(), stored.getCurrentHash());
+            assertTrue(stored.isValid());
+            assertEquals(votes.get(2).getTransactionId(), stored.getTransactions().get(2).getTransactionId());
+            assertEquals(2, store.find(bc.getLatestBlock().getCurrentHash()));
+            assertEquals(-1, store.find(Hash256.sha256(new byte[0])));
+        }
+    }
+
+    @Test
+    void blockchainContinuesFromTheStore() throws Exception {
+        List<Transaction> votes = Votes.distinct(2, 2, "e");
+        Blockchain bc = Blockchain.open(dir, Blockchain.MIN_DIFFICULTY);
+        bc.createElection("e", "Eleição");
+        bc.addBlock(Votes.next(bc, votes));
+        Hash256 top = bc.getLatestBlock().getCurrentHash();
+        bc.close();
+
+        Blockchain reopened = Blockchain.open(dir, Blockchain.MIN_DIFFICULTY);
+        try {
+            assertEquals(2, reopened.getHeight());
+            assertEquals(top, reopened.getLatestBlock().getCurrentHash());
+            assertEquals(bc.tallyVotes("e"), reopened.tallyVotes("e"));
+            assertTrue(reopened.hasVoted(votes.get(0).getPublicVoterKey(), "e"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void failedWriteLeavesTheChainUnchanged() throws Exception {
+        BlockStore store = new BlockStore(dir, 1024, 10);
+        Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL, store);
+        Block genesis = bc.getLatestBlock();
+        Block next = Votes.next(bc, List.of());
+        // Com os ficheiros fechados a escrita falha
+        store.close();
+        assertThrows(UncheckedIOException.class, () -> bc.addBlock(next));
+        assertEquals(1, bc.getHeight());
+        assertEquals(genesis, bc.getLatestBlock());
+        assertEquals(0, bc.getValidatedHeight());
+    }
+
+    @Test
+    void oversizedTransactionIsRejectedAndTheStoreStaysUsable() throws Exception {
+        // O identificador da eleição não cabe no prefixo de 2 bytes
+        String electionId = "e".repeat(70_000);
+        Blockchain bc = Votes.chain(electionId);
+        Block oversized = Votes.next(bc, Votes.distinct(1, 1, electionId));
+        Block empty = Votes.next(bc, List.of());
+        try (BlockStore store = new BlockStore(dir, 1024, 10)) {
+            store.append(bc.getLatestBlock());
+            assertThrows(IllegalArgumentException.class, () -> store.append(oversized));
+            assertEquals(1, store.size());
+
+            // O armazenamento continua a aceitar blocos
+            store.append(empty);
+            store.commit();
+        }
+        try (BlockStore store = new BlockStore(dir)) {
+            assertEquals(2, store.size());
+            assertEquals(empty.getCurrentHash(), store.get(1).getCurrentHash());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import utils.SecurityUtils;
+
+/**
+ * Benchmark da validação incremental no sync
+ *
+ * Sincroniza segmentos de 10 blocos recebidos (serializados como se
+ * viessem de outro nó) em cadeias de 1k, 10k e 100k blocos, e compara com
+ * a validação completa que o sync fazia antes (isChainValid desde o
+ * génesis). Corre com mvn test -Pbenchmarks
+ * (-Dbench.sizes=1000,10000,100000 -Dbench.rounds=20)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class BlockchainSyncBenchmark {
+
+    private static final int SEGMENT = 10;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void syncTenBlocksOntoLongChains() throws Exception {
+        int rounds = Integer.getInteger("bench.rounds", 20);
+        // Intervalo alvo 0: a dificuldade fica no mínimo e a cadeia constrói-se depressa
+        Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+        for (String s : System.getProperty("bench.sizes", "1000,10000,100000").split(",")) {
+            int size = Integer.parseInt(s.trim());
+            Votes.grow(bc, size);
+
+            long incremental = 0;
+            long full = 0;
+            for (int r = 0; r < rounds; r++) {
+                // Segmento minerado sobre o topo por outro nó
+                List<Block> segment = new ArrayList<>();
+                Hash256 previous = bc.getLatestBlock().getCurrentHash();
+                for (int i = 0; i < SEGMENT; i++) {
+                    Block block = new Block(bc.getHeight() + i, previous, new ArrayList<>(), bc.getNextDifficulty());
+                    segment.add(block);
+                    previous = block.getCurrentHash();
+                }
+                byte[] received = SecurityUtils.serialize(new ArrayList<>(segment));
+                int before = bc.getHeight();
+
+                List<Block> blocks = (List<Block>) SecurityUtils.deserialize(received);
+                long begin = System.nanoTime();
+                bc.sync(blocks);
+                incremental += System.nanoTime() - begin;
+                assertEquals(before + SEGMENT, bc.getHeight(), "o segmento não foi aceite");
+
+                begin = System.nanoTime();
+                assertTrue(bc.isChainValid());
+                full += System.nanoTime() - begin;
+            }
+            System.out.printf("%,9d blocos: sync incremental %8.3f ms  validação completa %8.3f ms%n",
+                    size, incremental / 1E6 / rounds, (incremental + full) / 1E6 / rounds);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes da Blockchain
+ *
+ * @author Acer
+ */
+public class BlockchainTest {
+
+    @Test
+    void genesisIsTheSameOnEveryNode() throws Exception {
+        Blockchain a = new Blockchain(8, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+        Blockchain b = new Blockchain(8, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+        Block genesis = a.getLatestBlock();
+        assertEquals(genesis.getCurrentHash(), b.getLatestBlock().getCurrentHash());
+        assertEquals(Blockchain.GENESIS_TIMESTAMP, genesis.getTimestamp());
+        assertTrue(genesis.hasValidProofOfWork());
+        // O localizador de um nó encontra o génesis do outro
+        assertEquals(genesis.getCurrentHash(), b.findForkPoint(a.getBlockLocator()));
+    }
+
+    @Test
+    void addBlockRejectsInvalidBlocksWithoutChangingState() throws Exception {
+        Blockchain bc = new Blockchain(8, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+        Block genesis = bc.getLatestBlock();
+        // Não liga à cadeia
+        Block orphan = new Block(1, Hash256.sha256(new byte[0]), new ArrayList<>(), bc.getNextDifficulty());
+        assertThrows(IllegalStateException.class, () -> bc.addBlock(orphan));
+        // Dificuldade abaixo da esperada
+        Block easy = new Block(1, genesis.getCurrentHash(), new ArrayList<>(), 1);
+        assertThrows(IllegalStateException.class, () -> bc.addBlock(easy));
+        assertEquals(1, bc.getHeight());
+        assertEquals(genesis, bc.getLatestBlock());
+
+        Block valid = new Block(1, genesis.getCurrentHash(), new ArrayList<>(), bc.getNextDifficulty());
+        bc.addBlock(valid);
+        assertEquals(valid.getCurrentHash(), bc.getLatestBlock().getCurrentHash());
+        assertEquals(1, bc.getValidatedHeight());
+    }
+
+    @Test
+    void indexFindsBlocksByHashAndExtractsTheTail() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        while (bc.getHeight() < 40) {
+            bc.addBlock(Votes.next(bc, List.of()));
+        }
+        ChainView chain = bc.snapshot();
+        for (int h = 0; h < chain.size(); h++) {
+            assertEquals(h, bc.getHeightOf(chain.get(h).getCurrentHash()));
+        }
+        assertEquals(-1, bc.getHeightOf(Hash256.sha256(new byte[0])));
+
+        List<Block> tail = bc.getBlocksFrom(chain.get(29).getCurrentHash());
+        assertEquals(10, tail.size());
+        assertEquals(30, tail.get(0).getBlockID());
+        assertTrue(bc.getBlocksFrom(Hash256.sha256(new byte[0])).isEmpty());
+    }
+
+    @Test
+    void locatorFindsTheForkPointOfDivergentChains() throws Exception {
+        Blockchain a = Votes.chain("e");
+        Blockchain b = Votes.chain("e");
+        while (a.getHeight() < 30) {
+            Block block = Votes.next(a, List.of());
+            a.addBlock(block);
+            b.addBlock(block);
+        }
+        // Os dois nós divergem a partir da altura 30
+        for (int i = 0; i < 15; i++) {
+            a.addBlock(Votes.next(a, List.of()));
+        }
+        Thread.sleep(2); // Outro timestamp: o bloco de b difere do de a
+        b.addBlock(Votes.next(b, List.of()));
+        Hash256[] locator = b.getBlockLocator();
+        assertTrue(locator.length < b.getHeight());
+        assertEquals(b.getLatestBlock().getCurrentHash(), locator[0]);
+        assertEquals(b.snapshot().get(29).getCurrentHash(), a.findForkPoint(locator));
+
+        // b recebe o ramo de a a partir do ponto de bifurcação
+        b.sync(a.getBlocksFrom(a.findForkPoint(locator)));
+        assertEquals(a.getLatestBlock().getCurrentHash(), b.getLatestBlock().getCurrentHash());
+        assertTrue(b.isChainValid());
+    }
+
+    @Test
+    void syncRejectsAnInvalidSegmentAndKeepsTheChain() throws Exception {
+        Blockchain a = Votes.chain("e");
+        Blockchain b = Votes.chain("e");
+        a.addBlock(Votes.next(a, List.of()));
+        Block unlinked = new Block(2, Hash256.sha256(new byte[0]), new ArrayList<>(), a.getNextDifficulty());
+        Block before = b.getLatestBlock();
+        assertThrows(IllegalStateException.class,
+                () -> b.sync(List.of(a.getLatestBlock(), unlinked)));
+        assertEquals(before, b.getLatestBlock());
+        assertEquals(0, b.getValidatedHeight());
+    }
+
+    @Test
+    void addBlockOnlyExtendsTheTip() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        while (bc.getHeight() < 6) {
+            bc.addBlock(Votes.next(bc, List.of()));
+        }
+        ChainView chain = bc.snapshot();
+        // Bloco válido ligado a um bloco antigo: faria a cadeia recuar
+        Block early = new Block(2, chain.get(1).getCurrentHash(), new ArrayList<>(), bc.getDifficultyAt(2));
+        assertThrows(IllegalStateException.class, () -> bc.addBlock(early));
+        assertEquals(chain.getLatest(), bc.getLatestBlock());
+        assertEquals(6, bc.getHeight());
+    }
+
+    @Test
+    void syncKeepsTheChainWithMoreWork() throws Exception {
+        Blockchain a = Votes.chain("e");
+        Blockchain b = Votes.chain("e");
+        while (a.getHeight() < 3) {
+            Block block = Votes.next(a, List.of());
+            a.addBlock(block);
+            b.addBlock(block);
+        }
+        a.addBlock(Votes.next(a, List.of()));
+        a.addBlock(Votes.next(a, List.of()));
+        Thread.sleep(2); // Outro timestamp: o bloco de b difere do de a
+        b.addBlock(Votes.next(b, List.of()));
+        Hash256 fork = b.snapshot().get(2).getCurrentHash();
+
+        // O ramo de b tem menos trabalho: a mantém a sua cadeia
+        Block top = a.getLatestBlock();
+        assertThrows(IllegalStateException.class, () -> a.sync(b.getBlocksFrom(fork)));
+        assertEquals(top, a.getLatestBlock());
+
+        // O de a tem mais: b reorganiza-se; os blocos já conhecidos são ignorados
+        b.sync(a.snapshot().getBlocks().subList(1, a.snapshot().size()));
+        assertEquals(top.getCurrentHash(), b.getLatestBlock().getCurrentHash());
+        b.sync(a.getBlocksFrom(fork));
+        assertEquals(5, b.getHeight());
+    }
+
+    @Test
+    void syncRejectsForgedAndRepeatedVotes() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        List<Transaction> votes = Votes.distinct(3, 2, "e");
+        bc.addBlock(Votes.next(bc, votes.subList(0, 1)));
+        Block top = bc.getLatestBlock();
+        Transaction vote = votes.get(1);
+
+        // Voto alterado depois de assinado (o ID e a assinatura deixam de corresponder)
+        Transaction forged = new Transaction(vote.getTransactionId(), vote.getPublicVoterKey(),
+                vote.encryptVote("c0-forjado"), "e", vote.getSignature(), vote.getExtraNonce(), vote.getNonce());
+        // ID que não corresponde aos dados
+        Transaction wrongId = new Transaction(Hash256.sha256(new byte[0]), vote.getPublicVoterKey(),
+                vote.getEncryptedVote(), "e", vote.getSignature(), vote.getExtraNonce(), vote.getNonce());
+        List<List<Transaction>> rejected = List.of(
+                List.of(forged),
+                List.of(wrongId),
+                List.of(votes.get(0)), // Votante já registado na cadeia
+                List.of(vote, vote), // O mesmo votante duas vezes no bloco
+                Votes.distinct(1, 1, "outra")); // Eleição que não existe
+        for (List<Transaction> txs : rejected) {
+            Block block = Votes.next(bc, txs);
+            assertThrows(IllegalStateException.class, () -> bc.addBlock(block));
+            assertEquals(top, bc.getLatestBlock());
+        }
+        assertEquals(1L, bc.tallyVotes("e").values().stream().mapToLong(Long::longValue).sum());
+
+        // O mesmo votante em dois blocos do segmento
+        Block first = Votes.next(bc, List.of(vote));
+        Block second = new Block(first.getBlockID() + 1, first.getCurrentHash(), new ArrayList<>(List.of(vote)),
+                bc.getNextDifficulty());
+        assertThrows(IllegalStateException.class, () -> bc.sync(List.of(first, second)));
+        assertEquals(top, bc.getLatestBlock());
+
+        bc.addBlock(Votes.next(bc, votes.subList(1, 3)));
+        assertEquals(bc.auditTallyVotes("e"), bc.tallyVotes("e"));
+    }
+
+    @Test
+    void genesisDependsOnTheInitialDifficulty() throws Exception {
+        assertNotEquals(Blockchain.createGenesisBlock(4).getCurrentHash(),
+                Blockchain.createGenesisBlock(5).getCurrentHash());
+    }
+}
@@ -0,0 +1,94 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Medição do filtro de Bloom à frente do registo de votantes
+ *
+ * Taxa de falsos positivos (teórica, estimada e medida com impressões
+ * digitais ausentes) e consultas por segundo do filtro contra o
+ * ConcurrentHashMap do registo, para as taxas 1%, 0.1% e 0.01%. Corre com
+ * mvn test -Pbenchmarks (-Dbench.voters=1000000 -Dbench.probes=1000000)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class BloomFilterBenchmark {
+
+    @Test
+    void falsePositiveRateAndThroughput() {
+        int voters = Integer.getInteger("bench.voters", 1_000_000);
+        int probes = Integer.getInteger("bench.probes", 1_000_000);
+        Random random = new Random(42);
+        byte[] bytes = new byte[Hash256.SIZE];
+
+        Hash256[] present = new Hash256[voters];
+        Map<Hash256, long[]> registry = new ConcurrentHashMap<>();
+        for (int i = 0; i < voters; i++) {
+            random.nextBytes(bytes);
+            present[i] = Hash256.of(bytes);
+            registry.put(present[i], new long[1]);
+        }
+        Set<Hash256> known = new HashSet<>(registry.keySet());
+        Hash256[] absent = new Hash256[probes];
+        for (int i = 0; i < probes; i++) {
+            do {
+                random.nextBytes(bytes);
+                absent[i] = Hash256.of(bytes);
+            } while (known.contains(absent[i]));
+        }
+
+        System.out.printf("%,d votantes, %,d consultas de votantes novos%n", voters, probes);
+        for (double p : new double[]{0.01, 0.001, 0.0001}) {
+            BloomFilter filter = new BloomFilter(voters, p);
+            for (Hash256 h : present) {
+                filter.add(h);
+            }
+            for (Hash256 h : present) {
+                assertTrue(filter.mightContain(h), "falso negativo");
+            }
+            // Aquecimento e medição
+            int falsePositives = 0;
+            long begin = 0;
+            for (int round = 0; round < 2; round++) {
+                falsePositives = 0;
+                begin = System.nanoTime();
+                for (Hash256 h : absent) {
+                    if (filter.mightContain(h)) {
+                        falsePositives++;
+                    }
+                }
+            }
+            long bloomNanos = System.nanoTime() - begin;
+            int found = 0;
+            for (int round = 0; round < 2; round++) {
+                found = 0;
+                begin = System.nanoTime();
+                for (Hash256 h : absent) {
+                    if (registry.get(h) != null) {
+                        found++;
+                    }
+                }
+            }
+            long mapNanos = System.nanoTime() - begin;
+            assertEquals(0, found, "votante ausente encontrado no registo");
+            double measured = (double) falsePositives / probes;
+            System.out.printf("p=%-6s m=%,11d bits (%5.2f MB) k=%2d: FP teórico %.4f%%, estimado %.4f%%, medido %.4f%%;"
+                    + " filtro %,6.1f M/s, registo %,6.1f M/s%n",
+                    p, filter.getBitCount(), filter.getBitCount() / 8 / 1E6, filter.getHashes(), p * 100,
+                    filter.estimatedFalsePositiveRate() * 100, measured * 100,
+                    probes * 1E3 / bloomNanos, probes * 1E3 / mapNanos);
+            // Margem para a variação da amostra
+            assertTrue(measured <= 2 * p + 10.0 / probes, "taxa de falsos positivos " + measured + " acima de " + p);
+        }
+    }
+}
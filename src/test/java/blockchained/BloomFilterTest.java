@@ -0,0 +1,43 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes do filtro de Bloom
+ *
+ * @author Acer
+ */
+public class BloomFilterTest {
+
+    @Test
+    void hasNoFalseNegativesAndKeepsTheFalsePositiveRate() {
+        int voters = 20_000;
+        Random random = new Random(42);
+        byte[] bytes = new byte[Hash256.SIZE];
+        BloomFilter filter = new BloomFilter(voters, 0.01);
+        Hash256[] present = new Hash256[voters];
+        for (int i = 0; i < voters; i++) {
+            random.nextBytes(bytes);
+            present[i] = Hash256.of(bytes);
+            filter.add(present[i]);
+        }
+        for (Hash256 h : present) {
+            assertTrue(filter.mightContain(h));
+        }
+
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            random.nextBytes(bytes);
+            if (filter.mightContain(Hash256.of(bytes))) {
+                falsePositives++;
+            }
+        }
+        double measured = (double) falsePositives / probes;
+        assertTrue(measured < 0.02, "taxa de falsos positivos " + measured);
+        assertTrue(filter.estimatedFalsePositiveRate() < 0.02);
+    }
+}
@@ -0,0 +1,93 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import utils.SecurityUtils;
+
+/**
+ * Benchmark da auditoria de uma cadeia com 1M votos (por defeito)
+ *
+ * Audita em sequencial e em paralelo com 1, 2, 4, ... processadores e
+ * confirma que os resultados são iguais ao sequencial e à contagem
+ * esperada. Os votos reutilizam um conjunto de transações (cada uma custa
+ * uma prova de trabalho), mas todas as assinaturas são verificadas. Como o
+ * sync rejeita votos repetidos, a vista é montada diretamente (sem passar
+ * pela Blockchain), com as regras de dificuldade da Blockchain.
+ * Corre com mvn test -Pbenchmarks (-Dbench.votes=1000000 -Dbench.perBlock=1000)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class ChainAuditBenchmark {
+
+    private static final int DISTINCT = 64;
+
+    @Test
+    void sequentialAgainstParallelAudit() throws Exception {
+        int votes = Integer.getInteger("bench.votes", 1_000_000);
+        int perBlock = Integer.getInteger("bench.perBlock", 1000);
+
+        PrintStream out = System.out;
+        List<Transaction> pool = new ArrayList<>();
+        Map<String, Long> expected = new HashMap<>();
+        Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+        ChainView view = bc.snapshot();
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int i = 0; i < DISTINCT; i++) {
+                KeyPair v = SecurityUtils.generateRSAKeyPair(1024);
+                pool.add(new Transaction(v.getPublic(), "c" + (i % 5), "e", v.getPrivate()));
+            }
+            for (int made = 0; made < votes; made += perBlock) {
+                List<Transaction> txs = new ArrayList<>();
+                for (int i = 0; i < Math.min(perBlock, votes - made); i++) {
+                    Transaction tx = pool.get((made + i) % DISTINCT);
+                    txs.add(tx);
+                    expected.merge(Blockchain.decryptVote(tx.getEncryptedVote()), 1L, Long::sum);
+                }
+                int height = view.size();
+                view = view.append(new Block(height, view.getLatest().getCurrentHash(), txs,
+                        bc.getDifficultyAt(view, height)));
+            }
+        } finally {
+            System.setOut(out);
+        }
+        ChainAudit audit = new ChainAudit(bc, view);
+
+        audit.runSequential(); // Aquecimento (JIT)
+        long begin = System.nanoTime();
+        ChainAudit.Result sequential = audit.runSequential();
+        long sequentialNanos = System.nanoTime() - begin;
+        System.out.printf("%,d votos em %,d blocos%n", votes, view.size());
+        System.out.printf("sequencial      : %8.0f ms  (%s)%n",
+                sequentialNanos / 1E6, sequential.isValid() ? "válida" : sequential.getReason());
+        assertTrue(sequential.isValid(), sequential.getReason());
+        assertEquals(expected, sequential.getTally("e"));
+
+        int cpus = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(cpus, threads * 2)) {
+            ForkJoinPool fj = new ForkJoinPool(threads);
+            begin = System.nanoTime();
+            ChainAudit.Result parallel = audit.run(fj);
+            long nanos = System.nanoTime() - begin;
+            fj.shutdown();
+            System.out.printf("paralelo %2d thr : %8.0f ms  speedup %.2fx%n",
+                    threads, nanos / 1E6, (double) sequentialNanos / nanos);
+            assertEquals(sequential, parallel, "o resultado paralelo difere do sequencial");
+            if (threads == cpus) {
+                break;
+            }
+        }
+    }
+}
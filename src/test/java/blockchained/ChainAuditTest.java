@@ -0,0 +1,40 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes da auditoria da cadeia
+ *
+ * @author Acer
+ */
+public class ChainAuditTest {
+
+    @Test
+    void auditMatchesTheMaterializedTallySequentiallyAndInParallel() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        List<Transaction> votes = Votes.distinct(6, 2, "e");
+        // Blocos suficientes para dividir a auditoria em várias tarefas
+        for (int h = 0; h < 3 * ChainAudit.LEAF_BLOCKS; h++) {
+            bc.addBlock(Votes.next(bc, h % 8 == 0 ? votes.subList(h / 8, h / 8 + 1) : List.of()));
+        }
+
+        ChainAudit.Result sequential = bc.auditChainSequential();
+        assertTrue(sequential.isValid(), sequential.getReason());
+        assertEquals(bc.getHeight(), sequential.getBlocks());
+        assertEquals(6, sequential.getTransactions());
+        assertEquals(bc.tallyVotes("e"), sequential.getTally("e"));
+        assertEquals(bc.auditTallyVotes("e"), sequential.getTally("e"));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(sequential, bc.auditChain(pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
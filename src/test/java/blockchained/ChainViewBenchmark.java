@@ -0,0 +1,130 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Teste de stress das leituras sem locks
+ *
+ * Leitores em todos os processadores contra dois escritores que
+ * acrescentam blocos (addBlock) e um que reorganiza o fim da cadeia (sync).
+ * Os leitores verificam que cada vista é coerente (alturas, ligações e
+ * índice) e nenhum pode ver ConcurrentModificationException; no fim mostra
+ * o débito de leituras. Corre com mvn test -Pbenchmarks
+ * (-Dbench.millis=10000 -Dbench.readers=N)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class ChainViewBenchmark {
+
+    @Test
+    void readersAgainstWritersAndReorganizations() throws Exception {
+        long duration = Long.getLong("bench.millis", 10_000);
+        int readers = Integer.getInteger("bench.readers", Math.max(2, Runtime.getRuntime().availableProcessors()));
+        Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong reorgs = new AtomicLong();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        // Escritores: dois acrescentam blocos, um reorganiza os últimos blocos
+        for (int w = 0; w < 2; w++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        synchronized (bc) {
+                            bc.addBlock(Votes.next(bc, List.of()));
+                        }
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                }
+            }, "writer-" + w));
+        }
+        threads.add(new Thread(() -> {
+            try {
+                while (running.get()) {
+                    // Ramo com mais um bloco do que os que substitui
+                    List<Block> fork = new ArrayList<>();
+                    synchronized (bc) {
+                        ChainView view = bc.snapshot();
+                        int anchor = Math.max(0, view.size() - 4);
+                        Hash256 previous = view.get(anchor).getCurrentHash();
+                        for (int h = anchor + 1; h < view.size() + 1; h++) {
+                            Block block = new Block(h, previous, new ArrayList<>(), bc.getDifficultyAt(h));
+                            fork.add(block);
+                            previous = block.getCurrentHash();
+                        }
+                    }
+                    try {
+                        bc.sync(fork);
+                        reorgs.incrementAndGet();
+                    } catch (IllegalStateException ex) {
+                        // Os escritores avançaram entretanto: o ramo já não tem mais trabalho
+                    }
+                    Thread.sleep(5);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable ex) {
+                failures.add(ex);
+            }
+        }, "reorg"));
+
+        // Leitores: usam a API pública (como os handlers RMI) e vistas completas
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        ChainView view = bc.snapshot();
+                        int size = view.size();
+                        for (int h = Math.max(1, size - 32); h < size; h++) {
+                            Block block = view.get(h);
+                            if (block.getBlockID() != h
+                                    || !block.getPreviousHash().equals(view.get(h - 1).getCurrentHash())
+                                    || view.getHeightOf(block.getCurrentHash()) != h) {
+                                throw new IllegalStateException("Inconsistent view at height " + h);
+                            }
+                        }
+                        Hash256[] hashes = bc.getBlockHashes();
+                        List<Block> tail = bc.getBlocksFrom(hashes[Math.max(0, hashes.length - 8)]);
+                        for (Block block : tail) {
+                            block.getCurrentHash();
+                        }
+                        bc.findForkPoint(bc.getBlockLocator());
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                }
+            }, "reader-" + r));
+        }
+
+        for (Thread t : threads) {
+            t.start();
+        }
+        Thread.sleep(duration);
+        running.set(false);
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        System.out.printf("%d leitores, 3 escritores, %d ms: %,d leituras (%,.0f/s), %,d blocos, %,d reorganizações%n",
+                readers, duration, reads.get(), reads.get() * 1000.0 / duration, bc.getHeight(), reorgs.get());
+        for (Throwable ex : failures) {
+            ex.printStackTrace();
+        }
+        assertTrue(failures.isEmpty(), failures.size() + " falhas");
+        assertTrue(bc.isChainValid());
+    }
+}
@@ -0,0 +1,101 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes das leituras sem locks: leitores contra escritores que acrescentam
+ * blocos e reorganizam o fim da cadeia
+ *
+ * @author Acer
+ */
+public class ChainViewTest {
+
+    @Test
+    void readersAlwaysSeeACoherentView() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        // Escritores: um acrescenta blocos, outro reorganiza os últimos
+        threads.add(new Thread(() -> {
+            try {
+                while (running.get()) {
+                    synchronized (bc) {
+                        bc.addBlock(Votes.next(bc, List.of()));
+                    }
+                }
+            } catch (Throwable ex) {
+                failures.add(ex);
+            }
+        }));
+        threads.add(new Thread(() -> {
+            try {
+                while (running.get()) {
+                    List<Block> fork = new ArrayList<>();
+                    synchronized (bc) {
+                        ChainView view = bc.snapshot();
+                        int anchor = Math.max(0, view.size() - 4);
+                        Hash256 previous = view.get(anchor).getCurrentHash();
+                        for (int h = anchor + 1; h <= view.size(); h++) {
+                            Block block = new Block(h, previous, new ArrayList<>(), bc.getDifficultyAt(h));
+                            fork.add(block);
+                            previous = block.getCurrentHash();
+                        }
+                        bc.sync(fork);
+                    }
+                    Thread.sleep(5);
+                }
+            } catch (Throwable ex) {
+                failures.add(ex);
+            }
+        }));
+
+        // Leitores: vistas completas e a API pública, sem locks
+        for (int r = 0; r < 4; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        ChainView view = bc.snapshot();
+                        int size = view.size();
+                        for (int h = Math.max(1, size - 32); h < size; h++) {
+                            Block block = view.get(h);
+                            if (block.getBlockID() != h
+                                    || !block.getPreviousHash().equals(view.get(h - 1).getCurrentHash())
+                                    || view.getHeightOf(block.getCurrentHash()) != h) {
+                                throw new IllegalStateException("Inconsistent view at height " + h);
+                            }
+                        }
+                        Hash256[] hashes = bc.getBlockHashes();
+                        bc.getBlocksFrom(hashes[Math.max(0, hashes.length - 8)]);
+                        bc.findForkPoint(bc.getBlockLocator());
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                }
+            }));
+        }
+
+        for (Thread t : threads) {
+            t.start();
+        }
+        Thread.sleep(1000);
+        running.set(false);
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(List.of(), failures);
+        assertTrue(reads.get() > 0);
+        assertTrue(bc.isChainValid());
+    }
+}
@@ -0,0 +1,90 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes da mineração fora do monitor da Blockchain
+ *
+ * @author Acer
+ */
+public class ConcurrentMiningTest {
+
+    /**
+     * Blockchain cuja primeira mineração espera por um sinal do teste
+     */
+    private static class PausedBlockchain extends Blockchain {
+
+        final CountDownLatch mining = new CountDownLatch(1); // A primeira mineração começou
+        final CountDownLatch resume = new CountDownLatch(1); // A primeira mineração pode acabar
+        final AtomicInteger attempts = new AtomicInteger(); // Blocos minerados
+
+        PausedBlockchain() throws InterruptedException {
+            super(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+        }
+
+        @Override
+        Block mineBlock(ChainView chain, List<Transaction> batch) throws InterruptedException {
+            if (attempts.getAndIncrement() == 0) {
+                mining.countDown();
+                resume.await();
+            }
+            return super.mineBlock(chain, batch);
+        }
+    }
+
+    @Test
+    void writersDoNotWaitForMiningAndTheBlockIsMinedAgainOnTheNewTip() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair alice = generator.generateKeyPair();
+        KeyPair bob = generator.generateKeyPair();
+
+        PausedBlockchain bc = new PausedBlockchain();
+        bc.createElection("e", "Eleição");
+        bc.getMempool().add(new Transaction(alice.getPublic(), "a", "e", alice.getPrivate()));
+
+        // Bloco de outro nó, com outro votante, sobre o mesmo génesis
+        Block peer = new Block(1, bc.getLatestBlock().getCurrentHash(),
+                new ArrayList<>(List.of(new Transaction(bob.getPublic(), "b", "e", bob.getPrivate()))),
+                bc.getNextDifficulty());
+
+        ExecutorService miner = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> mined = miner.submit(() -> {
+                bc.minePendingTransactions();
+                return null;
+            });
+            bc.mining.await();
+
+            // Com a mineração em curso, o escritor e os leitores não esperam
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> bc.sync(List.of(peer)));
+            assertEquals(2, bc.getHeight());
+            bc.resume.countDown();
+            mined.get();
+        } finally {
+            miner.shutdownNow();
+        }
+
+        // O topo mudou: o lote foi minerado de novo sobre o bloco recebido
+        assertEquals(2, bc.attempts.get());
+        assertEquals(3, bc.getHeight());
+        assertEquals(peer.getCurrentHash(), bc.getLatestBlock().getPreviousHash());
+        assertTrue(bc.isChainValid());
+        assertTrue(bc.hasVoted(alice.getPublic(), "e") && bc.hasVoted(bob.getPublic(), "e"));
+        assertTrue(bc.verifyTally("e"));
+    }
+}
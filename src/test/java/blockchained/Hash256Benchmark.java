@@ -0,0 +1,62 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.Reference;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Relatório de memória: hashes hexadecimais (String) contra Hash256
+ *
+ * Numa cadeia com 1M transações (1 transação por bloco, como em vote():
+ * id da transação + hash, hash anterior e Merkle root de cada bloco).
+ * Corre com mvn test -Pbenchmarks (-Dbench.transactions=1000000)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class Hash256Benchmark {
+
+    @Test
+    void memoryOfHexStringsAgainstHash256() {
+        int transactions = Integer.getInteger("bench.transactions", 1_000_000);
+        int hashes = transactions * 4;
+
+        String[] strings = new String[hashes];
+        long before = usedMemory();
+        for (int i = 0; i < hashes; i++) {
+            strings[i] = Hash256.sha256(Integer.toString(i).getBytes()).toHex();
+        }
+        long stringBytes = usedMemory() - before;
+        Reference.reachabilityFence(strings);
+        strings = null;
+
+        before = usedMemory();
+        Hash256[] values = new Hash256[hashes];
+        for (int i = 0; i < hashes; i++) {
+            values[i] = Hash256.sha256(Integer.toString(i).getBytes());
+        }
+        long valueBytes = usedMemory() - before;
+        Reference.reachabilityFence(values);
+
+        long refs = (long) hashes * 4; // referências do array (oops comprimidos)
+        System.out.printf("%,d transações, %,d hashes%n", transactions, hashes);
+        System.out.printf("String hex : %,15d bytes (%5.1f bytes/hash)%n", stringBytes, (double) (stringBytes - refs) / hashes);
+        System.out.printf("Hash256    : %,15d bytes (%5.1f bytes/hash)%n", valueBytes, (double) (valueBytes - refs) / hashes);
+        System.out.printf("Poupança   : %,15d bytes (%.1f%%)%n", stringBytes - valueBytes,
+                100.0 * (stringBytes - valueBytes) / stringBytes);
+        assertTrue(valueBytes < stringBytes, "o Hash256 não ocupa menos que a String hexadecimal");
+    }
+
+    /**
+     * Memória ocupada depois de pedir algumas recolhas
+     */
+    static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,57 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes do Hash256
+ *
+ * @author Acer
+ */
+public class Hash256Test {
+
+    @Test
+    void hashCodeSpreadsHashesWithLeadingZeros() {
+        // Hashes de blocos de dificuldade alta: os primeiros 8 bytes a zero
+        Set<Integer> codes = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            byte[] bytes = Hash256.sha256(("bloco " + i).getBytes()).toBytes();
+            for (int b = 0; b < 8; b++) {
+                bytes[b] = 0;
+            }
+            codes.add(Hash256.of(bytes).hashCode());
+        }
+        assertTrue(codes.size() > 990, "hashCodes repetidos: " + (1000 - codes.size()));
+    }
+
+    @Test
+    void equalHashesHaveEqualHashCodes() {
+        Hash256 a = Hash256.sha256("x".getBytes());
+        assertEquals(a, Hash256.fromHex(a.toHex()));
+        assertEquals(a.hashCode(), Hash256.fromHex(a.toHex()).hashCode());
+    }
+
+    @Test
+    void deserializedHashRecomputesItsHashCode() throws Exception {
+        Hash256 a = Hash256.sha256("x".getBytes());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(a);
+        }
+        Hash256 copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (Hash256) in.readObject();
+        }
+        assertEquals(a, copy);
+        assertEquals(a.hashCode(), copy.hashCode());
+        assertTrue(Set.of(a).contains(copy));
+    }
+}
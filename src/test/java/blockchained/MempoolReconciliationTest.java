@@ -0,0 +1,100 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes da reconciliação do mempool com a cadeia (sync, reorganizações e
+ * mineração)
+ *
+ * @author Acer
+ */
+public class MempoolReconciliationTest {
+
+    private static KeyPair alice;
+    private static KeyPair bob;
+    private static Transaction aliceVote;
+    private static Transaction aliceOtherVote;
+    private static Transaction bobVote;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        alice = generator.generateKeyPair();
+        bob = generator.generateKeyPair();
+        aliceVote = new Transaction(alice.getPublic(), "a", "e", alice.getPrivate());
+        aliceOtherVote = new Transaction(alice.getPublic(), "b", "e", alice.getPrivate());
+        bobVote = new Transaction(bob.getPublic(), "a", "e", bob.getPrivate());
+    }
+
+    private static Blockchain node() throws Exception {
+        // Intervalo alvo 0: a dificuldade fica no mínimo
+        Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+        bc.createElection("e", "Eleição");
+        return bc;
+    }
+
+    private static Block next(Blockchain bc, Transaction... txs) throws Exception {
+        return new Block(bc.getHeight(), bc.getLatestBlock().getCurrentHash(),
+                new ArrayList<>(List.of(txs)), bc.getNextDifficulty());
+    }
+
+    @Test
+    void syncRemovesConfirmedTransactionsAndVoters() throws Exception {
+        Blockchain a = node();
+        Blockchain b = node();
+        // b tem pendente outro voto da mesma votante
+        assertEquals(Mempool.Admission.ADDED, b.getMempool().add(aliceOtherVote));
+        a.sync(List.of(next(a, aliceVote)));
+
+        b.sync(a.getBlocksFrom(b.getLatestBlock().getCurrentHash()));
+        assertEquals(0, b.getMempool().size());
+        assertFalse(b.getMempool().hasPendingVote(VoterRegistry.fingerprint(alice.getPublic()), "e"));
+        assertTrue(b.hasVoted(alice.getPublic(), "e"));
+
+        // Nada a minerar: o voto confirmado não é contado duas vezes
+        b.minePendingTransactions();
+        assertEquals(2, b.getHeight());
+        assertEquals(1L, b.tallyVotes("e").values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    void reorganizationRequeuesOrphanedTransactions() throws Exception {
+        Blockchain a = node();
+        Blockchain b = node();
+        // b minera o voto do bob; a cadeia de a (mais longa) não o tem
+        b.getMempool().add(bobVote);
+        b.minePendingTransactions();
+        assertEquals(0, b.getMempool().size());
+        a.sync(List.of(next(a, aliceVote)));
+        a.sync(List.of(next(a)));
+
+        b.sync(a.getBlocksFrom(a.snapshot().get(0).getCurrentHash()));
+        assertEquals(a.getLatestBlock().getCurrentHash(), b.getLatestBlock().getCurrentHash());
+        assertEquals(List.of(bobVote), b.getMempool().getTransactions());
+        assertTrue(b.hasVoted(bob.getPublic(), "e"));
+        assertFalse(b.getVoterRegistry().hasVoted(bob.getPublic(), "e"));
+        assertTrue(b.verifyTally("e"));
+    }
+
+    @Test
+    void miningSkipsVotersAlreadyOnTheChain() throws Exception {
+        Blockchain bc = node();
+        bc.getMempool().add(aliceVote);
+        // A votante fica registada (bloco de outro nó) depois de o voto ser admitido
+        bc.getVoterRegistry().add(alice.getPublic(), "e");
+        bc.minePendingTransactions();
+        assertEquals(1, bc.getHeight());
+        assertEquals(0, bc.getMempool().size());
+        assertFalse(bc.getMempool().hasPendingVote(VoterRegistry.fingerprint(alice.getPublic()), "e"));
+    }
+}
@@ -0,0 +1,58 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes do Mempool
+ *
+ * @author Acer
+ */
+public class MempoolTest {
+
+    private static KeyPair keys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair();
+    }
+
+    @Test
+    void indexesPendingVotesByFingerprintAndElection() throws Exception {
+        KeyPair voter = keys();
+        Mempool mempool = new Mempool(100, 1 << 20, 60_000, (fingerprint, electionId) -> false);
+        Transaction first = new Transaction(voter.getPublic(), "a", "e", voter.getPrivate());
+        assertEquals(Mempool.Admission.ADDED, mempool.add(first));
+
+        Hash256 fingerprint = VoterRegistry.fingerprint(voter.getPublic());
+        // O ID da eleição pode chegar como outra instância de String
+        assertTrue(mempool.hasPendingVote(fingerprint, new String("e")));
+        assertFalse(mempool.hasPendingVote(fingerprint, "f"));
+
+        Transaction second = new Transaction(voter.getPublic(), "b", "e", voter.getPrivate());
+        assertEquals(Mempool.Admission.VOTER_PENDING, mempool.add(second));
+
+        // O lugar do votante só é libertado com release
+        List<Transaction> batch = mempool.take(10, 1 << 20);
+        assertEquals(List.of(first), batch);
+        assertTrue(mempool.hasPendingVote(fingerprint, "e"));
+        mempool.release(batch);
+        assertFalse(mempool.hasPendingVote(fingerprint, "e"));
+    }
+
+    @Test
+    void rejectsVotersAlreadyOnTheChain() throws Exception {
+        KeyPair voter = keys();
+        Hash256 fingerprint = VoterRegistry.fingerprint(voter.getPublic());
+        Mempool mempool = new Mempool(100, 1 << 20, 60_000,
+                (f, electionId) -> f.equals(fingerprint) && electionId.equals("e"));
+        Transaction tx = new Transaction(voter.getPublic(), "a", "e", voter.getPrivate());
+        assertEquals(Mempool.Admission.ALREADY_VOTED, mempool.add(tx));
+        assertFalse(mempool.hasPendingVote(fingerprint, "e"));
+    }
+}
@@ -0,0 +1,70 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import utils.SecurityUtils;
+
+/**
+ * Benchmark da latência de pedidos tipo vote() durante a mineração
+ *
+ * Cada pedido assina um voto (RSA) e minera a sua transação (PoW urgente),
+ * como o vote(); em fundo corre um bloco com dificuldade impossível.
+ * Compara um escalonador sem política (todos os cores, prioridade normal)
+ * com um que deixa um core livre, baixa a prioridade e pausa os workers.
+ * Corre com mvn test -Pbenchmarks (-Dbench.requests=200)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class MiningSchedulerBenchmark {
+
+    @Test
+    void voteLatencyWhileMining() throws Exception {
+        int requests = Integer.getInteger("bench.requests", 200);
+        int cpus = Runtime.getRuntime().availableProcessors();
+        KeyPair keys = SecurityUtils.generateRSAKeyPair(2048);
+
+        MiningScheduler plain = new MiningScheduler(1.0, Thread.NORM_PRIORITY, MiningScheduler.Policy.OFF, 0);
+        MiningScheduler managed = new MiningScheduler(Math.max(1, cpus - 1), Thread.MIN_PRIORITY, MiningScheduler.Policy.PAUSE, 200);
+        for (MiningScheduler scheduler : new MiningScheduler[]{plain, managed}) {
+            MiningService service = new MiningService(scheduler.getWorkers(), ProofOfWork.getDefault(), scheduler);
+            long started = System.nanoTime();
+            CompletableFuture<Nonce> background = service.submit("background block", 256);
+            Thread.sleep(500);
+
+            long[] latencies = new long[requests];
+            for (int i = 0; i < requests; i++) {
+                long begin = System.nanoTime();
+                scheduler.enterCritical();
+                try {
+                    Signature sig = Signature.getInstance("SHA256withRSA");
+                    sig.initSign(keys.getPrivate());
+                    sig.update(("vote " + i).getBytes());
+                    sig.sign();
+                    service.mine("vote " + i, 12);
+                } finally {
+                    scheduler.exitCritical();
+                }
+                latencies[i] = System.nanoTime() - begin;
+                Thread.sleep(10);
+            }
+            background.cancel(false);
+            service.shutdown();
+            double rate = service.getStats().snapshot().getTotalHashes() * 1E9 / (System.nanoTime() - started);
+
+            Arrays.sort(latencies);
+            System.out.printf("%-5s %2d workers: p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms  mining %,.0f hashes/s%n",
+                    scheduler.getPolicy(), scheduler.getWorkers(),
+                    latencies[requests / 2] / 1E6, latencies[requests * 99 / 100] / 1E6,
+                    latencies[requests - 1] / 1E6, rate);
+            assertTrue(rate > 0, "o bloco em fundo não minerou");
+            assertTrue(scheduler.getCriticalInFlight() == 0);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Benchmark de escalabilidade do MiningService
+ *
+ * Débito com 1 a N workers (dobrando) num trabalho que nunca termina
+ * (256 bits a zero). Com intervalos contíguos de nonces o débito deve
+ * crescer com os workers em vez de parar num contador partilhado.
+ * Corre com mvn test -Pbenchmarks (-Dbench.workers=N -Dbench.millis=2000)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class MiningServiceBenchmark {
+
+    @Test
+    void throughputScalesWithWorkers() throws Exception {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int max = Integer.getInteger("bench.workers", cpus);
+        long millis = Long.getLong("bench.millis", 2000);
+        double base = 0;
+        double best = 0;
+        for (int threads = 1; threads <= max; threads = threads == max ? max + 1 : Math.min(threads * 2, max)) {
+            MiningService service = new MiningService(threads);
+            // Dificuldade impossível: os workers só param com o cancelamento
+            long begin = System.nanoTime();
+            CompletableFuture<Nonce> job = service.submit(NonceSearchBenchmark.DATA, 256);
+            Thread.sleep(millis);
+            job.cancel(false);
+            Thread.sleep(50); // Os workers registam a última fatia ao sair
+            double seconds = (System.nanoTime() - begin) / 1E9;
+            double rate = service.getStats().snapshot().getTotalHashes() / seconds;
+            service.shutdown();
+            if (threads == 1) {
+                base = rate;
+            }
+            best = Math.max(best, rate);
+            System.out.printf("%3d workers: %,15.0f hashes/s  speedup %5.2fx%n", threads, rate, rate / base);
+        }
+        assertTrue(base > 0, "nenhum hash com 1 worker");
+        assertTrue(max == 1 || cpus == 1 || best > base, "o débito não cresce com os workers");
+    }
+}
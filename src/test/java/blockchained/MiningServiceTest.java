@@ -0,0 +1,126 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes do MiningService: passagem de extra-nonce quando o espaço de
+ * nonces de um extra-nonce se esgota
+ *
+ * @author Acer
+ */
+public class MiningServiceTest {
+
+    private MiningService service;
+
+    @BeforeEach
+    void setUp() {
+        // 16 nonces por extra-nonce: com 12 bits a zero (~4096 tentativas) a
+        // solução quase nunca está no extra-nonce 0
+        service = new MiningService(2, ProofOfWork.getDefault(), MiningScheduler.getDefault(), 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void rollsOverTheExtraNonceWhenTheNonceSpaceIsExhausted() throws Exception {
+        boolean rolledOver = false;
+        for (int i = 0; i < 4 && !rolledOver; i++) {
+            String data = "rollover-" + i;
+            Nonce nonce = service.mine(data, 12);
+            assertTrue(nonce.getNonce() >= 0 && nonce.getNonce() < 16, "nonce fora do espaço: " + nonce);
+            assertTrue(ProofOfWork.getDefault().verify(data, nonce, 12), "solução inválida: " + nonce);
+            rolledOver = nonce.getExtraNonce() > 0;
+        }
+        assertTrue(rolledOver, "o extra-nonce nunca avançou");
+    }
+
+    @Test
+    void interruptedMineCancelsTheJob() throws Exception {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread miner = new Thread(() -> {
+            try {
+                service.mine("impossível", 64);
+            } catch (InterruptedException ex) {
+                interrupted.set(true);
+            }
+        });
+        miner.start();
+        Thread.sleep(50);
+        miner.interrupt();
+        miner.join(5000);
+        assertTrue(interrupted.get());
+
+        // O trabalho terminou sem solução e os workers pararam
+        Thread.sleep(100);
+        assertEquals(1, service.getStats().snapshot().getLosses());
+        long hashes = service.getStats().snapshot().getTotalHashes();
+        Thread.sleep(100);
+        assertEquals(hashes, service.getStats().snapshot().getTotalHashes());
+    }
+
+    @Test
+    void keepsYieldingAcrossConsecutiveCriticalSections() throws Exception {
+        MiningScheduler scheduler = new MiningScheduler(2, Thread.NORM_PRIORITY, MiningScheduler.Policy.PAUSE, 30);
+        MiningService paused = new MiningService(2, ProofOfWork.getDefault(), scheduler);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            scheduler.enterCritical();
+            try {
+                entered.countDown();
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                scheduler.exitCritical();
+            }
+        });
+        CompletableFuture<Nonce> job = paused.submit("pausas", 64);
+        try {
+            Thread.sleep(100);
+            long free = hashesDuring(paused, 300);
+
+            // Primeira zona crítica, mais longa do que a pausa máxima
+            scheduler.enterCritical();
+            try {
+                Thread.sleep(100);
+                // A segunda começa antes de a primeira acabar
+                second.start();
+                entered.await();
+            } finally {
+                scheduler.exitCritical();
+            }
+            long critical = hashesDuring(paused, 300);
+            assertTrue(critical < free / 2, "não cedeu na segunda zona crítica: " + critical + " vs " + free);
+        } finally {
+            release.countDown();
+            second.join();
+            job.cancel(true);
+            paused.shutdown();
+        }
+    }
+
+    private static long hashesDuring(MiningService service, long millis) throws InterruptedException {
+        long before = service.getStats().snapshot().getTotalHashes();
+        Thread.sleep(millis);
+        return service.getStats().snapshot().getTotalHashes() - before;
+    }
+
+    @Test
+    void rejectsAnEmptyNonceSpace() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MiningService(1, ProofOfWork.getDefault(), MiningScheduler.getDefault(), 0));
+    }
+}
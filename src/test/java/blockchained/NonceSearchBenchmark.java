@@ -0,0 +1,58 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Benchmark do motor de procura de nonces
+ *
+ * Compara o débito (hashes/s) do caminho antigo (String nonce + data,
+ * getInstance, Base64 e startsWith) com o NonceSearch (buffer binário,
+ * midstate e bits a zero). Corre com mvn test -Pbenchmarks
+ * (-Dbench.millis=2000)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class NonceSearchBenchmark {
+
+    static final String DATA = "0000000000000000000000000000000000000000000000000000000000000000"
+            + "a3f1c2e4b5d6978800112233445566778899aabbccddeeff0011223344556677";
+
+    @Test
+    void throughputAgainstStringHashing() throws Exception {
+        long millis = Long.getLong("bench.millis", 2000);
+
+        // Caminho antigo
+        long count = 0;
+        int found = 0;
+        long end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 1000; i++) {
+                if (Hash.calculateHash(count + DATA).startsWith("000000")) {
+                    found++;
+                }
+                count++;
+            }
+        }
+        double oldRate = count * 1000.0 / millis;
+
+        // Novo motor
+        NonceSearch search = new NonceSearch(DATA, 256);
+        long nonce = 0;
+        end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 1000; i++) {
+                search.test(nonce++);
+            }
+        }
+        double newRate = nonce * 1000.0 / millis;
+
+        System.out.printf("Hash.calculateHash : %,.0f hashes/s (%d)%n", oldRate, found);
+        System.out.printf("NonceSearch        : %,.0f hashes/s%n", newRate);
+        System.out.printf("Speedup            : %.2fx%n", newRate / oldRate);
+        assertTrue(newRate > oldRate, "o NonceSearch não é mais rápido que o caminho antigo");
+    }
+}
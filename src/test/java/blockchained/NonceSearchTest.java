@@ -0,0 +1,72 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes dos motores de procura de nonces
+ *
+ * @author Acer
+ */
+public class NonceSearchTest {
+
+    @Test
+    void foundNonceSatisfiesTheProofOfWork() throws Exception {
+        String data = "bloco de teste";
+        NonceSearch search = new NonceSearch(data, 12);
+        long nonce = search.search(0, Long.MAX_VALUE);
+        assertTrue(nonce >= 0);
+        assertTrue(NonceSearch.hasLeadingZeroBits(search.getLastHash(), 12));
+        assertTrue(ProofOfWork.getDefault().verify(data, new Nonce(0, nonce), 12));
+    }
+
+    @Test
+    void scalarSha256MatchesMessageDigest() throws Exception {
+        // Prefixos à volta dos limites dos blocos (midstate e padding)
+        for (int length : new int[] {0, 1, 43, 44, 52, 55, 63, 64, 65, 119, 128, 200}) {
+            byte[] prefix = new byte[length];
+            for (int i = 0; i < length; i++) {
+                prefix[i] = (byte) (i * 31 + length);
+            }
+            NonceSearch search = new NonceSearch(prefix, 0);
+            search.setExtraNonce(7);
+            for (long nonce : new long[] {0, 1, 0x0102030405060708L, -1}) {
+                search.test(nonce);
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                md.update(prefix);
+                byte[] tail = new byte[NonceSearch.EXTRA_NONCE_BYTES + NonceSearch.NONCE_BYTES];
+                NonceSearch.writeInt(tail, 0, 7);
+                NonceSearch.writeNonce(tail, NonceSearch.EXTRA_NONCE_BYTES, nonce);
+                assertArrayEquals(md.digest(tail), search.getLastHash(), "prefixo de " + length + " bytes");
+            }
+        }
+    }
+
+    @Test
+    void searchDoesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        NonceSearch search = new NonceSearch(new byte[80], 64);
+        AtomicBoolean stop = new AtomicBoolean();
+        search.search(0, 200_000, stop); // Aquecimento (JIT)
+        long before = threads.getCurrentThreadAllocatedBytes();
+        search.search(200_000, 400_000, stop);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        // Um clone por tentativa seriam dezenas de MB
+        assertTrue(allocated < 64 * 1024, "alocou " + allocated + " bytes em 200000 tentativas");
+    }
+
+    @Test
+    void vectorSearchMatchesMessageDigest() throws Exception {
+        assertTrue(VectorNonceSearch.selfTest());
+        byte[] prefix = new byte[80];
+        NonceSearch scalar = new NonceSearch(prefix, 10);
+        VectorNonceSearch vector = new VectorNonceSearch(prefix, 10);
+        AtomicBoolean stop = new AtomicBoolean();
+        assertTrue(scalar.search(0, 1 << 20, stop) == vector.search(0, 1 << 20, stop));
+    }
+}
@@ -0,0 +1,153 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.SecurityUtils;
+
+/**
+ * Comparação heap / fora do heap com N votos (1M por defeito, 1000 por bloco)
+ *
+ * Heap ocupado depois de um GC completo, memória fora do heap, pausa do GC
+ * completo e pausas do GC durante uma carga que simula os pedidos RMI (lixo
+ * de vida curta e leituras dos resultados). A cadeia é escrita diretamente
+ * no BlockStore com 16 votos modelo repetidos (o sync rejeitaria os votos
+ * repetidos) e reaberta em cada modo; todas as transações são lidas, o que
+ * as descodifica no heap ou as copia para fora do heap (com 1M votos o
+ * modo heap precisa de cerca de 1.3 GB de heap). Corre com
+ * mvn test -Pbenchmarks (-Dbench.votes=1000000 -Dbench.perBlock=1000
+ * -Dbench.seconds=10 -Dbench.storage=heap,offheap)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class OffHeapStoreBenchmark {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void heapAgainstOffHeapStorage() throws Exception {
+        int votes = Integer.getInteger("bench.votes", 1_000_000);
+        int perBlock = Integer.getInteger("bench.perBlock", 1000);
+        int seconds = Integer.getInteger("bench.seconds", 10);
+
+        PrintStream out = System.out;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            List<Transaction> templates = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                KeyPair voter = SecurityUtils.generateRSAKeyPair(1024);
+                templates.add(new Transaction(voter.getPublic(), "c" + (i % 4), "e", voter.getPrivate()));
+            }
+            Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL,
+                    new BlockStore(dir));
+            bc.createElection("e", "offheap");
+            Hash256 previous = bc.getLatestBlock().getCurrentHash();
+            bc.close();
+
+            BlockStore store = new BlockStore(dir);
+            int height = 0;
+            for (int made = 0; made < votes; made += perBlock) {
+                List<Transaction> txs = new ArrayList<>();
+                for (int i = 0; i < Math.min(perBlock, votes - made); i++) {
+                    txs.add(templates.get((made + i) % templates.size()));
+                }
+                Block block = new Block(++height, previous, txs, Blockchain.MIN_DIFFICULTY);
+                store.append(block);
+                previous = block.getCurrentHash();
+            }
+            store.setValidatedHeight(height);
+            store.close();
+        } finally {
+            System.setOut(out);
+        }
+
+        for (String mode : System.getProperty("bench.storage", "heap,offheap").split(",")) {
+            run(mode.trim(), votes, seconds);
+        }
+    }
+
+    private void run(String mode, int votes, int seconds) throws Exception {
+        System.setProperty("chain.storage", mode);
+        PrintStream out = System.out;
+        Blockchain bc;
+        long build;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            long begin = System.nanoTime();
+            bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL, new BlockStore(dir));
+            // Cada voto lido: uma cópia descodificada no heap ou os bytes fora do heap
+            long read = 0;
+            for (Block block : bc.snapshot().getBlocks()) {
+                read += block.getTransactions().size();
+            }
+            build = System.nanoTime() - begin;
+            assertEquals(votes, read);
+        } finally {
+            System.setOut(out);
+            System.clearProperty("chain.storage");
+        }
+
+        try {
+            Runtime rt = Runtime.getRuntime();
+            long fullGc = 0;
+            for (int i = 0; i < 3; i++) {
+                long begin = System.nanoTime();
+                System.gc();
+                fullGc = System.nanoTime() - begin;
+            }
+            long heap = rt.totalMemory() - rt.freeMemory();
+
+            // Carga: lixo de vida curta como o dos pedidos RMI e leituras dos resultados
+            long collections = 0;
+            long collectionMillis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collections -= gc.getCollectionCount();
+                collectionMillis -= gc.getCollectionTime();
+            }
+            long end = System.currentTimeMillis() + seconds * 1000L;
+            long requests = 0;
+            List<byte[]> live = new ArrayList<>();
+            while (System.currentTimeMillis() < end) {
+                live.add(new byte[2048]);
+                if (live.size() == 512) {
+                    live = new ArrayList<>();
+                }
+                bc.tallyVotes("e");
+                requests++;
+            }
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collections += gc.getCollectionCount();
+                collectionMillis += gc.getCollectionTime();
+            }
+
+            OffHeapStore store = bc.getOffHeapStore();
+            Map<String, Long> tally = bc.tallyVotes("e");
+            System.out.printf("%-8s %,d votos em %,d blocos (abertura e leitura %.1f s)%n", mode,
+                    votes, bc.getHeight(), build / 1E9);
+            System.out.printf("  heap ocupado %,d MB, fora do heap %,d MB (reservado %,d MB)%n", heap >> 20,
+                    store == null ? 0 : store.getStoredBytes() >> 20, store == null ? 0 : store.getReservedBytes() >> 20);
+            System.out.printf("  GC completo %.1f ms; carga %d s: %,d pedidos, %,d GCs, pausa média %.2f ms%n",
+                    fullGc / 1E6, seconds, requests, collections, collections == 0 ? 0.0 : (double) collectionMillis / collections);
+            System.out.printf("  resultados %s%n", tally);
+            assertEquals("offheap".equals(mode), store != null);
+            assertEquals(votes, tally.values().stream().mapToLong(Long::longValue).sum());
+            assertEquals(bc.auditTallyVotes("e"), tally);
+        } finally {
+            bc.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Testes do modo offheap (-Dchain.storage=offheap)
+ *
+ * @author Acer
+ */
+public class OffHeapStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("chain.storage", "offheap");
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("chain.storage");
+    }
+
+    @Test
+    void offHeapChainKeepsTheVotes() throws Exception {
+        List<Transaction> votes = Votes.distinct(3, 2, "e");
+        Blockchain bc = Votes.chain("e");
+        try {
+            assertNotNull(bc.getOffHeapStore());
+            bc.addBlock(Votes.next(bc, votes));
+            assertTrue(bc.getOffHeapStore().getStoredBytes() > 0);
+
+            TransactionView tx = bc.getTransactionsAt(1);
+            for (Transaction vote : votes) {
+                assertTrue(tx.next());
+                assertEquals(vote.getTransactionId(), tx.getTransactionId());
+                assertEquals(VoterRegistry.fingerprint(vote.getPublicVoterKey()), tx.getVoterFingerprint());
+                assertEquals(vote.getEncryptedVote(), tx.getEncryptedVote());
+            }
+            assertEquals(bc.auditTallyVotes("e"), bc.tallyVotes("e"));
+            ChainAudit.Result audit = bc.auditChainSequential();
+            assertTrue(audit.isValid(), audit.getReason());
+        } finally {
+            bc.close();
+        }
+    }
+
+    @Test
+    void reopenedBlocksMoveOffHeapOnFirstRead() throws Exception {
+        List<Transaction> votes = Votes.distinct(3, 2, "e");
+        Blockchain bc = Blockchain.open(dir, Blockchain.MIN_DIFFICULTY);
+        bc.createElection("e", "Eleição");
+        bc.addBlock(Votes.next(bc, votes));
+        bc.addBlock(Votes.next(bc, List.of()));
+        bc.close(); // Snapshot no topo: ao reabrir nenhum bloco é contado
+
+        Blockchain reopened = Blockchain.open(dir, Blockchain.MIN_DIFFICULTY);
+        try {
+            // O arranque não copia as transações dos blocos guardados
+            assertEquals(0, reopened.getOffHeapStore().getStoredBytes());
+            assertEquals(bc.tallyVotes("e"), reopened.tallyVotes("e"));
+
+            TransactionView tx = reopened.getTransactionsAt(1);
+            long stored = reopened.getOffHeapStore().getStoredBytes();
+            assertTrue(stored > 0);
+            for (Transaction vote : votes) {
+                assertTrue(tx.next());
+                assertEquals(vote.getTransactionId(), tx.getTransactionId());
+            }
+            // A segunda leitura usa a cópia já feita
+            assertEquals(votes.size(), reopened.snapshot().get(1).getTransactions().size());
+            assertEquals(stored, reopened.getOffHeapStore().getStoredBytes());
+            assertTrue(reopened.isChainValid());
+        } finally {
+            reopened.close();
+        }
+    }
+}
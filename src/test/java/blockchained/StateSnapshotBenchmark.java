@@ -0,0 +1,161 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.SecurityUtils;
+
+/**
+ * Benchmark do arranque com N votos (100k e 1M por defeito, 1000 por bloco)
+ * numa cadeia guardada
+ *
+ * Reabre a Blockchain recontando todos os blocos, a partir de um snapshot
+ * no topo (paragem normal: close escreve o snapshot) e a partir de um
+ * snapshot com alguns blocos por contar (paragem abrupta); o estado
+ * reaberto é comparado com o esperado. Corre com mvn test -Pbenchmarks
+ * (-Dbench.sizes=100000,1000000 -Dbench.perBlock=1000 -Dbench.tail=10)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class StateSnapshotBenchmark {
+
+    @TempDir
+    Path tmp;
+
+    @BeforeEach
+    void setUp() {
+        // Só os snapshots escritos por close
+        System.setProperty("snapshot.interval", String.valueOf(Integer.MAX_VALUE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("snapshot.interval");
+    }
+
+    @Test
+    void startupWithAndWithoutSnapshots() throws Exception {
+        int perBlock = Integer.getInteger("bench.perBlock", 1000);
+        int tail = Integer.getInteger("bench.tail", 10);
+        PrintStream out = System.out;
+
+        // Um votante distinto por voto: gerar um par RSA por votante seria
+        // demasiado lento, pelo que as chaves variam no expoente público (como
+        // no VoterRegistryBenchmark) e reutilizam o voto e a assinatura de um modelo
+        KeyPair base;
+        Transaction template;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            base = SecurityUtils.generateRSAKeyPair(1024);
+            template = new Transaction(base.getPublic(), "c0", "e", base.getPrivate());
+        } finally {
+            System.setOut(out);
+        }
+        RSAPublicKey modulus = (RSAPublicKey) base.getPublic();
+        KeyFactory factory = KeyFactory.getInstance("RSA");
+
+        for (String s : System.getProperty("bench.sizes", "100000,1000000").split(",")) {
+            int votes = Integer.parseInt(s.trim());
+            Path dir = tmp.resolve("votes-" + votes);
+            int blocks = (votes + perBlock - 1) / perBlock;
+            Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL,
+                    new BlockStore(Files.createDirectories(dir)));
+            bc.createElection("e", "startup", votes);
+            Hash256 previous = bc.getLatestBlock().getCurrentHash();
+            bc.close();
+
+            // Os blocos vão diretamente para o BlockStore (a cadeia não fica no heap)
+            int counted = 0;
+            long full = 0;
+            long clean = 0;
+            int measured = 0;
+            BlockStore store = new BlockStore(dir);
+            for (int b = 1; b <= blocks; b++) {
+                if (b == blocks - tail + 1) {
+                    // Os últimos blocos só são escritos depois do snapshot no topo
+                    store.close();
+                    full = startup(dir, counted, true);
+                    clean = startup(dir, counted, false);
+                    measured = counted;
+                    store = new BlockStore(dir);
+                }
+                List<Transaction> txs = new ArrayList<>(perBlock);
+                for (int i = (b - 1) * perBlock; i < Math.min(votes, b * perBlock); i++) {
+                    Key key = factory.generatePublic(new RSAPublicKeySpec(modulus.getModulus(),
+                            BigInteger.valueOf(65537 + 2L * i)));
+                    txs.add(new Transaction(template.getTransactionId(), key, template.getEncryptedVote(), "e",
+                            template.getSignature(), 0, 0));
+                }
+                Block block = new Block(b, previous, txs, Blockchain.MIN_DIFFICULTY);
+                store.append(block);
+                previous = block.getCurrentHash();
+                counted += txs.size();
+            }
+            store.setValidatedHeight(blocks);
+            store.close();
+            long crash = startup(dir, counted, false);
+            System.out.printf("%,9d votos em %,d blocos: arranque sem snapshot %,9.1f ms, com snapshot no topo"
+                    + " %,7.1f ms, snapshot %,d blocos atrás %,7.1f ms (%,d KB)%n", measured, blocks - tail,
+                    full / 1E6, clean / 1E6, tail, crash / 1E6, Files.size(snapshots(dir).get(0)) >> 10);
+        }
+    }
+
+    /**
+     * Mede a reabertura da Blockchain e confirma o estado reaberto
+     *
+     * @param withoutSnapshots Apaga antes os snapshots (exceto o do génesis)
+     * @return Tempo de arranque em ns
+     */
+    private static long startup(Path dir, int votes, boolean withoutSnapshots) throws Exception {
+        if (withoutSnapshots) {
+            // Fica só o snapshot do génesis (a eleição não está nos blocos)
+            List<Path> snapshots = snapshots(dir);
+            for (Path p : snapshots.subList(0, snapshots.size() - 1)) {
+                Files.delete(p);
+            }
+        }
+        System.gc(); // Sem lixo das medições anteriores
+        long begin = System.nanoTime();
+        Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL,
+                new BlockStore(dir));
+        long nanos = System.nanoTime() - begin;
+        try {
+            Map<String, Long> tally = bc.tallyVotes("e");
+            assertEquals(votes == 0 ? Map.of() : Map.of("c0", (long) votes), tally);
+            assertEquals(votes, bc.getVoterRegistry().size());
+        } finally {
+            bc.close();
+        }
+        return nanos;
+    }
+
+    /**
+     * Snapshots da diretoria, do mais recente para o mais antigo
+     */
+    private static List<Path> snapshots(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return new ArrayList<>(files.filter(p -> p.getFileName().toString().matches("state-\\d{10}\\.snap"))
+                    .sorted(Comparator.comparing(Path::toString).reversed()).toList());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Testes dos snapshots do estado: o estado reaberto é igual ao contado a
+ * partir dos blocos
+ *
+ * @author Acer
+ */
+public class StateSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void startupFromASnapshotBelowTheTopCountsOnlyTheNewBlocks() throws Exception {
+        List<Transaction> votes = Votes.distinct(4, 2, "e");
+        BlockStore store = new BlockStore(dir);
+        Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, Blockchain.DEFAULT_TARGET_BLOCK_TIME,
+                Blockchain.DEFAULT_RETARGET_INTERVAL, store);
+        bc.createElection("e", "Eleição");
+        bc.addBlock(Votes.next(bc, votes.subList(0, 2)));
+        bc.saveState();
+        // Paragem abrupta: o último bloco está no disco, mas acima do snapshot
+        bc.addBlock(Votes.next(bc, votes.subList(2, 4)));
+        store.commit();
+        Map<String, Long> expected = bc.tallyVotes("e");
+
+        Blockchain reopened = Blockchain.open(dir, Blockchain.MIN_DIFFICULTY);
+        try {
+            assertEquals(3, reopened.getHeight());
+            // O bloco acima do snapshot foi contado sem descodificar as transações
+            assertFalse(((BlockStore.StoredTransactions) reopened.snapshot().get(2).getTransactions()).isLoaded());
+            assertNotNull(reopened.getElection("e"));
+            assertEquals(expected, reopened.tallyVotes("e"));
+            assertTrue(reopened.verifyTally("e"));
+            assertEquals(4, reopened.getVoterRegistry().size());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void snapshotRoundTrip() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        bc.addBlock(Votes.next(bc, Votes.distinct(2, 2, "e")));
+        byte[] data = StateSnapshot.encode(1, bc.getLatestBlock().getCurrentHash(), List.of(bc.getElection("e")),
+                tally(bc), bc.getVoterRegistry());
+        StateSnapshot snapshot = StateSnapshot.read(data);
+        assertEquals(1, snapshot.getHeight());
+        assertEquals(bc.getLatestBlock().getCurrentHash(), snapshot.getHash());
+        assertEquals(bc.tallyVotes("e"), snapshot.getTally().get("e"));
+        assertEquals(2, snapshot.getVoterRegistry().size());
+    }
+
+    private static VoteTally tally(Blockchain bc) {
+        VoteTally tally = new VoteTally();
+        for (Block block : bc.snapshot().getBlocks()) {
+            tally.add(block);
+        }
+        return tally;
+    }
+}
@@ -0,0 +1,41 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes da Transaction: prova de trabalho sobre os campos finais
+ *
+ * @author Acer
+ */
+public class TransactionTest {
+
+    private static KeyPair keys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair();
+    }
+
+    @Test
+    void proofOfWorkCoversTheEncryptedVote() throws Exception {
+        KeyPair voter = keys();
+        Transaction tx = new Transaction(voter.getPublic(), "candidato", "e", voter.getPrivate());
+        assertTrue(tx.hasValidProofOfWork());
+        assertTrue(ProofOfWork.getDefault().verify(voter.getPublic().toString() + tx.getEncryptedVote() + "e",
+                new Nonce(tx.getExtraNonce(), tx.getNonce()), Transaction.DIFFICULTY_BITS));
+    }
+
+    @Test
+    void rejectsAProofOfWorkForOtherFields() throws Exception {
+        KeyPair voter = keys();
+        Transaction tx = new Transaction(voter.getPublic(), "candidato", "e", voter.getPrivate());
+        // Mesmo nonce com outro voto encriptado
+        Transaction forged = new Transaction(tx.getTransactionId(), voter.getPublic(), tx.getEncryptedVote() + "x",
+                "e", tx.getSignature(), tx.getExtraNonce(), tx.getNonce());
+        assertFalse(forged.hasValidProofOfWork());
+    }
+}
@@ -0,0 +1,52 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Benchmark da procura de nonces SIMD
+ *
+ * Compara o SHA-256 escalar do NonceSearch com o VectorNonceSearch sobre
+ * um prefixo de 80 bytes. Corre com mvn test -Pbenchmarks
+ * (-Dmining.vector.lanes=N -Dbench.millis=2000)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class VectorNonceSearchBenchmark {
+
+    @Test
+    void scalarAgainstVectorLanes() throws Exception {
+        assertTrue(VectorNonceSearch.selfTest(), "self-test do SHA-256 vetorial falhou");
+        long millis = Long.getLong("bench.millis", 2000);
+        byte[] prefix = new byte[80];
+
+        double scalarRate = rate(new NonceSearch(prefix, 256), millis);
+        double vectorRate = rate(new VectorNonceSearch(prefix, 256), millis);
+
+        System.out.printf("Escalar            : %,.0f hashes/s%n", scalarRate);
+        System.out.printf("Vector (%2d lanes)  : %,.0f hashes/s%n", VectorNonceSearch.SPECIES.length(), vectorRate);
+        System.out.printf("Speedup            : %.2fx%n", vectorRate / scalarRate);
+        assertTrue(scalarRate > 0 && vectorRate > 0);
+    }
+
+    /**
+     * Procura em intervalos de 65536 nonces durante millis ms
+     *
+     * @return Hashes por segundo
+     */
+    private static double rate(NonceSearch search, long millis) {
+        AtomicBoolean stop = new AtomicBoolean(false);
+        long begin = System.nanoTime();
+        long end = System.currentTimeMillis() + millis;
+        long from = 0;
+        while (System.currentTimeMillis() < end) {
+            search.search(from, from + (1 << 16), stop);
+            from += 1 << 16;
+        }
+        return search.getAttempts() / ((System.nanoTime() - begin) / 1E9);
+    }
+}
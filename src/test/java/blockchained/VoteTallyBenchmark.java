@@ -0,0 +1,105 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.SecurityUtils;
+
+/**
+ * Benchmark da leitura dos resultados: contagem materializada (tallyVotes)
+ * contra o reconto completo da cadeia (auditTallyVotes)
+ *
+ * A cadeia (100k votos de votantes distintos por defeito, 1000 por bloco) é
+ * escrita diretamente no BlockStore, como no StateSnapshotBenchmark, e a
+ * Blockchain é reaberta a partir dela. Corre com mvn test -Pbenchmarks
+ * (-Dbench.votes=100000 -Dbench.perBlock=1000)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class VoteTallyBenchmark {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void materializedTallyAgainstAuditRecount() throws Exception {
+        int votes = Integer.getInteger("bench.votes", 100_000);
+        int perBlock = Integer.getInteger("bench.perBlock", 1000);
+
+        PrintStream out = System.out;
+        Blockchain bc;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            // Votos modelo, um por candidato; as chaves variam no expoente público
+            List<Transaction> templates = new ArrayList<>();
+            KeyPair base = SecurityUtils.generateRSAKeyPair(1024);
+            for (int c = 0; c < 4; c++) {
+                templates.add(new Transaction(base.getPublic(), "c" + c, "e", base.getPrivate()));
+            }
+            RSAPublicKey modulus = (RSAPublicKey) base.getPublic();
+            KeyFactory factory = KeyFactory.getInstance("RSA");
+
+            bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL, new BlockStore(dir));
+            bc.createElection("e", "tally", votes);
+            Hash256 previous = bc.getLatestBlock().getCurrentHash();
+            bc.close();
+
+            BlockStore store = new BlockStore(dir);
+            int height = 0;
+            for (int made = 0; made < votes; made += perBlock) {
+                List<Transaction> txs = new ArrayList<>();
+                for (int i = made; i < Math.min(votes, made + perBlock); i++) {
+                    Transaction template = templates.get(i % templates.size());
+                    txs.add(new Transaction(template.getTransactionId(),
+                            factory.generatePublic(new RSAPublicKeySpec(modulus.getModulus(), BigInteger.valueOf(65537 + 2L * i))),
+                            template.getEncryptedVote(), "e", template.getSignature(), 0, 0));
+                }
+                Block block = new Block(++height, previous, txs, Blockchain.MIN_DIFFICULTY);
+                store.append(block);
+                previous = block.getCurrentHash();
+            }
+            store.setValidatedHeight(height);
+            store.close();
+            bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL, new BlockStore(dir));
+        } finally {
+            System.setOut(out);
+        }
+
+        try {
+            Map<String, Long> materialized = bc.tallyVotes("e");
+            assertEquals(bc.auditTallyVotes("e"), materialized);
+            assertEquals(votes, materialized.values().stream().mapToLong(Long::longValue).sum());
+
+            int reads = 100_000;
+            long begin = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                bc.tallyVotes("e");
+            }
+            long fast = System.nanoTime() - begin;
+            int audits = 10;
+            begin = System.nanoTime();
+            for (int i = 0; i < audits; i++) {
+                bc.auditTallyVotes("e");
+            }
+            long slow = System.nanoTime() - begin;
+            System.out.printf("%,d votos em %,d blocos: tallyVotes %.2f us, auditTallyVotes %,.2f us%n",
+                    votes, bc.getHeight(), fast / 1E3 / reads, slow / 1E3 / audits);
+        } finally {
+            bc.close();
+        }
+    }
+}
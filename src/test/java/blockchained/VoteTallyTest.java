@@ -0,0 +1,57 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes da contagem materializada: igual ao reconto completo depois de
+ * blocos minerados, recebidos e de uma reorganização
+ *
+ * @author Acer
+ */
+public class VoteTallyTest {
+
+    private static List<Transaction> votes;
+    private static List<Transaction> forked;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        votes = Votes.distinct(9, 3, "e");
+        forked = Votes.distinct(2, 1, "e");
+    }
+
+    @Test
+    void materializedTallyMatchesTheAuditAfterAReorganization() throws Exception {
+        Blockchain bc = Votes.chain("e");
+        for (int i = 0; i < votes.size(); i += 3) {
+            for (Transaction tx : votes.subList(i, i + 3)) {
+                bc.getMempool().add(tx);
+            }
+            bc.minePendingTransactions();
+        }
+        assertEquals(Map.of("c0", 3L, "c1", 3L, "c2", 3L), bc.tallyVotes("e"));
+        assertTrue(bc.verifyTally("e"));
+
+        // O último bloco é substituído por um com outros votos (o ramo tem
+        // mais um bloco, para ter mais trabalho do que a cadeia local)
+        ChainView chain = bc.snapshot();
+        Block fork = new Block(chain.size() - 1, chain.get(chain.size() - 2).getCurrentHash(),
+                new ArrayList<>(forked), bc.getDifficultyAt(chain.size() - 1));
+        Block next = new Block(chain.size(), fork.getCurrentHash(), new ArrayList<>(), bc.getDifficultyAt(chain.size()));
+        bc.sync(List.of(fork, next));
+
+        Map<String, Long> materialized = bc.tallyVotes("e");
+        assertEquals(Map.of("c0", 4L, "c1", 2L, "c2", 2L), materialized);
+        assertEquals(bc.auditTallyVotes("e"), materialized);
+        // Os votantes do bloco substituído podem votar de novo
+        assertFalse(bc.getVoterRegistry().hasVoted(votes.get(8).getPublicVoterKey(), "e"));
+        assertTrue(bc.getVoterRegistry().hasVoted(forked.get(0).getPublicVoterKey(), "e"));
+    }
+}
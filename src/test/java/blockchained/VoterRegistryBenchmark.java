@@ -0,0 +1,105 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.Reference;
+import java.math.BigInteger;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import utils.SecurityUtils;
+
+/**
+ * Memória por votante: registo antigo (Key.toString() -> conjunto de
+ * eleições) contra o registo por impressão digital
+ *
+ * Com votantes RSA de 1024 bits que votaram em duas eleições. Corre com
+ * mvn test -Pbenchmarks (-Dbench.voters=100000)
+ *
+ * @author Acer
+ */
+@Tag("benchmark")
+public class VoterRegistryBenchmark {
+
+    private static final int DISTINCT_KEYS = 64;
+
+    @Test
+    void memoryAndLookupAgainstToStringKeys() throws Exception {
+        int voters = Integer.getInteger("bench.voters", 100_000);
+        String[] elections = {"e1", "e2"};
+        Key[] keys = keys(voters);
+
+        long before = Hash256Benchmark.usedMemory();
+        Map<String, Set<String>> old = new ConcurrentHashMap<>();
+        for (Key key : keys) {
+            for (String e : elections) {
+                old.computeIfAbsent(key.toString(), k -> ConcurrentHashMap.newKeySet()).add(e);
+            }
+        }
+        long oldBytes = Hash256Benchmark.usedMemory() - before;
+        long begin = System.nanoTime();
+        for (Key key : keys) {
+            Set<String> set = old.get(key.toString());
+            assertTrue(set != null && set.contains("e2"));
+        }
+        long oldNanos = System.nanoTime() - begin;
+        Reference.reachabilityFence(old);
+        old = null;
+
+        before = Hash256Benchmark.usedMemory();
+        VoterRegistry registry = new VoterRegistry();
+        for (Key key : keys) {
+            for (String e : elections) {
+                registry.add(key, e);
+            }
+        }
+        long newBytes = Hash256Benchmark.usedMemory() - before;
+        begin = System.nanoTime();
+        for (Key key : keys) {
+            assertTrue(registry.hasVoted(key, "e2"));
+            assertFalse(registry.hasVoted(key, "e3"));
+        }
+        long newNanos = System.nanoTime() - begin;
+
+        System.out.printf("%,d votantes, %d eleições cada (toString() com %d caracteres)%n",
+                registry.size(), elections.length, keys[0].toString().length());
+        System.out.printf("Key.toString() : %,13d bytes (%6.1f bytes/votante), hasVoted %.2f us%n",
+                oldBytes, (double) oldBytes / voters, oldNanos / 1E3 / voters);
+        System.out.printf("Impressão dig. : %,13d bytes (%6.1f bytes/votante), hasVoted %.2f us%n",
+                newBytes, (double) newBytes / voters, newNanos / 1E3 / voters);
+        assertEquals(voters, registry.size());
+        assertTrue(newBytes < oldBytes, "o registo por impressão digital não ocupa menos memória");
+        Reference.reachabilityFence(registry);
+    }
+
+    /**
+     * Gera chaves públicas RSA distintas
+     * Gerar um par RSA por votante seria demasiado lento: as chaves variam
+     * no expoente público, o que dá chaves distintas com o mesmo tamanho
+     * codificado e um toString() do mesmo tamanho
+     */
+    static Key[] keys(int count) throws Exception {
+        KeyPair[] pairs = new KeyPair[DISTINCT_KEYS];
+        for (int i = 0; i < DISTINCT_KEYS; i++) {
+            pairs[i] = SecurityUtils.generateRSAKeyPair(1024);
+        }
+        KeyFactory factory = KeyFactory.getInstance("RSA");
+        Key[] keys = new Key[count];
+        for (int i = 0; i < count; i++) {
+            RSAPublicKey base = (RSAPublicKey) pairs[i % DISTINCT_KEYS].getPublic();
+            keys[i] = factory.generatePublic(new RSAPublicKeySpec(base.getModulus(),
+                    BigInteger.valueOf(65537 + 2L * (i / DISTINCT_KEYS))));
+            keys[i].getEncoded(); // A chave guarda a codificação na primeira chamada: fora da medição
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,49 @@
+package blockchained;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.Key;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes do registo de votantes
+ *
+ * @author Acer
+ */
+public class VoterRegistryTest {
+
+    @Test
+    void registersVotesPerElection() throws Exception {
+        Key alice = Votes.keys().getPublic();
+        Key bob = Votes.keys().getPublic();
+        VoterRegistry registry = new VoterRegistry();
+        registry.addElection("e1", 100);
+        registry.addElection("e2", 100);
+
+        registry.add(alice, "e1");
+        registry.add(alice, "e2");
+        registry.add(bob, "e2");
+        assertTrue(registry.hasVoted(alice, "e1") && registry.hasVoted(alice, "e2"));
+        assertFalse(registry.hasVoted(bob, "e1"));
+        assertFalse(registry.hasVoted(alice, "e3"));
+        assertTrue(registry.hasVoted(VoterRegistry.fingerprint(bob), "e2"));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    void removedVotersCanVoteAgainAfterTheFilterIsRebuilt() throws Exception {
+        Key alice = Votes.keys().getPublic();
+        VoterRegistry registry = new VoterRegistry();
+        registry.addElection("e", 100);
+        registry.add(alice, "e");
+        registry.remove(alice, "e");
+        registry.rebuild("e");
+        assertFalse(registry.hasVoted(alice, "e"));
+        // O filtro reconstruído já não tem a votante: a consulta não chega ao registo
+        long probed = registry.getProbedCount();
+        registry.hasVoted(alice, "e");
+        assertEquals(probed, registry.getProbedCount());
+    }
+}
@@ -0,0 +1,90 @@
+package blockchained;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Votos e cadeias para os testes
+ * Cada transação custa uma prova de trabalho (Transaction.DIFFICULTY_BITS),
+ * pelo que os testes usam poucos votantes
+ *
+ * @author Acer
+ */
+final class Votes {
+
+    private Votes() {
+    }
+
+    /**
+     * Gera um par de chaves RSA pequeno (só para testes)
+     *
+     * @return Par de chaves
+     * @throws Exception Se o algoritmo não existir
+     */
+    static KeyPair keys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Cria votos de votantes distintos, com candidatos "c0", "c1", ...
+     *
+     * @param count Número de votos
+     * @param candidates Número de candidatos
+     * @param electionId ID da eleição
+     * @return Transações assinadas e mineradas
+     * @throws Exception Se a criação falhar
+     */
+    static List<Transaction> distinct(int count, int candidates, String electionId) throws Exception {
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            KeyPair voter = keys();
+            txs.add(new Transaction(voter.getPublic(), "c" + (i % candidates), electionId, voter.getPrivate()));
+        }
+        return txs;
+    }
+
+    /**
+     * Cria uma blockchain em memória com dificuldade mínima (intervalo alvo
+     * 0) e uma eleição
+     *
+     * @param electionId ID da eleição
+     * @return Blockchain
+     * @throws Exception Se a criação falhar
+     */
+    static Blockchain chain(String electionId) throws Exception {
+        Blockchain bc = new Blockchain(Blockchain.MIN_DIFFICULTY, 0, Blockchain.DEFAULT_RETARGET_INTERVAL);
+        bc.createElection(electionId, "Eleição " + electionId);
+        return bc;
+    }
+
+    /**
+     * Minera um bloco sobre o topo de uma blockchain (sem o acrescentar)
+     *
+     * @param bc Blockchain
+     * @param txs Transações do bloco
+     * @return Bloco minerado
+     * @throws Exception Se a mineração for interrompida
+     */
+    static Block next(Blockchain bc, List<Transaction> txs) throws Exception {
+        return new Block(bc.getHeight(), bc.getLatestBlock().getCurrentHash(), new ArrayList<>(txs),
+                bc.getNextDifficulty());
+    }
+
+    /**
+     * Acrescenta blocos vazios até a cadeia ter height blocos
+     * (para os benchmarks em cadeias sintéticas)
+     *
+     * @param bc Blockchain
+     * @param height Número de blocos pretendido (com o génesis)
+     * @throws Exception Se a mineração for interrompida
+     */
+    static void grow(Blockchain bc, int height) throws Exception {
+        while (bc.getHeight() < height) {
+            bc.addBlock(next(bc, List.of()));
+        }
+    }
+}